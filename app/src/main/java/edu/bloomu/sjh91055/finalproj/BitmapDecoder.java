@@ -0,0 +1,39 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import android.graphics.Bitmap;
+
+/**
+ * Decodes base images in any format BitmapFactory understands, such as the PNGs older
+ * versions of the app saved frames as. The image is decoded straight into a mutable
+ * ARGB_8888 bitmap from the BitmapPool, so it never has to be converted or copied before
+ * its pixels are read, and is then copied into the raster a band of rows at a time. The
+ * bitmap goes back to the pool for the next image, and the band is kept for it too, so
+ * redrawing frames that have base images allocates nothing large.
+ *
+ * @author Steven Hricenak
+ */
+public class BitmapDecoder implements FrameStore.ImageDecoder {
+    private static final int DECODE_ROWS = Tile.SIZE;
+
+    private int[] band;
+
+    @Override
+    public boolean decode(byte[] data, TiledRaster target) {
+        Bitmap bm = BitmapPool.get().decode(data);
+        if (bm == null)
+            return false;
+        int w = Math.min(bm.getWidth(), target.getWidth());
+        int h = Math.min(bm.getHeight(), target.getHeight());
+        synchronized (this) {
+            if (band == null || band.length < w * DECODE_ROWS)
+                band = new int[w * DECODE_ROWS];
+            for (int y = 0; y < h; y += DECODE_ROWS) {
+                int rows = Math.min(DECODE_ROWS, h - y);
+                bm.getPixels(band, 0, w, 0, y, w, rows);
+                target.write(band, 0, w, 0, y, w, rows);
+            }
+        }
+        BitmapPool.get().release(bm);
+        return true;
+    }
+}
@@ -0,0 +1,180 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+
+/**
+ * Mutable bitmaps that are no longer needed, kept to be reused rather than left to the
+ * garbage collector. Bitmaps as large as a frame take several megabytes each, and
+ * allocating them over and over, whenever the DoodleView is made again or a base image is
+ * decoded, causes long pauses and can fail for want of a contiguous block even when there
+ * is memory to spare. Every frame of a project is the same size, so a released bitmap
+ * nearly always fits the next one asked for.
+ * <p>
+ * Bitmaps are matched by their size and config. Images are decoded into a pooled bitmap
+ * of the right size through BitmapFactory.Options.inBitmap. The pool holds at most its
+ * budget of bytes; when it is over, the bitmaps released longest ago are recycled. The
+ * app shares a single pool between all its threads. Before API 26 bitmap pixels are on the
+ * Java heap, where idle pooled bitmaps crowd out the frame cache and the live bitmaps, so
+ * the shared pool is kept to a small share of the heap and, once the DoodleView knows the
+ * frame size, to the few frame-sized bitmaps it draws into.
+ *
+ * @author Steven Hricenak
+ */
+public class BitmapPool {
+    //the most the shared pool may keep, whatever budget it is given
+    private static final long MAX_SHARED_BUDGET = Runtime.getRuntime().maxMemory() / 16;
+    private static final BitmapPool SHARED = new BitmapPool(MAX_SHARED_BUDGET);
+
+    private long budget;
+    private final ArrayList<Bitmap> free;
+    private long bytes;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param budget the greatest number of bytes of bitmaps kept
+     */
+    public BitmapPool(long budget) {
+        this.budget = budget;
+        free = new ArrayList<>();
+    }
+
+    /**
+     * Returns the pool the app shares.
+     *
+     * @return the shared instance
+     */
+    public static BitmapPool get() {
+        return SHARED;
+    }
+
+    /**
+     * Sets the greatest number of bytes of bitmaps the pool keeps, recycling the bitmaps
+     * released longest ago if it is over. The shared pool never keeps more than a
+     * sixteenth of the heap.
+     *
+     * @param budget the greatest number of bytes of bitmaps kept
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = this == SHARED ? Math.min(budget, MAX_SHARED_BUDGET) : budget;
+        trim();
+    }
+
+    /**
+     * Returns a mutable bitmap that is entirely transparent, or black if it has no alpha.
+     * A pooled bitmap is reused if one fits, and a new one is allocated otherwise.
+     *
+     * @param width  the width of the bitmap
+     * @param height the height of the bitmap
+     * @param config the config of the bitmap
+     * @return the bitmap, which belongs to the caller until it is released
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bm = take(width, height, config);
+        if (bm == null) {
+            Metrics.get().allocatedBitmaps.add(1);
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bm.eraseColor(Color.TRANSPARENT);
+        return bm;
+    }
+
+    /**
+     * Decodes an image into a mutable ARGB_8888 bitmap, reusing a pooled bitmap of its
+     * size if there is one.
+     *
+     * @param data the encoded image
+     * @return the bitmap, which belongs to the caller until it is released, or null if
+     * the image cannot be decoded
+     */
+    public Bitmap decode(byte[] data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inBitmap = take(options.outWidth, options.outHeight,
+                Bitmap.Config.ARGB_8888);
+        if (options.inBitmap != null) {
+            try {
+                Bitmap bm = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                if (bm != null)
+                    return bm;
+            } catch (IllegalArgumentException e) {
+                //the image cannot be decoded into the bitmap after all
+            }
+            release(options.inBitmap);
+            options.inBitmap = null;
+        }
+        Bitmap bm = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (bm != null)
+            Metrics.get().allocatedBitmaps.add(1);
+        return bm;
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller must not use it afterwards.
+     *
+     * @param bm the bitmap, or null to do nothing
+     */
+    public synchronized void release(Bitmap bm) {
+        if (bm == null || bm.isRecycled())
+            return;
+        if (!bm.isMutable() || bm.getAllocationByteCount() > budget) {
+            bm.recycle();
+            return;
+        }
+        free.add(bm);
+        bytes += bm.getAllocationByteCount();
+        trim();
+    }
+
+    /**
+     * Recycles every pooled bitmap, such as when the system is short of memory.
+     */
+    public synchronized void clear() {
+        for (Bitmap bm : free)
+            bm.recycle();
+        free.clear();
+        bytes = 0;
+        Metrics.get().pooledBitmapBytes.set(0);
+    }
+
+    /**
+     * Recycles the bitmaps released longest ago until the pool is within its budget.
+     */
+    private void trim() {
+        while (bytes > budget) {
+            Bitmap oldest = free.remove(0);
+            bytes -= oldest.getAllocationByteCount();
+            oldest.recycle();
+        }
+        Metrics.get().pooledBitmapBytes.set(bytes);
+    }
+
+    /**
+     * Removes the most recently released bitmap of the given size and config from the
+     * pool, or returns null if there is none.
+     */
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        for (int i = free.size() - 1; i >= 0; i--) {
+            Bitmap bm = free.get(i);
+            if (bm.getWidth() == width && bm.getHeight() == height
+                    && bm.getConfig() == config) {
+                free.remove(i);
+                bytes -= bm.getAllocationByteCount();
+                Metrics.get().reusedBitmaps.add(1);
+                Metrics.get().pooledBitmapBytes.set(bytes);
+                return bm;
+            }
+        }
+        return null;
+    }
+}
@@ -11,7 +11,7 @@ import android.graphics.Color;
  * A custom View that allows the user to select one of eight colors.
  */
 public class ColorPickerView extends View {
-    private final int COLORS[] = {Color.BLACK, Color.WHITE, Color.RED, Color.GREEN,
+    public static final int[] COLORS = {Color.BLACK, Color.WHITE, Color.RED, Color.GREEN,
             Color.BLUE, Color.YELLOW, Color.CYAN, Color.MAGENTA};
 
     private int viewWidth;
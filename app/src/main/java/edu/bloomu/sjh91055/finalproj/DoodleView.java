@@ -4,77 +4,154 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.LightingColorFilter;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.os.CountDownTimer;
-import android.os.Environment;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+import android.os.SystemClock;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Toast;
 
-import org.jcodec.api.android.AndroidSequenceEncoder;
-
-import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
-
 /**
  * A custom View that handles all drawing and animating. The user paints their frames, then
- * when they are finished drawing they may play them as an animation. This also handles
- * creating and exporting an mp4 video to the device.
+ * when they are finished drawing they may play them as an animation.
+ * <p>
+ * Frames are drawn at the project's working resolution rather than at the size of the
+ * screen, so a project takes the same memory on every device. Everything is drawn into
+ * Bitmaps of that size, which are scaled to fit the View by a matrix worked out when its
+ * size changes, and touches are mapped back through the inverse matrix.
+ * <p>
+ * Strokes go to the layer chosen with setLayer: one of the current frame's own layers,
+ * or the background shared by every frame. Either way the frame is shown as its
+ * composite, with the background and all its layers flattened.
  *
  * @author Steven Hricenak
  */
 public class DoodleView extends View {
-    public static final int MAX_FRAME = 32;
-    private static final int BACKGROUND_COLOR = Color.WHITE;
+    private static final int BACKGROUND_COLOR = FrameStore.BACKGROUND_COLOR;
     private static final int STROKE_WIDTH = 20;
-    private static final int FRAME_RATE = 4;
+    public static final int DEFAULT_FRAME_RATE = 4;
+    public static final int DEFAULT_WORKING_RESOLUTION = 720;
+    private static final int SAMPLE_CAPACITY = 256;
+    private static final float MIN_DISTANCE = 2;
+    private static final float MAX_RUN = 48;
+    private static final double MAX_TURN = Math.toRadians(3);
+    private static final int TAIL_LIMIT = 64;
+    private static final int TAIL_KEEP = 4;
+    //the canvas, onion skin, onion layer, composite and scratch bitmaps, pooled when remade
+    private static final int FRAME_BITMAPS = 5;
+    public static final int BACKGROUND_LAYER = -1;
+    public static final int MAX_ONION_DEPTH = 5;
+    private static final int ONION_ALPHA = 64;
+    private static final int PREVIOUS_TINT = 0xC00000;
+    private static final int NEXT_TINT = 0x00A000;
+
+    /**
+     * Told on the main thread when the frame shown changes, or the current frame is drawn
+     * on or cleared.
+     */
+    public interface FrameListener {
+        void onFrameChanged(int index);
+    }
 
     private int width;
     private int height;
+    private int workingResolution = DEFAULT_WORKING_RESOLUTION;
+    private Matrix toView;
+    private Matrix toFrame;
+    private boolean letterboxed;
+    private float[] touchPoint;
+    private RectF dirtyRect;
+    private Paint bitmapPaint;
+    private float strokeWidth = STROKE_WIDTH;
+    private int dirtyMargin;
 
     private Path drawPath;
     private Paint drawPaint;
-    private Paint canvasPaint;
     private int paintColor = Color.BLACK;
 
-    private Canvas drawCanvas;
-    private Bitmap canvasBitmap;
+    private FrameBitmap canvasBitmap;
+    private float[] strokePoints;
+    private int pointCount;
+    private int[] strokeBounds;
+    private PointRing samples;
+    private float lastX;
+    private float lastY;
+    private int dirtyLeft;
+    private int dirtyTop;
+    private int dirtyRight;
+    private int dirtyBottom;
+    private PointDecimator decimator;
+    private int tailStart;
+    private Bitmap scratchBitmap;
+    private Canvas scratchCanvas;
+    private Path scratchPath;
+    private boolean scratchUsed;
 
     private boolean imageOverlay = true;
+    private int onionBefore = 1;
+    private int onionAfter = 0;
+    private FrameBitmap onionBitmap;
+    private Bitmap onionLayer;
+    private Canvas onionCanvas;
+    private boolean onionShown;
     private Paint previousPaint;
+    private Paint nextPaint;
+    private Paint darkenPaint;
+    private Bitmap composite;
+    private Canvas compositeCanvas;
 
-    private ArrayList<Bitmap> frames;
+    private FrameStore frames;
     private int frameIndex;
+    private int layer;
 
     private boolean animating;
+    private PlaybackEngine playback;
+    private FrameListener frameListener;
 
     /**
-     * Creates an empty project.
-     */
-    public DoodleView(Context context) {
-        super(context);
-        frames = new ArrayList<>();
-        animating = false;
-        drawCanvas = new Canvas();
-        setupDrawing();
-    }
-
-    /**
-     * Creates a project with the frames passed in the ArrayList of Bitmaps.
+     * Creates a project with the frames held in the FrameStore. The frames are shown once
+     * the size of the View is known; if the store is empty, the first frame is created then.
      *
-     * @param bitmaps the frames to be initialized
+     * @param store the frames to be initialized
      */
-    public DoodleView(Context context, ArrayList<Bitmap> bitmaps) {
+    public DoodleView(Context context, FrameStore store) {
         super(context);
-        frames = bitmaps;
+        frames = store;
         animating = false;
+        strokePoints = new float[256];
+        strokeBounds = new int[4];
+        toView = new Matrix();
+        toFrame = new Matrix();
+        touchPoint = new float[2];
+        dirtyRect = new RectF();
+        samples = new PointRing(SAMPLE_CAPACITY);
+        decimator = new PointDecimator(MIN_DISTANCE, MAX_RUN, MAX_TURN);
+        clearDirty();
         setupDrawing();
-        if (frames.size() > 0) {
-            frameIndex = frames.size() - 1;
-            drawCanvas = new Canvas(frames.get(frameIndex));
-        }
+        frameIndex = Math.max(0, frames.size() - 1);
+        playback = new PlaybackEngine(frames, DEFAULT_FRAME_RATE,
+                new PlaybackEngine.Listener() {
+                    @Override
+                    public void onShowFrame(int index, TiledRaster raster) {
+                        frameIndex = index;
+                        canvasBitmap.show(raster);
+                        invalidate();
+                        frameChanged();
+                    }
+
+                    @Override
+                    public void onPlaybackFinished() {
+                        animating = false;
+                        frameIndex = frames.size() - 1;
+                        if (frameIndex >= 0)
+                            setCurrentFrame(); //restores drawing pad to last frame
+                    }
+                });
     }
 
     /**
@@ -83,7 +160,9 @@ public class DoodleView extends View {
      */
     private void setupDrawing() {
         drawPath = new Path();
+        scratchPath = new Path();
         drawPaint = new Paint();
+        bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
         drawPaint.setColor(paintColor);
         drawPaint.setStrokeWidth(STROKE_WIDTH);
@@ -91,151 +170,429 @@ public class DoodleView extends View {
         drawPaint.setStrokeJoin(Paint.Join.ROUND);
         drawPaint.setStrokeCap(Paint.Cap.ROUND);
 
-        canvasPaint = new Paint(Paint.DITHER_FLAG);
-        canvasPaint.setStyle(Paint.Style.STROKE);
-
-        previousPaint = new Paint();
-        previousPaint.setAlpha(25);
+        //darkening leaves the white background of onion frames out, so only their ink
+        //shows, tinted to tell earlier frames from later ones
+        darkenPaint = new Paint();
+        darkenPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DARKEN));
+        previousPaint = new Paint(darkenPaint);
+        previousPaint.setColorFilter(new LightingColorFilter(0xFFFFFF, PREVIOUS_TINT));
+        nextPaint = new Paint(darkenPaint);
+        nextPaint.setColorFilter(new LightingColorFilter(0xFFFFFF, NEXT_TINT));
     }
 
     /**
-     * Sets the width and height values. This is where the first frame is set, because
-     * it needs the width and height that are set to zero before this method is called
-     * for the first time.
+     * Sets the size of the frames, if the project does not have one yet, and creates the
+     * Bitmaps the current frame and its onion skin are displayed from. A new project is
+     * given the working resolution, in the shape of the View; one migrated from before
+     * projects had a size is drawn at the size of the View, as it always was. The frames
+     * are scaled to fit the View, centered, and the stroke width is scaled so strokes look
+     * the same on screen whatever the resolution. This is where the first frame is set,
+     * because it needs the size of the View.
      */
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
-        width = w;
-        height = h;
+        if (frames.getWidth() <= 0 || frames.getHeight() <= 0) {
+            if (frames.size() > 0)
+                frames.setSize(w, h);
+            else {
+                int[] size = Resampler.evenSize(w, h, Math.min(workingResolution,
+                        Math.min(w, h)));
+                frames.setSize(size[0], size[1]);
+            }
+        }
+        width = frames.getWidth();
+        height = frames.getHeight();
+        float scale = Math.min((float) w / width, (float) h / height);
+        toView.setScale(scale, scale);
+        toView.postTranslate((w - width * scale) / 2, (h - height * scale) / 2);
+        toView.invert(toFrame);
+        letterboxed = Math.round(width * scale) < w || Math.round(height * scale) < h;
+        strokeWidth = STROKE_WIDTH / scale;
+        drawPaint.setStrokeWidth(strokeWidth);
+        dirtyMargin = (int) Math.ceil(strokeWidth / 2) + 2;
+
+        releaseBitmaps();
+        BitmapPool pool = BitmapPool.get();
+        pool.setBudget(FRAME_BITMAPS * 4L * width * height);
+        canvasBitmap = new FrameBitmap(width, height);
+        onionBitmap = new FrameBitmap(width, height);
+        onionLayer = pool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        onionCanvas = new Canvas(onionLayer);
+        composite = pool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        compositeCanvas = new Canvas(composite);
+        scratchBitmap = pool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        scratchCanvas = new Canvas(scratchBitmap);
+        scratchUsed = false;
+        Metrics.get().bitmapBytes.set(canvasBitmap.getBitmap().getByteCount()
+                + onionBitmap.getBitmap().getByteCount() + onionLayer.getByteCount()
+                + composite.getByteCount() + scratchBitmap.getByteCount());
         if (frames.size() < 1)
             newFrame();
+        else
+            setCurrentFrame();
     }
 
     /**
      * Draws the View: it can either be the frame the user is currently drawing, or the
-     * animation itself.
+     * animation itself. Touch samples queued since the last draw are added to the path
+     * first. Only the recent tail of the stroke being drawn is a live path; the rest has
+     * already been drawn into the scratch Bitmap, so the cost of a draw does not grow with
+     * the length of the stroke. Everything under the stroke is composited ahead of time,
+     * when the frame, its onion skin or its strokes change. Everything is drawn at the
+     * working resolution and scaled to the View by the cached matrix. The time each draw
+     * takes is recorded in the Metrics.
      */
     @Override
     protected void onDraw(Canvas canvas) {
+        long start = System.nanoTime();
+        drainSamples();
+        if (letterboxed)
+            canvas.drawColor(Color.LTGRAY);
+        canvas.save();
+        canvas.concat(toView);
         if (animating) {
+            //PlaybackEngine only shows frames that exist when they are due, but the store
+            //is shared, so it may have shrunk since the last one was shown
             if (frameIndex < frames.size())
-                canvas.drawBitmap(frames.get(frameIndex), 0, 0, drawPaint);
+                canvas.drawBitmap(canvasBitmap.getBitmap(), 0, 0, bitmapPaint);
             else
                 canvas.drawColor(BACKGROUND_COLOR);
-            //The code is set up so that the index should not go out of bounds, but in very rare
-            //cases, likely due to the countdown timer thread, it will try to index one greater
-            //than the bound. The if statement is to prevent this.
         } else {
-            canvas.drawColor(BACKGROUND_COLOR);
-            canvas.drawRect(0, 0, getWidth(), getHeight(), canvasPaint);
-
-            canvas.drawBitmap(frames.get(frameIndex), 0, 0, drawPaint);
-
-            if (imageOverlay && frameIndex > 0 && frames.get(frameIndex - 1) != null)
-                canvas.drawBitmap(frames.get(frameIndex - 1), 0, 0, previousPaint);
-
+            canvas.drawBitmap(composite, 0, 0, bitmapPaint);
+            if (scratchUsed)
+                canvas.drawBitmap(scratchBitmap, 0, 0, bitmapPaint);
             canvas.drawPath(drawPath, drawPaint);
         }
+        canvas.restore();
+        Metrics.get().draw.record(System.nanoTime() - start);
     }
 
     /**
-     * Draws paths when the user touches the screen.
+     * Draws paths when the user touches the screen. Every sample of a move event is used,
+     * including the historical ones batched into it, so fast strokes stay smooth. Samples
+     * are queued in a ring buffer and added to the path when the View is next drawn, and
+     * only the rectangle around the new segments is invalidated. Samples are thinned out
+     * by the decimator first. Nothing is allocated while the finger moves. When the
+     * finger is lifted the points are added to the frame as a Stroke. Touches are mapped
+     * from the View into the frame's coordinates first.
      *
      * @return true
      */
     @Override
     public boolean onTouchEvent(MotionEvent e) {
-        float x = e.getX();
-        float y = e.getY();
+        if (animating)
+            return true;
+        toFrame(e.getX(), e.getY());
+        float x = touchPoint[0];
+        float y = touchPoint[1];
 
-        switch (e.getAction()) {
+        switch (e.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
+                samples.clear();
+                clearScratch();
+                drawPath.reset();
                 drawPath.moveTo(x, y);
+                pointCount = 0;
+                tailStart = 0;
+                addPoint(x, y);
+                decimator.start(x, y);
+                lastX = x;
+                lastY = y;
+                addDirty(x, y);
                 break;
             case MotionEvent.ACTION_MOVE:
-                drawPath.lineTo(x, y);
+                for (int i = 0; i < e.getHistorySize(); i++) {
+                    toFrame(e.getHistoricalX(i), e.getHistoricalY(i));
+                    queueSample(touchPoint[0], touchPoint[1]);
+                }
+                queueSample(x, y);
                 break;
             case MotionEvent.ACTION_UP:
-                drawCanvas.drawPath(drawPath, drawPaint);
+                queueSample(x, y);
+                drainSamples();
+                if (pointCount > 1)
+                    commitStroke(Stroke.fromPoints(strokePoints, pointCount, paintColor,
+                            strokeWidth));
                 drawPath.reset();
+                clearScratch();
                 break;
+            case MotionEvent.ACTION_CANCEL:
+                samples.clear();
+                drawPath.reset();
+                clearScratch();
+                invalidate();
+                return true;
         }
-        invalidate();
+        invalidateDirty();
+        //from when the event happened, so the time it waited to be delivered is included
+        Metrics.get().touchLatency.record(
+                (SystemClock.uptimeMillis() - e.getEventTime()) * 1000000);
         return true;
     }
 
+    /**
+     * Maps a point in the View into the frame, leaving it in touchPoint.
+     */
+    private void toFrame(float x, float y) {
+        touchPoint[0] = x;
+        touchPoint[1] = y;
+        toFrame.mapPoints(touchPoint);
+    }
+
+    /**
+     * Queues a touch sample and grows the dirty rectangle to cover the segment leading to
+     * it. The decimator decides whether the sample is dropped, added, or moves the last
+     * point of the stroke. If the queue is full, it is drained into the path first.
+     */
+    private void queueSample(float x, float y) {
+        addDirty(lastX, lastY);
+        addDirty(x, y);
+        lastX = x;
+        lastY = y;
+        boolean canReplace = !samples.isEmpty() || pointCount - 1 > tailStart;
+        switch (decimator.accept(x, y, canReplace)) {
+            case PointDecimator.KEEP:
+                if (!samples.offer(x, y)) {
+                    drainSamples();
+                    samples.offer(x, y);
+                }
+                break;
+            case PointDecimator.REPLACE:
+                addDirty(decimator.getPreviousX(), decimator.getPreviousY());
+                if (!samples.isEmpty())
+                    samples.setLast(x, y);
+                else {
+                    strokePoints[2 * pointCount - 2] = x;
+                    strokePoints[2 * pointCount - 1] = y;
+                    drawPath.setLastPoint(x, y);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Adds the queued touch samples to the path and the points of the stroke, then
+     * commits the older part of the path if it has grown too long.
+     */
+    private void drainSamples() {
+        for (int i = 0; i < samples.size(); i++) {
+            float x = samples.getX(i);
+            float y = samples.getY(i);
+            drawPath.lineTo(x, y);
+            addPoint(x, y);
+        }
+        samples.clear();
+        if (pointCount - tailStart > TAIL_LIMIT)
+            commitTail();
+    }
+
+    /**
+     * Draws all but the last few points of the live path into the scratch Bitmap, and
+     * rebuilds the path from the points left. The two parts meet at a shared point, and
+     * since the caps are round the seam cannot be seen. The points kept live can still be
+     * moved by the decimator.
+     */
+    private void commitTail() {
+        int end = pointCount - TAIL_KEEP;
+        scratchPath.rewind();
+        scratchPath.moveTo(strokePoints[2 * tailStart], strokePoints[2 * tailStart + 1]);
+        for (int i = tailStart + 1; i <= end; i++)
+            scratchPath.lineTo(strokePoints[2 * i], strokePoints[2 * i + 1]);
+        scratchCanvas.drawPath(scratchPath, drawPaint);
+        scratchUsed = true;
+
+        tailStart = end;
+        drawPath.rewind();
+        drawPath.moveTo(strokePoints[2 * end], strokePoints[2 * end + 1]);
+        for (int i = end + 1; i < pointCount; i++)
+            drawPath.lineTo(strokePoints[2 * i], strokePoints[2 * i + 1]);
+    }
+
+    /**
+     * Erases the scratch Bitmap once the stroke drawn into it has ended.
+     */
+    private void clearScratch() {
+        if (scratchUsed) {
+            scratchBitmap.eraseColor(Color.TRANSPARENT);
+            scratchUsed = false;
+        }
+    }
+
+    /**
+     * Grows the dirty rectangle to cover the stroke's ink around a point.
+     */
+    private void addDirty(float x, float y) {
+        dirtyLeft = Math.min(dirtyLeft, (int) x - dirtyMargin);
+        dirtyTop = Math.min(dirtyTop, (int) y - dirtyMargin);
+        dirtyRight = Math.max(dirtyRight, (int) x + dirtyMargin);
+        dirtyBottom = Math.max(dirtyBottom, (int) y + dirtyMargin);
+    }
+
+    /**
+     * Invalidates the dirty rectangle, mapped into the View, if anything is in it, and
+     * empties it.
+     */
+    private void invalidateDirty() {
+        if (dirtyLeft < dirtyRight) {
+            dirtyRect.set(dirtyLeft, dirtyTop, dirtyRight, dirtyBottom);
+            toView.mapRect(dirtyRect);
+            invalidate((int) Math.floor(dirtyRect.left), (int) Math.floor(dirtyRect.top),
+                    (int) Math.ceil(dirtyRect.right), (int) Math.ceil(dirtyRect.bottom));
+        }
+        clearDirty();
+    }
+
+    private void clearDirty() {
+        dirtyLeft = Integer.MAX_VALUE;
+        dirtyTop = Integer.MAX_VALUE;
+        dirtyRight = Integer.MIN_VALUE;
+        dirtyBottom = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Records a point of the stroke being drawn, growing the array if it is full.
+     */
+    private void addPoint(float x, float y) {
+        if (2 * pointCount + 2 > strokePoints.length) {
+            float[] bigger = new float[strokePoints.length * 2];
+            System.arraycopy(strokePoints, 0, bigger, 0, 2 * pointCount);
+            strokePoints = bigger;
+        }
+        strokePoints[2 * pointCount] = x;
+        strokePoints[2 * pointCount + 1] = y;
+        pointCount++;
+    }
+
+    /**
+     * Adds a finished stroke to the current frame and copies the tiles it covers into
+     * the displayed Bitmap, then composites that area again. Those tiles may have been
+     * drawn on in place, so the onion skin must not trust its copy of them either. A
+     * stroke on the background is under every frame, so the onion skin is built again.
+     */
+    private void commitStroke(Stroke s) {
+        frames.addStroke(target(), Math.max(0, layer), s);
+        s.getBounds(strokeBounds);
+        canvasBitmap.refresh(frames.getRaster(frameIndex), strokeBounds[0], strokeBounds[1],
+                strokeBounds[2], strokeBounds[3]);
+        onionBitmap.invalidate(strokeBounds[0], strokeBounds[1], strokeBounds[2],
+                strokeBounds[3]);
+        composite(strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
+        if (target() == FrameStore.BACKGROUND)
+            buildOnionSkin();
+        addDirty(strokeBounds[0], strokeBounds[1]);
+        addDirty(strokeBounds[2], strokeBounds[3]);
+        frameChanged();
+    }
+
     /**
      * Creates a new blank frame.
      */
     private void newFrame() {
         if (!animating) {
-            canvasBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            frames.add(canvasBitmap);
-            frameIndex = frames.size() - 1;
-            drawCanvas = new Canvas(frames.get(frameIndex));
-            drawCanvas.drawColor(BACKGROUND_COLOR);
-            invalidate();
+            frameIndex = frames.create();
+            setCurrentFrame();
         }
     }
 
     /**
-     * Clears the images on the current frame.
+     * Clears the images on the current frame, or the background if that is the layer
+     * being drawn on, in which case the frames in the onion skin change as well.
      */
     public void resetCanvas() {
-        if (!animating)
-            drawCanvas.drawColor(BACKGROUND_COLOR);
+        if (!animating) {
+            frames.clearFrame(target());
+            canvasBitmap.show(frames.getRaster(frameIndex));
+            composite(0, 0, width, height);
+            if (target() == FrameStore.BACKGROUND)
+                buildOnionSkin();
+            frameChanged();
+        }
         invalidate();
     }
 
+    /**
+     * Undoes the latest edit of the current frame, or of the background if that is the
+     * layer being drawn on. If the edit was the frame being added, the frame is removed
+     * and the one before it becomes current.
+     */
+    public void undo() {
+        if (animating)
+            return;
+        int count = frames.size();
+        if (frames.undo(target())) {
+            if (frames.size() < count)
+                frameIndex = Math.max(0, frameIndex - 1);
+            setCurrentFrame();
+        } else
+            Toast.makeText(getContext(), "Nothing to undo", Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Applies again the latest undone edit of the current frame, or of the background.
+     */
+    public void redo() {
+        if (animating)
+            return;
+        if (frames.redo(target()))
+            setCurrentFrame();
+        else
+            Toast.makeText(getContext(), "Nothing to redo", Toast.LENGTH_SHORT).show();
+    }
+
     /**
      * Driver method for adding a new frame to the animation. The method will do nothing if
-     * the animation is playing. This method handles the apps largest bug:
-     * after a 37th frame is added, an OutOfMemoryError is thrown.
-     * This will crash the app, so this method prevents a 37th frame from being added.
+     * the animation is playing. There is no limit on the number of frames, since the
+     * FrameStore only keeps a few of them in memory at once.
      */
     public void addFrame() {
         if (!animating)
-            if (frames.size() < MAX_FRAME)
-                newFrame();
-            else
-                Toast.makeText(getContext(), "Maximum number of frames reached",
-                        Toast.LENGTH_SHORT).show();
+            newFrame();
     }
 
     /**
-     * Sets a CountDownTimer to flip through each frame at a set frame rate. Nothing can be
-     * done but watch the animation whil it is playing.
+     * Plays the frames through at the frame rate, in step with the display. Nothing can be
+     * done but watch the animation while it is playing.
      */
     public void playAnimation() {
-        if (!animating) {
+        if (!animating && frames.size() > 0) {
             animating = true;
-            frameIndex = -1;
-            int frameCount = frames.size() + 1;
-            //all intuition tells me that this should not be (size + 1)
-            //yet in all testing, the last frame is left out if it's merely (size).
-
-            int animationDuration = frameCount * (1000 / FRAME_RATE);
-            new CountDownTimer(animationDuration, (1000 / FRAME_RATE)) {
-                @Override
-                public void onTick(long millisUntilFinished) {
-                    frameIndex++;
-                    invalidate();
-                }
-
-                @Override
-                public void onFinish() {
-                    animating = false;
-                    frameIndex = frames.size() - 1;
-                    setCurrentFrame();
-                    invalidate(); //restores drawing pad to last frame
-                }
-            }.start();
+            playback.start();
         }
     }
 
     /**
-     * Moves to the next frame in the ArrayList of Bitmaps.
+     * Stops playback when the View is removed, such as when the project is restarted, and
+     * returns its bitmaps to the pool for the View that replaces it.
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        playback.stop();
+        releaseBitmaps();
+    }
+
+    /**
+     * Returns the bitmaps drawn into to the BitmapPool, if they have been made.
+     */
+    private void releaseBitmaps() {
+        if (canvasBitmap == null)
+            return;
+        BitmapPool pool = BitmapPool.get();
+        canvasBitmap.release();
+        onionBitmap.release();
+        pool.release(onionLayer);
+        pool.release(composite);
+        pool.release(scratchBitmap);
+        canvasBitmap = null;
+        onionBitmap = null;
+        onionLayer = null;
+        composite = null;
+        scratchBitmap = null;
+    }
+
+    /**
+     * Moves to the next frame in the FrameStore.
      */
     public void nextFrame() {
         if (!animating) {
@@ -248,7 +605,7 @@ public class DoodleView extends View {
     }
 
     /**
-     * Moves to the next frame in the ArrayList of Bitmaps.
+     * Moves to the previous frame in the FrameStore.
      */
     public void prevFrame() {
         if (!animating) {
@@ -261,13 +618,95 @@ public class DoodleView extends View {
     }
 
     /**
-     * Helper method used to make sure the displayed frame is the Bitmap being drawn on.
+     * Moves to the frame at the given position in the FrameStore.
+     *
+     * @param index the position of the frame
+     */
+    public void goToFrame(int index) {
+        if (!animating && index >= 0 && index < frames.size() && index != frameIndex) {
+            frameIndex = index;
+            setCurrentFrame();
+        }
+    }
+
+    /**
+     * Sets the listener told whenever the frame shown changes, or is drawn on.
+     *
+     * @param listener the listener, or null
+     */
+    public void setFrameListener(FrameListener listener) {
+        frameListener = listener;
+    }
+
+    /**
+     * Helper method used to make sure the displayed frame is the one being drawn on, and
+     * that the onion skin shows the frames around it.
      */
     private void setCurrentFrame() {
-        drawCanvas = new Canvas(frames.get(frameIndex));
+        canvasBitmap.show(frames.setCurrent(frameIndex));
+        buildOnionSkin();
         invalidate();
+        frameChanged();
+    }
+
+    /**
+     * Returns the index in the FrameStore of what strokes are drawn on: the current
+     * frame, or the background.
+     */
+    private int target() {
+        return layer == BACKGROUND_LAYER ? FrameStore.BACKGROUND : frameIndex;
     }
 
+    private void frameChanged() {
+        if (frameListener != null)
+            frameListener.onFrameChanged(frameIndex);
+    }
+
+    /**
+     * Draws the frames around the current one into the onion skin layer, the nearest
+     * strongest, then composites the whole View again. The layer starts out white, and
+     * each frame darkens it, so it can be darkened onto the current frame in one draw.
+     */
+    private void buildOnionSkin() {
+        if (onionLayer == null)
+            return;
+        onionCanvas.drawColor(BACKGROUND_COLOR);
+        onionShown = false;
+        if (imageOverlay) {
+            for (int d = onionBefore; d >= 1; d--)
+                drawOnionFrame(frameIndex - d, d, onionBefore, previousPaint);
+            for (int d = onionAfter; d >= 1; d--)
+                drawOnionFrame(frameIndex + d, d, onionAfter, nextPaint);
+        }
+        composite(0, 0, width, height);
+    }
+
+    /**
+     * Darkens a frame into the onion skin layer, fading it the further it is from the
+     * current frame.
+     */
+    private void drawOnionFrame(int index, int distance, int depth, Paint paint) {
+        if (index < 0 || index >= frames.size())
+            return;
+        onionBitmap.show(frames.getRaster(index));
+        paint.setAlpha(ONION_ALPHA * (depth - distance + 1) / depth);
+        onionCanvas.drawBitmap(onionBitmap.getBitmap(), 0, 0, paint);
+        onionShown = true;
+    }
+
+    /**
+     * Composites the current frame and its onion skin into the Bitmap drawn under the
+     * live stroke, within a rectangle.
+     */
+    private void composite(int left, int top, int right, int bottom) {
+        compositeCanvas.save();
+        compositeCanvas.clipRect(left, top, right, bottom);
+        compositeCanvas.drawColor(BACKGROUND_COLOR);
+        compositeCanvas.drawBitmap(canvasBitmap.getBitmap(), 0, 0, null);
+        if (onionShown)
+            compositeCanvas.drawBitmap(onionLayer, 0, 0, darkenPaint);
+        compositeCanvas.restore();
+    }
 
     /**
      * Sets the ink color to be drawn with.
@@ -279,67 +718,100 @@ public class DoodleView extends View {
         drawPaint.setColor(paintColor);
     }
 
+    /**
+     * Sets the layer strokes are drawn on.
+     *
+     * @param layer one of the frame's own layers, 0 for the bottom one, or
+     *              BACKGROUND_LAYER for the background shared by every frame
+     */
+    public void setLayer(int layer) {
+        this.layer = layer;
+    }
+
+    public int getLayer() {
+        return layer;
+    }
+
+    /**
+     * Sets how many frames either side of the current one are shown in the onion skin.
+     *
+     * @param before the number of earlier frames, up to MAX_ONION_DEPTH
+     * @param after  the number of later frames, up to MAX_ONION_DEPTH
+     */
+    public void setOnionSkin(int before, int after) {
+        onionBefore = Math.max(0, Math.min(MAX_ONION_DEPTH, before));
+        onionAfter = Math.max(0, Math.min(MAX_ONION_DEPTH, after));
+        if (!animating)
+            buildOnionSkin();
+        invalidate();
+    }
+
     /**
      * Toggles the image overlay.
      */
     public void toggleOnionSkin() {
         imageOverlay = !imageOverlay;
+        if (!animating)
+            buildOnionSkin();
         String str = (imageOverlay ? "on" : "off");
         Toast.makeText(getContext(), "Overlay is now " + str, Toast.LENGTH_SHORT).show();
         invalidate();
     }
 
     /**
-     * Creates a new frame with the Bitmap that is currently being displayed.
+     * Creates a new frame with the strokes of the frame that is currently being displayed.
      */
     public void duplicateFrame() {
         if (!animating) {
-            newFrame();
-            drawCanvas.drawBitmap(frames.get(frameIndex - 1), 0, 0, drawPaint);
+            frameIndex = frames.duplicate(frameIndex);
+            setCurrentFrame();
         }
     }
 
     /**
-     * Uses the AndroidSequenceEncoder class from the external JCodec class to create
-     * a video from the drawn frames. The video is saved as an mp4 in a sub-directory
-     * withing the user's video files.
+     * Sets the length of the shorter side of the frames of a new project. It takes effect
+     * when the View is laid out, if the FrameStore has no size yet; the frames of a project
+     * that has one are always drawn at that size.
      *
-     * @param videoName the name of the video file
-     */
-    public void saveToVideo(String videoName) {
-        try {
-            File path = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MOVIES);
-            File dir = new File(path.getAbsolutePath() + "/FlipBook");
-            if (!dir.isDirectory())
-                dir.mkdir();
-            File file = new File(dir, videoName);
-
-            AndroidSequenceEncoder encoder =
-                    AndroidSequenceEncoder.createSequenceEncoder(file, FRAME_RATE);
-
-            for (Bitmap f : frames) {
-                if (f.getHeight() % 2 != 0)
-                    f.setHeight(f.getHeight() - 1); //errors occur when height is odd
-                encoder.encodeImage(f);
-            }
+     * @param shortSide the length in pixels, or 0 for the size of the View
+     */
+    public void setWorkingResolution(int shortSide) {
+        workingResolution = shortSide > 0 ? shortSide : Integer.MAX_VALUE;
+    }
 
-            encoder.finish();
-            //Toast.makeText(getContext(), file.getAbsolutePath(), Toast.LENGTH_SHORT).show();
-            Toast.makeText(getContext(), "Save successful", Toast.LENGTH_SHORT).show();
-        } catch (IOException e) {
-            e.printStackTrace();
-            Toast.makeText(getContext(), "Save Failed", Toast.LENGTH_SHORT).show();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /**
+     * Returns the frame rate animations are played and exported at.
+     *
+     * @return the number of frames per second
+     */
+    public int getFrameRate() {
+        return playback.getFrameRate();
+    }
+
+    /**
+     * Sets the frame rate animations are played and exported at.
+     *
+     * @param fps the number of frames per second, up to PlaybackEngine.MAX_FRAME_RATE
+     */
+    public void setFrameRate(int fps) {
+        playback.setFrameRate(fps);
+    }
+
+    /**
+     * Returns the engine that plays the animation, which keeps count of dropped frames.
+     *
+     * @return the playback engine
+     */
+    public PlaybackEngine getPlayback() {
+        return playback;
     }
 
     /**
-     * Returns the ArrayList of frames.
+     * Returns the FrameStore holding the frames.
      *
-     * @return the ArrayList of frames
+     * @return the FrameStore holding the frames
      */
-    public ArrayList<Bitmap> getArray() {
+    public FrameStore getFrameStore() {
         return frames;
     }
 }
@@ -0,0 +1,131 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+
+/**
+ * A Bitmap that displays a TiledRaster. It remembers which tile it last copied into each
+ * cell of the grid, so showing a different raster only copies the tiles that differ.
+ * Neighbouring frames usually share most of their tiles, which makes flipping between
+ * them, or playing them back, much cheaper than copying the whole screen. Packed tiles
+ * are expanded into a buffer that is reused for every tile. The Bitmap comes from the
+ * BitmapPool, and goes back to it when released.
+ *
+ * @author Steven Hricenak
+ */
+public class FrameBitmap {
+    private final Bitmap bitmap;
+    private final int width;
+    private final int height;
+    private Tile[] shown;
+    private int cols;
+    private final int[] expanded = new int[Tile.SIZE * Tile.SIZE];
+
+    /**
+     * Takes a Bitmap of the given size from the pool, which shows nothing yet.
+     */
+    public FrameBitmap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        bitmap = BitmapPool.get().acquire(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Makes the Bitmap show a raster, copying only the tiles that are not already shown.
+     *
+     * @param raster the raster to show
+     */
+    public void show(TiledRaster raster) {
+        cols = raster.getColumns();
+        if (shown == null || shown.length != cols * raster.getRows())
+            shown = new Tile[cols * raster.getRows()];
+        for (int row = 0; row < raster.getRows(); row++)
+            for (int col = 0; col < raster.getColumns(); col++) {
+                Tile t = raster.getTile(col, row);
+                if (shown[row * cols + col] != t)
+                    copyTile(raster, col, row);
+            }
+    }
+
+    /**
+     * Copies every tile of a raster that overlaps a rectangle, whether or not it is already
+     * shown. This is needed after tiles have been drawn on in place.
+     *
+     * @param raster the raster being shown
+     * @param left   the left edge of the rectangle
+     * @param top    the top edge of the rectangle
+     * @param right  the right edge of the rectangle, exclusive
+     * @param bottom the bottom edge of the rectangle, exclusive
+     */
+    public void refresh(TiledRaster raster, int left, int top, int right, int bottom) {
+        if (shown == null)
+            show(raster);
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(width, right);
+        bottom = Math.min(height, bottom);
+        for (int row = top / Tile.SIZE; row * Tile.SIZE < bottom; row++)
+            for (int col = left / Tile.SIZE; col * Tile.SIZE < right; col++)
+                copyTile(raster, col, row);
+    }
+
+    /**
+     * Forgets what is shown in the tiles overlapping a rectangle, so the next call to show
+     * copies them again. This is needed when a tile this Bitmap may be showing has been
+     * drawn on in place.
+     *
+     * @param left   the left edge of the rectangle
+     * @param top    the top edge of the rectangle
+     * @param right  the right edge of the rectangle, exclusive
+     * @param bottom the bottom edge of the rectangle, exclusive
+     */
+    public void invalidate(int left, int top, int right, int bottom) {
+        if (shown == null)
+            return;
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(width, right);
+        bottom = Math.min(height, bottom);
+        for (int row = top / Tile.SIZE; row * Tile.SIZE < bottom; row++)
+            for (int col = left / Tile.SIZE; col * Tile.SIZE < right; col++)
+                shown[row * cols + col] = null;
+    }
+
+    /**
+     * Forgets everything that is shown.
+     */
+    public void invalidate() {
+        if (shown != null)
+            Arrays.fill(shown, null);
+    }
+
+    /**
+     * Returns the Bitmap to the pool. This must not be used afterwards.
+     */
+    public void release() {
+        BitmapPool.get().release(bitmap);
+        shown = null;
+    }
+
+    private void copyTile(TiledRaster raster, int col, int row) {
+        Tile t = raster.getTile(col, row);
+        int x = col * Tile.SIZE;
+        int y = row * Tile.SIZE;
+        int w = Math.min(Tile.SIZE, Math.min(width, raster.getWidth()) - x);
+        int h = Math.min(Tile.SIZE, Math.min(height, raster.getHeight()) - y);
+        if (w > 0 && h > 0) {
+            int[] pixels = t.getPixels();
+            if (pixels == null) {
+                t.read(0, expanded, 0, Tile.SIZE * h);
+                pixels = expanded;
+            }
+            bitmap.setPixels(pixels, 0, Tile.SIZE, x, y, w, h);
+        }
+        shown[row * cols + col] = t;
+    }
+}
@@ -1,14 +1,18 @@
 package edu.bloomu.sjh91055.finalproj;
 
 import android.Manifest;
+import android.app.ProgressDialog;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
@@ -20,10 +24,21 @@ import android.view.View;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.FrameLayout;
+import android.widget.Toast;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The main activity of the Flip Book app. Most of the activity is taken up by the
@@ -36,18 +51,53 @@ import java.util.ArrayList;
 public class MainActivity extends AppCompatActivity {
 
     private static final int PERMISSION_REQUEST_STORAGE = 0;
-
+    private static final int PERMISSION_REQUEST_GIF = 1;
+    private static final int PERMISSION_REQUEST_APNG = 2;
+    private static final int STROKE_FORMAT = 2;
+    private static final String PROJECT_DIR = "project";
+    private static final long CHECKPOINT_MILLIS = 30000;
+    private static final String VIDEO_CACHE_DIR = "video";
+    private static final long VIDEO_CACHE_BYTES = 64 * 1024 * 1024;
+    private static final int[] FRAME_RATES = {1, 2, 4, 6, 8, 12, 15, 24, 30, 60};
+    private static final int[] RESOLUTIONS = {0, 480, 720, 1080};
+    private static final int[][] ONION_DEPTHS = {{1, 0}, {2, 0}, {3, 0}, {5, 0}, {1, 1},
+            {2, 2}, {3, 3}, {5, 5}};
+    private static final String[] LAYERS = {"Background (every frame)", "Layer 1 (back)",
+            "Layer 2", "Layer 3 (front)"};
+
+    private FrameStore frameStore;
+    private ProjectStorage project;
+    private Journal journal;
+    private Handler handler;
+    private Runnable checkpointer;
     private DoodleView doodle;
     private ColorPickerView colorPicker;
+    private TimelineView timeline;
+    private MetricsOverlay metricsOverlay;
     private FrameLayout f1;
     private FrameLayout f2;
     private String videoName;
+    private Exporter exporter;
+    private ProgressDialog exportProgress;
+    private EncodedFrameCache videoCache;
+    private Executor mainThread;
+    private int frameRate;
+    private int workingResolution;
+    private int videoResolution;
+    private int onionBefore;
+    private int onionAfter;
+    private int layer;
 
     /**
      * Starts the activity by instantiating the DoodleView and ColorPickerView and adding
-     * them to their proper FrameViews. It loads the pre-saved strings from
-     * SharedPreferences and converts them to Bitmaps that are filled in an ArrayList
-     * that is then passed to the DoodleView constructor.
+     * them to their proper FrameViews. The saved project is mapped into memory and its
+     * frames are added to a FrameStore that is then passed to the DoodleView constructor.
+     * The frames are parsed when first used, so only the frame shown is read at startup.
+     * A project still saved in SharedPreferences by an older version of the app is moved
+     * into the project directory the first time, and its preference keys are removed
+     * once it is saved there.
+     * Edits journaled since the project was last saved, such as before a crash, are
+     * replayed onto the frames, and every edit from then on is journaled as it is made.
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -56,26 +106,77 @@ public class MainActivity extends AppCompatActivity {
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
-        ArrayList<Bitmap> bitmaps = new ArrayList<>();
-        SharedPreferences sp = getPreferences(Context.MODE_PRIVATE);
-        int frameCount = sp.getInt("numberOfFrames", 0);
-
-        byte[] imageAsBytes;
-        String encodedBitmap;
-        Bitmap bm;
-        for (int i = 0; i < frameCount && i < DoodleView.MAX_FRAME; i++) {
-            encodedBitmap = sp.getString("frame" + i, null);
-            if (encodedBitmap != null) {
-                imageAsBytes = Base64.decode(encodedBitmap.getBytes(), Base64.DEFAULT);
-                bm = BitmapFactory.decodeByteArray(imageAsBytes, 0, imageAsBytes.length);
-                bm = bm.copy(Bitmap.Config.ARGB_8888, true); //makes mutable
-                bitmaps.add(bm);
+        frameStore = new FrameStore(frameCacheBudget());
+        frameStore.setImageDecoder(new BitmapDecoder());
+        handler = new Handler(Looper.getMainLooper());
+        mainThread = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable r) {
+                handler.post(r);
+            }
+        };
+        File projectDir = new File(getFilesDir(), PROJECT_DIR);
+        project = ProjectStorage.open(projectDir);
+        final SharedPreferences sp = getPreferences(Context.MODE_PRIVATE);
+        if (!project.exists() && sp.contains("numberOfFrames")) {
+            migratePreferences(sp);
+            project.save(frameStore.getFrames(), 0, 0, new Runnable() {
+                @Override
+                public void run() {
+                    removePreferences(sp);
+                }
+            });
+        } else {
+            try {
+                for (Frame f : project.load())
+                    frameStore.add(f);
+                if (project.getBackground() != null)
+                    frameStore.setBackground(project.getBackground());
+                if (project.getWidth() > 0 && project.getHeight() > 0)
+                    frameStore.setSize(project.getWidth(), project.getHeight());
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
-
-        doodle = new DoodleView(this, bitmaps);
+        journal = new Journal(projectDir);
+        try {
+            journal.replay(frameStore, project.getCheckpoint());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        frameStore.setJournal(journal);
+        checkpointer = new Runnable() {
+            @Override
+            public void run() {
+                checkpoint();
+                handler.postDelayed(this, CHECKPOINT_MILLIS);
+            }
+        };
+
+        frameRate = sp.getInt("frameRate", DoodleView.DEFAULT_FRAME_RATE);
+        workingResolution = sp.getInt("workingResolution",
+                DoodleView.DEFAULT_WORKING_RESOLUTION);
+        videoResolution = sp.getInt("videoResolution", 0);
+        onionBefore = sp.getInt("onionBefore", 1);
+        onionAfter = sp.getInt("onionAfter", 0);
+        timeline = new TimelineView(this, frameStore, new TimelineView.Listener() {
+            @Override
+            public void onFrameSelected(int index) {
+                doodle.goToFrame(index);
+            }
+        });
+        ((FrameLayout) findViewById(R.id.timeline)).addView(timeline);
+
+        doodle = new DoodleView(this, frameStore);
+        doodle.setFrameRate(frameRate);
+        doodle.setWorkingResolution(workingResolution);
+        doodle.setOnionSkin(onionBefore, onionAfter);
+        doodle.setLayer(layer);
+        doodle.setFrameListener(createFrameListener());
         f1 = (FrameLayout) findViewById(R.id.doodle);
         f1.addView(doodle);
+        metricsOverlay = new MetricsOverlay(this);
+        f1.addView(metricsOverlay);
 
         colorPicker = new ColorPickerView(this);
         f2 = (FrameLayout) findViewById(R.id.colorPicker);
@@ -97,31 +198,180 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * When the app is stopped, the ArrayList of frames is received from the DoodleView object,
-     * and every Bitmap in it is converted to a string and stored into SharedPreferences.
+     * Returns the number of bytes of decoded frames the FrameStore may keep in memory: a
+     * quarter of the heap, which leaves room for the current frame, its onion skin and
+     * playback read-ahead on any device.
+     *
+     * @return the cache budget in bytes
+     */
+    private long frameCacheBudget() {
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Adds the frames of a project saved in SharedPreferences to the FrameStore. Projects
+     * saved before frames were stored as strokes hold a PNG per frame, which becomes the
+     * frame's base image. The PNGs are converted to FrameCodec's format, which is much
+     * faster to draw, on every core at once.
+     *
+     * @param sp the preferences holding the project
+     */
+    private void migratePreferences(SharedPreferences sp) {
+        int frameCount = sp.getInt("numberOfFrames", 0);
+        boolean strokes = sp.getInt("frameFormat", 1) >= STROKE_FORMAT;
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        List<Future<byte[]>> bases = new ArrayList<>();
+
+        byte[] frameAsBytes;
+        String encodedFrame;
+        for (int i = 0; i < frameCount; i++) {
+            encodedFrame = sp.getString("frame" + i, null);
+            if (encodedFrame != null) {
+                frameAsBytes = Base64.decode(encodedFrame.getBytes(), Base64.DEFAULT);
+                if (strokes)
+                    frameStore.add(readFrame(frameAsBytes));
+                else
+                    bases.add(pool.submit(transcode(frameAsBytes)));
+            }
+        }
+        for (Future<byte[]> base : bases) {
+            try {
+                frameStore.add(new Frame(base.get()));
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                frameStore.add(new Frame());
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Returns a task that converts a PNG into FrameCodec's format. The PNG is kept as it is
+     * if it cannot be decoded, or has too many colors.
+     *
+     * @param png the encoded image
+     * @return the task, which returns the image to use as a frame's base
+     */
+    private static Callable<byte[]> transcode(final byte[] png) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                Bitmap bm = BitmapPool.get().decode(png);
+                if (bm == null)
+                    return png;
+                int w = bm.getWidth();
+                int h = bm.getHeight();
+                int[] argb = new int[w * h];
+                bm.getPixels(argb, 0, w, 0, 0, w, h);
+                BitmapPool.get().release(bm);
+                byte[] encoded = FrameCodec.encode(argb, w, h);
+                return encoded != null ? encoded : png;
+            }
+        };
+    }
+
+    /**
+     * Removes every key a project saved in SharedPreferences used.
+     *
+     * @param sp the preferences holding the project
+     */
+    private void removePreferences(SharedPreferences sp) {
+        int frameCount = sp.getInt("numberOfFrames", 0);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.remove("numberOfFrames");
+        editor.remove("frameFormat");
+        for (int i = 0; i < frameCount; i++)
+            editor.remove("frame" + i);
+        editor.apply();
+    }
+
+    /**
+     * Converts the bytes of a saved frame back into a Frame.
+     *
+     * @param bytes the frame, as written by Frame.writeTo
+     * @return the frame, or a blank frame if the bytes are corrupt
+     */
+    private Frame readFrame(byte[] bytes) {
+        try {
+            return Frame.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new Frame();
+        }
+    }
+
+    /**
+     * While the app is in the foreground, the project is checkpointed every so often, so
+     * the journal replayed after a crash stays short.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        handler.postDelayed(checkpointer, CHECKPOINT_MILLIS);
+    }
+
+    /**
+     * When the app is stopped, the project is saved in the background.
      */
     @Override
     protected void onStop() {
         super.onStop();
-        ArrayList<Bitmap> bitmaps = doodle.getArray();
-        int frameCount = bitmaps.size();
-        SharedPreferences sp = getPreferences(Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sp.edit();
-        editor.putInt("numberOfFrames", frameCount);
+        handler.removeCallbacks(checkpointer);
+        checkpoint();
+    }
 
-        for (int i = 0; i < frameCount; i++) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            Bitmap bm;
-            byte[] b;
-            String encodedBitmap;
-
-            bm = bitmaps.get(i);
-            bm.compress(Bitmap.CompressFormat.PNG, 100, baos);
-            b = baos.toByteArray();
-            encodedBitmap = Base64.encodeToString(b, Base64.DEFAULT);
-            editor.putString("frame" + i, encodedBitmap);
+    /**
+     * Stops the threads of the project's frames and journal when the activity is
+     * destroyed, since a new activity opens the project again. The edits journaled so far
+     * are written in the background, and the checkpoint made as the activity stopped
+     * saves them anyway. The storage is shared by every activity, so saves already
+     * requested finish before the new activity loads the project. An export under way is
+     * cancelled, since it reads the frames, and its dialog goes with the activity.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (exporter != null) {
+            exporter.cancel();
+            exporter = null;
+            exportProgress.dismiss();
         }
-        editor.commit();
+        frameStore.close();
+        journal.close();
+    }
+
+    /**
+     * Gives up the bitmaps kept for reuse when the system runs short of memory or the app
+     * is no longer visible.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+            BitmapPool.get().clear();
+    }
+
+    /**
+     * Saves the project in the background, as of the latest journaled edit, and deletes
+     * the journal up to that edit once the save is on disk. Only the frames changed since
+     * the last save are written. Does nothing if the project has not changed since the
+     * last checkpoint.
+     */
+    private void checkpoint() {
+        FrameStore frames = doodle.getFrameStore();
+        if (journal.getSequence() == project.getCheckpoint()
+                && frames.getWidth() == project.getWidth()
+                && frames.getHeight() == project.getHeight())
+            return;
+        final long sequence = journal.checkpoint();
+        project.save(frames.getFrames(), frames.getBackground(), frames.getWidth(),
+                frames.getHeight(), sequence, new Runnable() {
+                    @Override
+                    public void run() {
+                        journal.discard(sequence);
+                    }
+                });
     }
 
     /*
@@ -177,12 +427,25 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * A helper method the resets the DoodleView and ColorPickerView.
+     * A helper method the resets the DoodleView and ColorPickerView. The old views are
+     * removed, so their bitmaps go back to the pool for the new ones.
      */
     private void resetFrameViews() {
-        doodle = new DoodleView(this);
+        doodle.getPlayback().stop();
+        frameStore.clear();
+        frameStore.setSize(0, 0); //the new project takes the working resolution
+        timeline.clear();
+        f1.removeView(doodle);
+        f2.removeView(colorPicker);
+        doodle = new DoodleView(this, frameStore);
+        doodle.setFrameRate(frameRate);
+        doodle.setWorkingResolution(workingResolution);
+        doodle.setOnionSkin(onionBefore, onionAfter);
+        doodle.setLayer(layer);
+        doodle.setFrameListener(createFrameListener());
         f1 = (FrameLayout) findViewById(R.id.doodle);
         f1.addView(doodle);
+        metricsOverlay.bringToFront();
 
         colorPicker = new ColorPickerView(this);
         f2 = (FrameLayout) findViewById(R.id.colorPicker);
@@ -190,7 +453,193 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Toggles whether or not the previous frame should be overlaid behind the current one.
+     * Creates the listener that keeps the timeline on the frame the DoodleView shows.
+     *
+     * @return the listener
+     */
+    private DoodleView.FrameListener createFrameListener() {
+        return new DoodleView.FrameListener() {
+            @Override
+            public void onFrameChanged(int index) {
+                timeline.setCurrent(index);
+            }
+        };
+    }
+
+    /**
+     * Presents a dialog box listing the frame rates the animation can be played and
+     * exported at. The choice is remembered for the next time the app is started.
+     *
+     * @return true
+     */
+    public boolean chooseFrameRate(MenuItem m) {
+        final String[] names = new String[FRAME_RATES.length];
+        int checked = -1;
+        for (int i = 0; i < FRAME_RATES.length; i++) {
+            names[i] = FRAME_RATES[i] + " fps";
+            if (FRAME_RATES[i] == frameRate)
+                checked = i;
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Frame rate");
+        builder.setSingleChoiceItems(names, checked, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                frameRate = FRAME_RATES[which];
+                doodle.setFrameRate(frameRate);
+                getPreferences(Context.MODE_PRIVATE).edit().putInt("frameRate", frameRate)
+                        .apply();
+                dialog.dismiss();
+            }
+        });
+        builder.create().show();
+        return true;
+    }
+
+    /**
+     * Presents a dialog box listing the resolutions new projects can be drawn at, by the
+     * length of the shorter side. Frames at a lower resolution than the screen take less
+     * memory, and are scaled up to fit it. The current project keeps its resolution.
+     *
+     * @return true
+     */
+    public boolean chooseWorkingResolution(MenuItem m) {
+        showResolutionDialog("Resolution of new projects", "Screen", workingResolution,
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        workingResolution = RESOLUTIONS[which];
+                        doodle.setWorkingResolution(workingResolution);
+                        getPreferences(Context.MODE_PRIVATE).edit()
+                                .putInt("workingResolution", workingResolution).apply();
+                        dialog.dismiss();
+                        Toast.makeText(MainActivity.this, "Applies to new projects",
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+        return true;
+    }
+
+    /**
+     * Presents a dialog box listing the resolutions videos can be exported at, by the
+     * length of the shorter side. Frames are scaled to it as they are exported.
+     *
+     * @return true
+     */
+    public boolean chooseVideoResolution(MenuItem m) {
+        showResolutionDialog("Video resolution", "Same as drawing", videoResolution,
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        videoResolution = RESOLUTIONS[which];
+                        getPreferences(Context.MODE_PRIVATE).edit()
+                                .putInt("videoResolution", videoResolution).apply();
+                        dialog.dismiss();
+                    }
+                });
+        return true;
+    }
+
+    /**
+     * Shows a single choice dialog of the RESOLUTIONS.
+     *
+     * @param title    the title of the dialog
+     * @param none     the name of the first choice, which is 0
+     * @param current  the resolution to check
+     * @param listener told which one is chosen
+     */
+    private void showResolutionDialog(String title, String none, int current,
+                                      DialogInterface.OnClickListener listener) {
+        String[] names = new String[RESOLUTIONS.length];
+        int checked = -1;
+        for (int i = 0; i < RESOLUTIONS.length; i++) {
+            names[i] = RESOLUTIONS[i] == 0 ? none : RESOLUTIONS[i] + "p";
+            if (RESOLUTIONS[i] == current)
+                checked = i;
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(title);
+        builder.setSingleChoiceItems(names, checked, listener);
+        builder.create().show();
+    }
+
+    /**
+     * Undoes the latest change to the current frame.
+     *
+     * @return true
+     */
+    public boolean undo(MenuItem m) {
+        doodle.undo();
+        return true;
+    }
+
+    /**
+     * Redoes the latest undone change to the current frame.
+     *
+     * @return true
+     */
+    public boolean redo(MenuItem m) {
+        doodle.redo();
+        return true;
+    }
+
+    /**
+     * Presents a dialog box listing how many frames before and after the current one the
+     * onion skin can show. The choice is remembered for the next time the app is started.
+     *
+     * @return true
+     */
+    public boolean chooseOnionDepth(MenuItem m) {
+        final String[] names = new String[ONION_DEPTHS.length];
+        int checked = -1;
+        for (int i = 0; i < ONION_DEPTHS.length; i++) {
+            names[i] = ONION_DEPTHS[i][0] + " before";
+            if (ONION_DEPTHS[i][1] > 0)
+                names[i] += ", " + ONION_DEPTHS[i][1] + " after";
+            if (ONION_DEPTHS[i][0] == onionBefore && ONION_DEPTHS[i][1] == onionAfter)
+                checked = i;
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Onion skin");
+        builder.setSingleChoiceItems(names, checked, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                onionBefore = ONION_DEPTHS[which][0];
+                onionAfter = ONION_DEPTHS[which][1];
+                doodle.setOnionSkin(onionBefore, onionAfter);
+                getPreferences(Context.MODE_PRIVATE).edit()
+                        .putInt("onionBefore", onionBefore)
+                        .putInt("onionAfter", onionAfter).apply();
+                dialog.dismiss();
+            }
+        });
+        builder.create().show();
+        return true;
+    }
+
+    /**
+     * Presents a dialog box listing the layers strokes can be drawn on: one of the
+     * layers of the current frame, or the background shared by every frame.
+     *
+     * @return true
+     */
+    public boolean chooseLayer(MenuItem m) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Draw on");
+        builder.setSingleChoiceItems(LAYERS, layer + 1, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                layer = which - 1;
+                doodle.setLayer(layer);
+                dialog.dismiss();
+            }
+        });
+        builder.create().show();
+        return true;
+    }
+
+    /**
+     * Toggles whether or not the onion skin should be overlaid on the current frame.
      *
      * @return true
      */
@@ -199,6 +648,50 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
 
+    /**
+     * Shows or hides the metrics overlay.
+     *
+     * @return true
+     */
+    public boolean toggleMetrics(MenuItem m) {
+        boolean shown = metricsOverlay.getVisibility() == View.VISIBLE;
+        metricsOverlay.setVisibility(shown ? View.GONE : View.VISIBLE);
+        return true;
+    }
+
+    /**
+     * Writes the metrics to a text file in the app's external files directory, which
+     * needs no permission, so it can be attached to a bug report. The metrics are reset
+     * afterwards, so the next dump covers only what happens after this one.
+     *
+     * @return true
+     */
+    public boolean saveMetrics(MenuItem m) {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            Toast.makeText(this, "Storage is unavailable", Toast.LENGTH_SHORT).show();
+            return true;
+        }
+        File file = new File(dir, findAvailableName(dir, "metrics", ".txt"));
+        try {
+            FileWriter out = new FileWriter(file);
+            try {
+                out.write(Build.MANUFACTURER + " " + Build.MODEL + ", Android "
+                        + Build.VERSION.RELEASE + ", " + frameStore.size() + " frames, "
+                        + frameStore.getWidth() + "x" + frameStore.getHeight() + "\n");
+                Metrics.get().writeTo(out);
+            } finally {
+                out.close();
+            }
+            Metrics.get().reset();
+            Toast.makeText(this, "Saved metrics to " + file, Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Toast.makeText(this, "Could not save metrics", Toast.LENGTH_SHORT).show();
+        }
+        return true;
+    }
+
     /**
      * Creates a new frame, with the contents of the current one.
      *
@@ -263,8 +756,10 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Method to save the current animation as an mp4 file on the device.
-     * Called from both the menu item and the onRequestPermissionsResult methods.
+     * Method to save the current animation as an mp4 file on the device, at the chosen
+     * video resolution. Frames encoded by earlier exports are reused from a cache in the
+     * app's cache directory. Called from both the menu item and the
+     * onRequestPermissionsResult methods.
      */
     public void saveVideo() {
         //Checking permissions
@@ -273,12 +768,160 @@ public class MainActivity extends AppCompatActivity {
             ActivityCompat.requestPermissions(this,
                     new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE},
                     PERMISSION_REQUEST_STORAGE);
-        } else {
-            doodle.saveToVideo(videoName);
+        } else if (exporter == null) {
+            File path = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MOVIES);
+            File dir = new File(path.getAbsolutePath() + "/FlipBook");
+            if (!dir.isDirectory())
+                dir.mkdir();
+            int[] size = Resampler.evenSize(frameStore.getWidth(), frameStore.getHeight(),
+                    videoResolution);
+            if (videoCache == null)
+                videoCache = new EncodedFrameCache(new File(getCacheDir(), VIDEO_CACHE_DIR),
+                        VIDEO_CACHE_BYTES);
+            ProgressDialog progress = createExportDialog("Saving video");
+            VideoExporter video = new VideoExporter(frameStore, new File(dir, videoName),
+                    doodle.getFrameRate(), size[0], size[1], createExportListener(progress),
+                    mainThread);
+            video.setCache(videoCache);
+            exporter = video;
+            startExport(progress);
             findAvailableName();
         }
     }
 
+    /**
+     * Saves the current animation as an animated GIF or PNG in the pictures directory of
+     * the device. Called from both the menu items and the onRequestPermissionsResult
+     * methods.
+     *
+     * @param format AnimationExporter.GIF or AnimationExporter.APNG
+     */
+    public void saveAnimation(int format) {
+        if (ContextCompat.checkSelfPermission(this,
+                Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this,
+                    new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE},
+                    format == AnimationExporter.GIF ? PERMISSION_REQUEST_GIF
+                            : PERMISSION_REQUEST_APNG);
+        } else if (exporter == null) {
+            File path = Environment.getExternalStoragePublicDirectory(
+                    Environment.DIRECTORY_PICTURES);
+            File dir = new File(path.getAbsolutePath() + "/FlipBook");
+            if (!dir.isDirectory())
+                dir.mkdir();
+            String extension = format == AnimationExporter.GIF ? ".gif" : ".png";
+            ProgressDialog progress = createExportDialog("Saving animation");
+            exporter = new AnimationExporter(frameStore,
+                    new File(dir, findAvailableName(dir, "Animation", extension)),
+                    doodle.getFrameRate(), format, ColorPickerView.COLORS,
+                    createExportListener(progress), mainThread);
+            startExport(progress);
+        }
+    }
+
+    /**
+     * Finds an unused file name in a directory, probing the same way findAvailableName
+     * does for videos.
+     *
+     * @param dir       the directory
+     * @param prefix    the start of the name
+     * @param extension the end of the name
+     * @return the name, made of the prefix, a number and the extension
+     */
+    private String findAvailableName(File dir, String prefix, String extension) {
+        String[] files = dir.list();
+        if (files == null)
+            return prefix + 0 + extension;
+        int h = files.length;
+        int offset = 0;
+        String name = prefix + h + extension;
+        while (fileInList(files, name)) {
+            offset++;
+            name = prefix + (h + (offset * offset)) + extension;
+        }
+        return name;
+    }
+
+    /**
+     * Creates the dialog that shows the progress of an export, and lets the user cancel
+     * it.
+     *
+     * @param title the title of the dialog
+     * @return the dialog, not yet shown
+     */
+    private ProgressDialog createExportDialog(String title) {
+        ProgressDialog progress = new ProgressDialog(this);
+        progress.setTitle(title);
+        progress.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        progress.setMax(frameStore.size());
+        progress.setCancelable(false);
+        progress.setButton(DialogInterface.BUTTON_NEGATIVE, "Cancel",
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (exporter != null)
+                            exporter.cancel();
+                    }
+                });
+        return progress;
+    }
+
+    /**
+     * Creates the listener that reports the progress and outcome of an export in its
+     * dialog.
+     *
+     * @param progress the dialog
+     * @return the listener
+     */
+    private Exporter.Listener createExportListener(final ProgressDialog progress) {
+        return new Exporter.Listener() {
+            @Override
+            public void onProgress(int done, int total) {
+                progress.setProgress(done);
+            }
+
+            @Override
+            public void onFinished(File file) {
+                exportEnded(progress, "Save successful");
+            }
+
+            @Override
+            public void onFailed(File file, Exception e) {
+                e.printStackTrace();
+                exportEnded(progress, "Save Failed");
+            }
+
+            @Override
+            public void onCancelled(File file) {
+                exportEnded(progress, "Save cancelled");
+            }
+        };
+    }
+
+    /**
+     * Shows the dialog of an export and starts the exporter in the background.
+     *
+     * @param progress the dialog
+     */
+    private void startExport(ProgressDialog progress) {
+        exportProgress = progress;
+        progress.show();
+        exporter.start();
+    }
+
+    /**
+     * Closes the progress dialog of an export that has ended and tells the user how it
+     * went. Does nothing once the activity is destroyed, which dismissed the dialog.
+     */
+    private void exportEnded(ProgressDialog progress, String message) {
+        if (isDestroyed())
+            return;
+        exporter = null;
+        exportProgress = null;
+        progress.dismiss();
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+    }
+
     /**
      * Driver method for saving the video, called from the dropdown menu.
      *
@@ -290,9 +933,32 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
 
+    /**
+     * Driver method for saving the animation as a GIF, called from the dropdown menu.
+     *
+     * @param m the menu item pressed
+     * @return true
+     */
+    public boolean saveGif(MenuItem m) {
+        saveAnimation(AnimationExporter.GIF);
+        return true;
+    }
+
+    /**
+     * Driver method for saving the animation as an animated PNG, called from the dropdown
+     * menu.
+     *
+     * @param m the menu item pressed
+     * @return true
+     */
+    public boolean saveApng(MenuItem m) {
+        saveAnimation(AnimationExporter.APNG);
+        return true;
+    }
+
     /**
      * Action listener called when the user first gives the app permission to save media to
-     * the device. Once given permission, it simply finishes by calling the saveVideo method.
+     * the device. Once given permission, it simply finishes the export that asked for it.
      */
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
@@ -302,6 +968,14 @@ public class MainActivity extends AppCompatActivity {
             case PERMISSION_REQUEST_STORAGE:
                 if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED)
                     saveVideo();
+                break;
+            case PERMISSION_REQUEST_GIF:
+                if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED)
+                    saveAnimation(AnimationExporter.GIF);
+                break;
+            case PERMISSION_REQUEST_APNG:
+                if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED)
+                    saveAnimation(AnimationExporter.APNG);
         }
     }
 }
@@ -0,0 +1,80 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.view.View;
+
+/**
+ * Shows the Metrics over the drawing, refreshed twice a second while it is visible. It
+ * takes no touches, so the user can keep drawing underneath to see what drawing costs.
+ *
+ * @author Steven Hricenak
+ */
+public class MetricsOverlay extends View {
+    private static final long REFRESH_MILLIS = 500;
+    private static final int TEXT_SIZE = 28;
+    private static final int PADDING = 8;
+
+    private final Paint textPaint;
+    private final Paint backgroundPaint;
+    private final Runnable refresh;
+    private String[] lines;
+
+    public MetricsOverlay(Context context) {
+        super(context);
+        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(TEXT_SIZE);
+        textPaint.setTypeface(Typeface.MONOSPACE);
+        backgroundPaint = new Paint();
+        backgroundPaint.setColor(0xA0000000);
+        lines = new String[0];
+        refresh = new Runnable() {
+            @Override
+            public void run() {
+                lines = Metrics.get().report().split("\n");
+                invalidate();
+                if (getVisibility() == VISIBLE)
+                    postDelayed(this, REFRESH_MILLIS);
+            }
+        };
+        setClickable(false);
+        setVisibility(GONE);
+    }
+
+    /**
+     * Starts refreshing when shown, and stops when hidden.
+     */
+    @Override
+    public void setVisibility(int visibility) {
+        super.setVisibility(visibility);
+        removeCallbacks(refresh);
+        if (visibility == VISIBLE)
+            post(refresh);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(refresh);
+    }
+
+    /**
+     * Draws the report on a dark box in the top left corner.
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float lineHeight = textPaint.getFontSpacing();
+        float width = 0;
+        for (String line : lines)
+            width = Math.max(width, textPaint.measureText(line));
+        canvas.drawRect(0, 0, width + 2 * PADDING, lines.length * lineHeight + 2 * PADDING,
+                backgroundPaint);
+        for (int i = 0; i < lines.length; i++)
+            canvas.drawText(lines[i], PADDING, PADDING + (i + 1) * lineHeight
+                    - textPaint.descent(), textPaint);
+    }
+}
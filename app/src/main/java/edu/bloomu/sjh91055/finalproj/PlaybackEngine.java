@@ -0,0 +1,165 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import android.view.Choreographer;
+
+/**
+ * Plays the animation in step with the display. Every vsync the Choreographer passes in
+ * the time the frame will be shown, and the engine works out from that which frame of
+ * the animation is due, rather than counting timer ticks. Playback therefore keeps to the
+ * frame rate even when a vsync is missed; frames whose time passed without being shown
+ * are counted as dropped.
+ * <p>
+ * While playing, the FrameStore's prefetch thread rasterizes the frames just ahead of the
+ * one shown, so they are ready in memory when they are due. A frame that is not ready in
+ * time is rasterized on the spot, and counted as a stall.
+ *
+ * @author Steven Hricenak
+ */
+public class PlaybackEngine implements Choreographer.FrameCallback {
+    public static final int MIN_FRAME_RATE = 1;
+    public static final int MAX_FRAME_RATE = 60;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final int READ_AHEAD = 4;
+
+    /**
+     * Receives the frames to show, on the main thread.
+     */
+    public interface Listener {
+        /**
+         * Called when a new frame of the animation is due.
+         *
+         * @param index  the position of the frame
+         * @param raster the frame's pixels
+         */
+        void onShowFrame(int index, TiledRaster raster);
+
+        /**
+         * Called once the last frame has been shown for its full duration, or playback
+         * was stopped.
+         */
+        void onPlaybackFinished();
+    }
+
+    private final FrameStore frames;
+    private final Listener listener;
+    private int frameRate;
+
+    private boolean playing;
+    private long startNanos;
+    private int frameCount;
+    private int shown;
+    private int droppedFrames;
+    private int stalledFrames;
+
+    /**
+     * Creates a stopped engine.
+     *
+     * @param frames    the frames to play
+     * @param frameRate the initial frame rate
+     * @param listener  shows the frames
+     */
+    public PlaybackEngine(FrameStore frames, int frameRate, Listener listener) {
+        this.frames = frames;
+        this.listener = listener;
+        setFrameRate(frameRate);
+    }
+
+    /**
+     * Sets the number of frames shown per second, between MIN_FRAME_RATE and
+     * MAX_FRAME_RATE. It takes effect the next time playback starts.
+     *
+     * @param fps the frame rate
+     */
+    public void setFrameRate(int fps) {
+        frameRate = Math.max(MIN_FRAME_RATE, Math.min(MAX_FRAME_RATE, fps));
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Returns the number of frames skipped during the last or current playback because
+     * their time passed before a vsync came to show them.
+     *
+     * @return the number of dropped frames
+     */
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Returns the number of frames during the last or current playback that were not
+     * prefetched in time, and had to be rasterized on the main thread.
+     *
+     * @return the number of stalled frames
+     */
+    public int getStalledFrames() {
+        return stalledFrames;
+    }
+
+    /**
+     * Starts playing from the first frame. Does nothing if already playing or if there are
+     * no frames.
+     */
+    public void start() {
+        if (playing || frames.size() == 0)
+            return;
+        playing = true;
+        startNanos = -1;
+        frameCount = frames.size();
+        shown = -1;
+        droppedFrames = 0;
+        stalledFrames = 0;
+        frames.prefetch(-1, READ_AHEAD);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Stops playing. The listener is told playback has finished.
+     */
+    public void stop() {
+        if (!playing)
+            return;
+        playing = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        listener.onPlaybackFinished();
+    }
+
+    /**
+     * Shows the frame due at the time the next display frame will appear.
+     *
+     * @param frameTimeNanos when the display frame will be shown
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!playing)
+            return;
+        if (startNanos < 0)
+            startNanos = frameTimeNanos;
+        int due = (int) ((frameTimeNanos - startNanos) * frameRate / NANOS_PER_SECOND);
+        if (due >= Math.min(frameCount, frames.size())) {
+            stop();
+            return;
+        }
+        if (due != shown) {
+            droppedFrames += due - shown - 1;
+            Metrics.get().droppedFrames.add(due - shown - 1);
+            shown = due;
+            TiledRaster raster = frames.getCachedRaster(due);
+            if (raster == null) {
+                stalledFrames++;
+                Metrics.get().stalledFrames.add(1);
+                raster = frames.getRaster(due);
+            }
+            frames.prefetch(due, READ_AHEAD);
+            if (raster != null)
+                listener.onShowFrame(due, raster);
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
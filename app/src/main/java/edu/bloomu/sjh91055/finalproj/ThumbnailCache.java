@@ -0,0 +1,278 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Small downscaled pictures of frames for the timeline, held in an LRU cache of their own
+ * with its own byte budget, apart from the FrameStore's cache of full-size rasters.
+ * <p>
+ * Thumbnails are made on a background thread: a snapshot of the frame is rasterized, or
+ * its cached tiles shared, and shrunk by a power of two with TiledRaster.downscale, so
+ * no full-size Bitmap is ever made. A thumbnail remembers the version of the frame it
+ * was made from, and is only made again once a stroke or clear has changed the frame or
+ * the background under it; until then, the old thumbnail is still shown.
+ * <p>
+ * While the timeline is scrolled through hundreds of frames, thumbnails are requested
+ * faster than they can be made. The newest requests are made first, since those are the
+ * frames on screen, and the oldest are dropped once too many are waiting.
+ * <p>
+ * Thumbnails of a project are all the same size, so their bitmaps are taken from the
+ * BitmapPool and given back to it when they are evicted or replaced.
+ *
+ * @author Steven Hricenak
+ */
+public class ThumbnailCache {
+    private static final int MAX_WAITING = 32;
+
+    /**
+     * Told on the main thread when a thumbnail is ready.
+     */
+    public interface Listener {
+        void onThumbnailReady();
+    }
+
+    /**
+     * A thumbnail, and the versions of the frame and background it shows.
+     */
+    private static class Thumbnail {
+        final Bitmap bitmap;
+        final int version;
+        final int background;
+        final int level;
+
+        Thumbnail(Bitmap bitmap, int version, int background, int level) {
+            this.bitmap = bitmap;
+            this.version = version;
+            this.background = background;
+            this.level = level;
+        }
+    }
+
+    /**
+     * A frame waiting for its thumbnail to be made.
+     */
+    private static class Request {
+        final Frame frame;
+        final Frame snapshot;
+        final int version;
+        final int background;
+        final int level;
+
+        Request(Frame frame, Frame snapshot, int version, int background, int level) {
+            this.frame = frame;
+            this.snapshot = snapshot;
+            this.version = version;
+            this.background = background;
+            this.level = level;
+        }
+    }
+
+    private final FrameStore store;
+    private final long budget;
+    private final Listener listener;
+    private final Handler main;
+    private final LinkedHashMap<Frame, Thumbnail> cache;
+    private final IdentityHashMap<Frame, Request> waiting;
+    private final LinkedBlockingDeque<Request> requests;
+    private final Thread worker;
+    private int level;
+    private int frameWidth;
+    private int frameHeight;
+    private long bytes;
+    private boolean closed;
+
+    //touched only by the worker thread
+    private int[] pixels;
+
+    /**
+     * Creates an empty cache and starts its background thread. Must be called on the
+     * main thread.
+     *
+     * @param store    the frames
+     * @param budget   the maximum number of bytes of thumbnails kept in memory
+     * @param listener told when a thumbnail is ready
+     */
+    public ThumbnailCache(FrameStore store, long budget, Listener listener) {
+        this.store = store;
+        this.budget = budget;
+        Metrics.get().thumbnailBudget.set(budget);
+        this.listener = listener;
+        main = new Handler(Looper.getMainLooper());
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        waiting = new IdentityHashMap<>();
+        requests = new LinkedBlockingDeque<>();
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "thumbnails");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Sets the greatest height of a thumbnail. Frames are shrunk by the smallest power of
+     * two that fits, and thumbnails of any other size, or made while the frames were of
+     * another size, are dropped.
+     *
+     * @param height the height in pixels
+     */
+    public void setMaxHeight(int height) {
+        int l = 0;
+        while (store.getHeight() >> l > height && store.getHeight() >> (l + 1) > 0)
+            l++;
+        if (l != level || store.getWidth() != frameWidth
+                || store.getHeight() != frameHeight) {
+            level = l;
+            frameWidth = store.getWidth();
+            frameHeight = store.getHeight();
+            clear();
+        }
+    }
+
+    /**
+     * Returns the thumbnail of a frame. If there is none, or the frame has changed since it
+     * was made, one is made in the background and the listener told when it is ready.
+     * Must be called on the main thread, and the Bitmap only used until the listener is
+     * next called.
+     *
+     * @param index the position of the frame
+     * @return the latest thumbnail of the frame, which may be out of date, or null if it
+     * has none yet
+     */
+    public Bitmap get(int index) {
+        Frame frame = store.getFrame(index);
+        Thumbnail t = cache.get(frame);
+        int version = frame.getVersion();
+        int background = store.getBackgroundGeneration();
+        if (t == null || t.version != version || t.background != background
+                || t.level != level)
+            request(frame, version, background);
+        return t == null ? null : t.bitmap;
+    }
+
+    /**
+     * Drops every thumbnail.
+     */
+    public void clear() {
+        for (Thumbnail t : cache.values())
+            BitmapPool.get().release(t.bitmap);
+        cache.clear();
+        bytes = 0;
+        Metrics.get().thumbnailBytes.set(0);
+        synchronized (waiting) {
+            waiting.clear();
+            requests.clear();
+        }
+    }
+
+    /**
+     * Drops every thumbnail and stops the background thread, letting go of the frames.
+     * Must be called on the main thread, and the cache not used afterwards.
+     */
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        clear();
+    }
+
+    /**
+     * Queues a frame to have its thumbnail made, unless it already is at this version. A
+     * frame that is waiting at an older version moves to the front with the new one.
+     */
+    private void request(Frame frame, int version, int background) {
+        synchronized (waiting) {
+            Request r = waiting.get(frame);
+            if (r != null && r.version == version && r.background == background
+                    && r.level == level)
+                return;
+            if (r != null)
+                requests.remove(r);
+            r = new Request(frame, frame.copy(), version, background, level);
+            waiting.put(frame, r);
+            requests.addLast(r);
+            while (requests.size() > MAX_WAITING)
+                waiting.remove(requests.removeFirst().frame);
+        }
+    }
+
+    /**
+     * Makes thumbnails on the background thread, newest request first.
+     */
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final Request r;
+            try {
+                r = requests.takeLast();
+            } catch (InterruptedException e) {
+                return;
+            }
+            TiledRaster raster = store.getSnapshotRaster(r.frame, r.snapshot, r.version);
+            int w = raster.getWidth() >> r.level;
+            int h = raster.getHeight() >> r.level;
+            Bitmap bitmap = null;
+            if (w > 0 && h > 0) {
+                if (pixels == null || pixels.length < w * h)
+                    pixels = new int[w * h];
+                raster.downscale(r.level, pixels);
+                bitmap = BitmapPool.get().acquire(w, h, Bitmap.Config.RGB_565);
+                bitmap.setPixels(pixels, 0, w, 0, 0, w, h);
+            }
+            raster.release();
+            final Bitmap made = bitmap;
+            main.post(new Runnable() {
+                @Override
+                public void run() {
+                    finish(r, made);
+                }
+            });
+        }
+    }
+
+    /**
+     * Caches a thumbnail that has been made, on the main thread, unless the request has
+     * been dropped or replaced in the meantime.
+     */
+    private void finish(Request r, Bitmap bitmap) {
+        synchronized (waiting) {
+            if (closed || waiting.get(r.frame) != r) {
+                BitmapPool.get().release(bitmap);
+                return;
+            }
+            waiting.remove(r.frame);
+        }
+        if (bitmap == null)
+            return;
+        Thumbnail old = cache.put(r.frame, new Thumbnail(bitmap, r.version, r.background, r.level));
+        bytes += bitmap.getByteCount();
+        if (old != null) {
+            bytes -= old.bitmap.getByteCount();
+            BitmapPool.get().release(old.bitmap);
+        }
+        trim();
+        listener.onThumbnailReady();
+    }
+
+    /**
+     * Evicts the least recently shown thumbnails until the cache is within its budget.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Frame, Thumbnail>> it = cache.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            Bitmap b = it.next().getValue().bitmap;
+            bytes -= b.getByteCount();
+            BitmapPool.get().release(b);
+            it.remove();
+        }
+        Metrics.get().thumbnailBytes.set(bytes);
+    }
+}
@@ -0,0 +1,210 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * A strip of frame thumbnails that can be dragged sideways to scroll through the
+ * animation, and tapped to go to a frame. Only the thumbnails on screen are drawn or
+ * asked for, and they come from a ThumbnailCache, so scrolling never rasterizes or
+ * decodes a full-size frame on the main thread. Frames whose thumbnails are not ready
+ * yet are drawn as grey boxes.
+ *
+ * @author Steven Hricenak
+ */
+public class TimelineView extends View {
+    private static final int GAP = 8;
+    private static final int BORDER = 4;
+    private static final int TAP_SLOP = 16;
+    private static final long THUMBNAIL_BUDGET = 4 * 1024 * 1024;
+
+    /**
+     * Told when a frame is tapped.
+     */
+    public interface Listener {
+        void onFrameSelected(int index);
+    }
+
+    private final FrameStore store;
+    private final ThumbnailCache thumbnails;
+    private final Listener listener;
+    private final Paint placeholderPaint;
+    private final Paint currentPaint;
+    private final Rect bounds;
+
+    private int thumbWidth;
+    private int thumbHeight;
+    private int frameWidth;
+    private int frameHeight;
+    private int current;
+    private float scroll;
+    private float downX;
+    private float lastX;
+    private boolean dragging;
+
+    /**
+     * Creates a timeline of the frames in a store.
+     *
+     * @param store    the frames
+     * @param listener told when a frame is tapped
+     */
+    public TimelineView(Context context, FrameStore store, Listener listener) {
+        super(context);
+        this.store = store;
+        this.listener = listener;
+        thumbnails = new ThumbnailCache(store, THUMBNAIL_BUDGET,
+                new ThumbnailCache.Listener() {
+                    @Override
+                    public void onThumbnailReady() {
+                        invalidate();
+                    }
+                });
+        placeholderPaint = new Paint();
+        placeholderPaint.setColor(Color.LTGRAY);
+        currentPaint = new Paint();
+        currentPaint.setColor(Color.DKGRAY);
+        currentPaint.setStyle(Paint.Style.STROKE);
+        currentPaint.setStrokeWidth(BORDER);
+        bounds = new Rect();
+    }
+
+    /**
+     * Sizes the thumbnails to fit the height of the View.
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        measureThumbnails();
+    }
+
+    /**
+     * Stops making thumbnails once the View is taken down with its activity.
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        thumbnails.close();
+    }
+
+    /**
+     * Draws the thumbnails of the frames on screen, with a border around the current one.
+     * The thumbnails are measured again whenever the frames have changed size, such as
+     * when a new project takes the working resolution.
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if ((thumbWidth == 0 || store.getWidth() != frameWidth
+                || store.getHeight() != frameHeight) && !measureThumbnails())
+            return;
+        int count = store.size();
+        int step = thumbWidth + GAP;
+        int first = Math.max(0, (int) (scroll / step));
+        for (int i = first; i < count && i * step - scroll < getWidth(); i++) {
+            int left = (int) (i * step - scroll) + GAP;
+            bounds.set(left, BORDER, left + thumbWidth, BORDER + thumbHeight);
+            Bitmap b = thumbnails.get(i);
+            if (b == null)
+                canvas.drawRect(bounds, placeholderPaint);
+            else
+                canvas.drawBitmap(b, null, bounds, null);
+            if (i == current)
+                canvas.drawRect(bounds, currentPaint);
+        }
+    }
+
+    /**
+     * Scrolls the strip as it is dragged, and goes to the frame that is tapped.
+     *
+     * @return true
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent e) {
+        float x = e.getX();
+        switch (e.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                downX = x;
+                lastX = x;
+                dragging = false;
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (Math.abs(x - downX) > TAP_SLOP)
+                    dragging = true;
+                if (dragging) {
+                    scrollStrip(scroll + lastX - x);
+                    lastX = x;
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (!dragging && thumbWidth > 0) {
+                    int index = (int) ((x + scroll) / (thumbWidth + GAP));
+                    if (index < store.size())
+                        listener.onFrameSelected(index);
+                }
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Marks a frame as the current one, scrolling it into view, and draws the strip again
+     * so that thumbnails of frames that have changed are brought up to date.
+     *
+     * @param index the position of the frame
+     */
+    public void setCurrent(int index) {
+        current = index;
+        if (thumbWidth > 0) {
+            int step = thumbWidth + GAP;
+            if (index * step < scroll)
+                scrollStrip(index * step);
+            else if ((index + 1) * step + GAP > scroll + getWidth())
+                scrollStrip((index + 1) * step + GAP - getWidth());
+        }
+        invalidate();
+    }
+
+    /**
+     * Drops every thumbnail, such as when a new project is started.
+     */
+    public void clear() {
+        thumbnails.clear();
+        thumbWidth = 0;
+        scroll = 0;
+        invalidate();
+    }
+
+    /**
+     * Works out the size of the thumbnails from the size of the frames, once both it and
+     * the View have been laid out.
+     *
+     * @return false if the sizes are not known yet
+     */
+    private boolean measureThumbnails() {
+        if (getHeight() <= 2 * BORDER || store.getWidth() == 0 || store.getHeight() == 0) {
+            thumbWidth = 0;
+            return false;
+        }
+        frameWidth = store.getWidth();
+        frameHeight = store.getHeight();
+        thumbHeight = getHeight() - 2 * BORDER;
+        thumbWidth = Math.max(1, store.getWidth() * thumbHeight / store.getHeight());
+        thumbnails.setMaxHeight(thumbHeight);
+        return true;
+    }
+
+    /**
+     * Scrolls to a position, kept within the ends of the strip.
+     */
+    private void scrollStrip(float position) {
+        float end = store.size() * (thumbWidth + GAP) + GAP - getWidth();
+        scroll = Math.max(0, Math.min(end, position));
+        invalidate();
+    }
+}
@@ -0,0 +1,102 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a whole export, from stroke lists to a finished file, in frames per second.
+ * None of the frames are cached, so every export rasterizes them all, as the first
+ * export of an animation that has not been played does.
+ *
+ * @author Steven Hricenak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+    private static final int FRAMES = 24;
+    private static final int FPS = 12;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable r) {
+            r.run();
+        }
+    };
+
+    @Param({"mp4", "gif", "apng"})
+    public String format;
+
+    private FrameStore store;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        store = Scribbles.animation(FRAMES, Scribbles.WIDTH / 2, Scribbles.HEIGHT / 2, 8);
+        file = File.createTempFile("export", "." + format);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long export() throws Exception {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final Exception[] failure = new Exception[1];
+        Exporter.Listener listener = new Exporter.Listener() {
+            @Override
+            public void onProgress(int done, int total) {
+            }
+
+            @Override
+            public void onFinished(File file) {
+                finished.countDown();
+            }
+
+            @Override
+            public void onFailed(File file, Exception e) {
+                failure[0] = e;
+                finished.countDown();
+            }
+
+            @Override
+            public void onCancelled(File file) {
+                finished.countDown();
+            }
+        };
+        Exporter exporter;
+        if (format.equals("mp4"))
+            exporter = new VideoExporter(store, file, FPS, listener, DIRECT);
+        else
+            exporter = new AnimationExporter(store, file, FPS, format.equals("gif")
+                    ? AnimationExporter.GIF : AnimationExporter.APNG, Scribbles.COLORS,
+                    listener, DIRECT);
+        exporter.start();
+        finished.await();
+        if (failure[0] != null)
+            throw failure[0];
+        return file.length();
+    }
+}
@@ -0,0 +1,65 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks adding frames to the animation, blank or duplicated from a frame that has
+ * been drawn on and rasterized. Frames are added in batches to a store that is emptied
+ * first, so the animation does not grow without end over an iteration.
+ *
+ * @author Steven Hricenak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+    private static final int BATCH = 100;
+
+    private FrameStore store;
+    private Frame drawn;
+
+    @Setup
+    public void setUp() {
+        store = new FrameStore(64L * 1024 * 1024);
+        store.setSize(Scribbles.WIDTH, Scribbles.HEIGHT);
+        drawn = Scribbles.frame(new Random(1), Scribbles.WIDTH, Scribbles.HEIGHT, 20);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int create() {
+        store.clear();
+        int index = 0;
+        for (int i = 0; i < BATCH; i++)
+            index = store.create();
+        return index;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int duplicate() {
+        store.clear();
+        store.add(drawn);
+        store.setCurrent(0);
+        int index = 0;
+        for (int i = 0; i < BATCH; i++)
+            index = store.duplicate(0);
+        return index;
+    }
+}
@@ -0,0 +1,59 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rasterizing strokes into a blank raster: a single long stroke, and a whole
+ * frame as the FrameStore rasterizes it when it is not cached, packing included.
+ *
+ * @author Steven Hricenak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterBenchmark {
+    private Stroke stroke;
+    private Frame frame;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(2);
+        stroke = Scribbles.stroke(random, Scribbles.WIDTH, Scribbles.HEIGHT, 500);
+        frame = Scribbles.frame(random, Scribbles.WIDTH, Scribbles.HEIGHT, 20);
+    }
+
+    @Benchmark
+    public long stroke() {
+        TiledRaster raster = new TiledRaster(Scribbles.WIDTH, Scribbles.HEIGHT);
+        StrokeRasterizer.draw(stroke, raster);
+        long bytes = raster.getByteCount();
+        raster.release();
+        return bytes;
+    }
+
+    @Benchmark
+    public long frame() {
+        TiledRaster raster = new TiledRaster(Scribbles.WIDTH, Scribbles.HEIGHT);
+        for (Stroke s : frame.getStrokes())
+            StrokeRasterizer.draw(s, raster);
+        raster.pack();
+        long bytes = raster.getByteCount();
+        raster.release();
+        return bytes;
+    }
+}
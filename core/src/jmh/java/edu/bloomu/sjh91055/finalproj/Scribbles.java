@@ -0,0 +1,91 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.util.Random;
+
+/**
+ * Drawings for the benchmarks, random but the same on every run: strokes that wander
+ * across the frame the way a hand does, in the colors of the ColorPicker.
+ *
+ * @author Steven Hricenak
+ */
+class Scribbles {
+    static final int WIDTH = 720;
+    static final int HEIGHT = 1280;
+    static final float STROKE_WIDTH = 20;
+    static final int[] COLORS = {0xFF000000, 0xFFFFFFFF, 0xFFFF0000, 0xFF00FF00,
+            0xFF0000FF, 0xFFFFFF00, 0xFF00FFFF, 0xFFFF00FF};
+
+    private Scribbles() {
+    }
+
+    /**
+     * Returns the points of a stroke that starts somewhere in the frame and turns a little
+     * at every step, as x and y pairs.
+     */
+    static float[] path(Random random, int width, int height, int points) {
+        float[] xy = new float[2 * points];
+        float x = random.nextInt(width);
+        float y = random.nextInt(height);
+        double angle = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < points; i++) {
+            xy[2 * i] = x;
+            xy[2 * i + 1] = y;
+            angle += (random.nextDouble() - 0.5) * 0.6;
+            x = Math.max(0, Math.min(width - 1, x + (float) (6 * Math.cos(angle))));
+            y = Math.max(0, Math.min(height - 1, y + (float) (6 * Math.sin(angle))));
+        }
+        return xy;
+    }
+
+    static Stroke stroke(Random random, int width, int height, int points) {
+        return Stroke.fromPoints(path(random, width, height, points), points, ink(random),
+                STROKE_WIDTH);
+    }
+
+    /**
+     * Returns any of the colors but white, which would not show on the background.
+     */
+    static int ink(Random random) {
+        int c = COLORS[random.nextInt(COLORS.length - 1)];
+        return c == FrameStore.BACKGROUND_COLOR ? COLORS[COLORS.length - 1] : c;
+    }
+
+    /**
+     * Returns a frame with the given number of strokes on it.
+     */
+    static Frame frame(Random random, int width, int height, int strokes) {
+        Frame f = new Frame();
+        for (int i = 0; i < strokes; i++)
+            f.addStroke(stroke(random, width, height, 200));
+        return f;
+    }
+
+    /**
+     * Returns a store holding an animation in which the same strokes move across the
+     * frame, so that every frame differs from the one before but shares most of its
+     * colors and shapes, as in a real animation. None of the frames are rasterized yet.
+     */
+    static FrameStore animation(int frames, int width, int height, int strokes) {
+        Random random = new Random(42);
+        float[][] paths = new float[strokes][];
+        int[] colors = new int[strokes];
+        for (int s = 0; s < strokes; s++) {
+            paths[s] = path(random, width, height, 150);
+            colors[s] = ink(random);
+        }
+        FrameStore store = new FrameStore(64L * 1024 * 1024);
+        store.setSize(width, height);
+        for (int i = 0; i < frames; i++) {
+            Frame f = new Frame();
+            for (int s = 0; s < strokes; s++) {
+                float[] moved = paths[s].clone();
+                for (int p = 0; p < moved.length; p += 2)
+                    moved[p] = (moved[p] + 8 * i) % width;
+                f.addStroke(Stroke.fromPoints(moved, moved.length / 2, colors[s],
+                        STROKE_WIDTH));
+            }
+            store.add(f);
+        }
+        return store;
+    }
+}
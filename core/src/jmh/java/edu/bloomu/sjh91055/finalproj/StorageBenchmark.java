@@ -0,0 +1,84 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks how frames are saved and loaded: the stroke records a project is stored as,
+ * and the run-length format of base images.
+ *
+ * @author Steven Hricenak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+    private Frame frame;
+    private byte[] record;
+    private ByteArrayOutputStream buffer;
+    private int[] pixels;
+    private byte[] image;
+    private PixelBuffer target;
+
+    @Setup
+    public void setUp() throws IOException {
+        frame = Scribbles.frame(new Random(3), Scribbles.WIDTH, Scribbles.HEIGHT, 20);
+        buffer = new ByteArrayOutputStream();
+        frame.writeTo(new DataOutputStream(buffer));
+        record = buffer.toByteArray();
+
+        TiledRaster raster = new TiledRaster(Scribbles.WIDTH, Scribbles.HEIGHT);
+        for (Stroke s : frame.getStrokes())
+            StrokeRasterizer.draw(s, raster);
+        pixels = new int[Scribbles.WIDTH * Scribbles.HEIGHT];
+        raster.read(pixels, 0, Scribbles.WIDTH, 0, 0, Scribbles.WIDTH, Scribbles.HEIGHT);
+        raster.release();
+        image = FrameCodec.encode(pixels, Scribbles.WIDTH, Scribbles.HEIGHT);
+        target = new PixelBuffer(Scribbles.WIDTH, Scribbles.HEIGHT);
+    }
+
+    @Benchmark
+    public int writeFrame() throws IOException {
+        buffer.reset();
+        frame.writeTo(new DataOutputStream(buffer));
+        return buffer.size();
+    }
+
+    @Benchmark
+    public Frame readFrame() throws IOException {
+        Frame f = Frame.readFrom(new DataInputStream(new ByteArrayInputStream(record)));
+        f.getStrokes();
+        return f;
+    }
+
+    @Benchmark
+    public byte[] encodeImage() {
+        return FrameCodec.encode(pixels, Scribbles.WIDTH, Scribbles.HEIGHT);
+    }
+
+    @Benchmark
+    public PixelBuffer decodeImage() {
+        target.fill(FrameStore.BACKGROUND_COLOR);
+        FrameCodec.decode(image, target, FrameStore.BACKGROUND_COLOR);
+        return target;
+    }
+}
@@ -0,0 +1,66 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.jcodec.common.model.Picture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks converting a rasterized frame to the YUV picture the video encoder takes,
+ * on one thread and split across every core.
+ *
+ * @author Steven Hricenak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YuvBenchmark {
+    @Param({"1", "0"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private YuvConverter converter;
+    private TiledRaster raster;
+    private Picture picture;
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(threads > 0 ? threads
+                : Runtime.getRuntime().availableProcessors());
+        converter = new YuvConverter(Scribbles.WIDTH, Scribbles.HEIGHT, pool);
+        picture = converter.createPicture();
+        raster = new TiledRaster(Scribbles.WIDTH, Scribbles.HEIGHT);
+        for (Stroke s : Scribbles.frame(new Random(4), Scribbles.WIDTH, Scribbles.HEIGHT,
+                20).getStrokes())
+            StrokeRasterizer.draw(s, raster);
+        raster.pack();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        raster.release();
+    }
+
+    @Benchmark
+    public Picture convert() {
+        converter.convert(raster, picture);
+        return picture;
+    }
+}
@@ -0,0 +1,383 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Exports the animation to an animated GIF or PNG in the background. Frames can only be
+ * drawn in a few colors, those of the ColorPicker, so those colors are used as the palette
+ * as they are, with no quantizing; the odd pixel of another color, such as from an
+ * imported image, is given the nearest one. Unlike a video, any size of frame can be exported.
+ * <p>
+ * The frames are snapshotted when the exporter is created, as with VideoExporter, and
+ * holds are found by content hash and written once. Each frame is cropped to the
+ * rectangle in which it differs from the one before, and pixels that did not change
+ * within it are made transparent, which compress to almost nothing.
+ * <p>
+ * One thread rasterizes each frame and finds what changed, since that depends on the
+ * frame before, and hands the cropped frame to a pool of threads that compress frames in
+ * parallel. The compressed frames are written to the file in order as they complete. At
+ * most a few frames per core are between the two ends at any time, so memory does not
+ * grow with the length of the animation.
+ *
+ * @author Steven Hricenak
+ */
+public class AnimationExporter implements Exporter {
+    public static final int GIF = 0;
+    public static final int APNG = 1;
+    private static final Pending END = new Pending(0, 0, 0, 0, 0, 0, null);
+
+    /**
+     * A cropped frame on its way to the file, and a run of identical frames that it
+     * stands for.
+     */
+    private static class Pending {
+        final int start;
+        final int length;
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+        final Future<byte[]> data;
+
+        Pending(int start, int length, int x, int y, int width, int height,
+                Future<byte[]> data) {
+            this.start = start;
+            this.length = length;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+    }
+
+    private final FrameStore store;
+    private final List<Frame> frames;
+    private final List<Frame> snapshots;
+    private final int[] versions;
+    private final File file;
+    private final int width;
+    private final int height;
+    private final int[] palette;
+    private final int transparent;
+    private final AnimationWriter writer;
+    private final Listener listener;
+    private final Executor callbacks;
+
+    private final BlockingQueue<Pending> pending;
+    private final ExecutorService workers;
+    private final ExecutorService compressors;
+    private final AtomicBoolean ended;
+
+    /**
+     * Snapshots the frames of the animation for export. Must be called on the thread the
+     * frames are edited on.
+     *
+     * @param store     the frames to export
+     * @param file      the file to write
+     * @param fps       the frame rate of the animation
+     * @param format    GIF or APNG
+     * @param colors    the colors frames are drawn in, at most 255
+     * @param listener  receives progress and the outcome of the export
+     * @param callbacks runs the listener's methods, such as by posting them to the main
+     *                  thread
+     */
+    public AnimationExporter(FrameStore store, File file, int fps, int format, int[] colors,
+                             Listener listener, Executor callbacks) {
+        this.store = store;
+        this.file = file;
+        this.listener = listener;
+        this.callbacks = callbacks;
+        frames = store.getFrames();
+        snapshots = new ArrayList<>(frames.size());
+        versions = new int[frames.size()];
+        for (int i = 0; i < frames.size(); i++) {
+            versions[i] = frames.get(i).getVersion();
+            snapshots.add(frames.get(i).copy());
+        }
+        width = store.getWidth();
+        height = store.getHeight();
+
+        //the colors, then one more for pixels that did not change
+        transparent = colors.length;
+        palette = new int[transparent + 1];
+        System.arraycopy(colors, 0, palette, 0, transparent);
+        if (format == GIF)
+            writer = new GifWriter(width, height, palette, transparent, fps);
+        else
+            writer = new ApngWriter(width, height, palette, transparent, fps);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        pending = new ArrayBlockingQueue<>(2 * cores);
+        workers = Executors.newFixedThreadPool(2);
+        compressors = Executors.newFixedThreadPool(cores);
+        ended = new AtomicBoolean();
+    }
+
+    @Override
+    public void start() {
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                crop();
+            }
+        });
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        });
+        workers.shutdown();
+    }
+
+    @Override
+    public void cancel() {
+        if (!end())
+            return;
+        file.delete();
+        callbacks.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onCancelled(file);
+            }
+        });
+    }
+
+    /**
+     * The first stage: splits the snapshot into runs of identical frames, by their content
+     * hashes, converts the first frame of each run to palette indices, crops it to what
+     * changed since the run before, and has it compressed.
+     */
+    private void crop() {
+        try {
+            byte[] previous = null;
+            byte[] current = new byte[width * height];
+            int n = frames.size();
+            int i = 0;
+            long hash = n > 0 ? contentHash(0) : 0;
+            while (i < n && !ended.get()) {
+                int j = i + 1;
+                long next = 0;
+                while (j < n && (next = contentHash(j)) == hash)
+                    j++;
+                TiledRaster raster = store.getSnapshotRaster(frames.get(i), snapshots.get(i),
+                        versions[i]);
+                try {
+                    if (raster.getWidth() < width || raster.getHeight() < height)
+                        throw new IllegalStateException("Frames were resized during export");
+                    toIndices(raster, current);
+                } finally {
+                    raster.release();
+                }
+                pending.put(crop(i, j - i, previous, current));
+
+                if (previous == null)
+                    previous = new byte[width * height];
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+                i = j;
+                hash = next;
+            }
+            pending.put(END);
+        } catch (InterruptedException e) {
+            //cancelled
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Crops a frame to the rectangle in which it differs from the frame before, making
+     * the pixels within it that did not change transparent, and submits it to be
+     * compressed.
+     *
+     * @param previous the frame before, or null if this is the first frame
+     * @param current  the frame
+     * @return the cropped frame
+     */
+    private Pending crop(int start, int length, byte[] previous, byte[] current) {
+        int left = 0;
+        int top = 0;
+        int right = width;
+        int bottom = height;
+        if (previous != null) {
+            left = width;
+            top = height;
+            right = 0;
+            bottom = 0;
+            for (int y = 0; y < height; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++)
+                    if (current[row + x] != previous[row + x]) {
+                        left = Math.min(left, x);
+                        right = Math.max(right, x + 1);
+                        top = Math.min(top, y);
+                        bottom = y + 1;
+                    }
+            }
+            if (left >= right) {
+                //nothing changed, so the frame is a single transparent pixel
+                left = 0;
+                top = 0;
+                right = 1;
+                bottom = 1;
+            }
+        }
+
+        final int w = right - left;
+        final int h = bottom - top;
+        final byte[] cropped = new byte[w * h];
+        for (int y = 0; y < h; y++) {
+            int row = (top + y) * width + left;
+            for (int x = 0; x < w; x++) {
+                byte c = current[row + x];
+                cropped[y * w + x] = previous != null && c == previous[row + x]
+                        ? (byte) transparent : c;
+            }
+        }
+        Future<byte[]> data = compressors.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return writer.compress(cropped, w, h);
+            }
+        });
+        return new Pending(start, length, left, top, w, h, data);
+    }
+
+    /**
+     * The last stage: writes each compressed frame to the file in order, as a frame lasting
+     * as long as its run, and reports progress. The time between frames leaving the
+     * pipeline is recorded as the export rate.
+     */
+    private void write() {
+        try {
+            try {
+                writer.open(file);
+                long last = System.nanoTime();
+                while (true) {
+                    Pending p = pending.take();
+                    if (p == END)
+                        break;
+                    writer.writeFrame(p.x, p.y, p.width, p.height, p.start, p.length,
+                            p.data.get());
+                    long now = System.nanoTime();
+                    Metrics.get().exportFrame.record(now - last, p.length);
+                    last = now;
+                    progress(p.start + p.length);
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            if (!ended.compareAndSet(false, true))
+                return;
+            compressors.shutdown();
+            callbacks.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onFinished(file);
+                }
+            });
+        } catch (InterruptedException e) {
+            //cancelled
+        } catch (ExecutionException e) {
+            fail(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Converts a raster to palette indices, reading a row at a time.
+     */
+    private void toIndices(TiledRaster raster, byte[] indices) {
+        int[] row = new int[width];
+        int lastColor = palette[0];
+        int lastIndex = 0;
+        for (int y = 0; y < height; y++) {
+            raster.read(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                if (row[x] != lastColor) {
+                    lastColor = row[x];
+                    lastIndex = nearest(lastColor);
+                }
+                indices[y * width + x] = (byte) lastIndex;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the color of the palette closest to a color, leaving out the
+     * transparent index.
+     */
+    private int nearest(int color) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < transparent; i++) {
+            if (palette[i] == color)
+                return i;
+            int r = (palette[i] >> 16 & 0xff) - (color >> 16 & 0xff);
+            int g = (palette[i] >> 8 & 0xff) - (color >> 8 & 0xff);
+            int b = (palette[i] & 0xff) - (color & 0xff);
+            int distance = r * r + g * g + b * b;
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private long contentHash(int i) {
+        return store.getContentHash(frames.get(i), snapshots.get(i), versions[i]);
+    }
+
+    private void progress(final int done) {
+        callbacks.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!ended.get())
+                    listener.onProgress(done, frames.size());
+            }
+        });
+    }
+
+    private void fail(final Exception e) {
+        if (!end())
+            return;
+        file.delete();
+        callbacks.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFailed(file, e);
+            }
+        });
+    }
+
+    /**
+     * Marks the export as over and interrupts any stage still running.
+     *
+     * @return false if the export had already ended
+     */
+    private boolean end() {
+        if (!ended.compareAndSet(false, true))
+            return false;
+        workers.shutdownNow();
+        compressors.shutdownNow();
+        pending.clear();
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes an animation of palette images to a file, one frame after another. Each frame is
+ * a rectangle drawn over the frames before it, in which pixels of the transparent index
+ * leave what is underneath showing, so a frame only needs to cover what changed.
+ * <p>
+ * Compressing a frame is kept apart from writing it, and is safe to call from several
+ * threads at once, so frames can be compressed in parallel and then written in order.
+ *
+ * @author Steven Hricenak
+ */
+public interface AnimationWriter {
+    /**
+     * Creates the file and writes everything that comes before the first frame.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    void open(File file) throws IOException;
+
+    /**
+     * Compresses the pixels of a frame. Does not touch the file.
+     *
+     * @param indices the palette index of each pixel, row by row
+     * @param width   the width of the frame
+     * @param height  the height of the frame
+     * @return the compressed frame, to be passed to writeFrame
+     */
+    byte[] compress(byte[] indices, int width, int height);
+
+    /**
+     * Writes a compressed frame after the last one.
+     *
+     * @param x      the left edge of the frame in the animation
+     * @param y      the top edge of the frame in the animation
+     * @param width  the width of the frame
+     * @param height the height of the frame
+     * @param start  the frame time the frame is first shown at
+     * @param length the number of frame times the frame is shown for
+     * @param data   the frame, as returned by compress
+     * @throws IOException if the file cannot be written
+     */
+    void writeFrame(int x, int y, int width, int height, int start, int length, byte[] data)
+            throws IOException;
+
+    /**
+     * Finishes and closes the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    void finish() throws IOException;
+
+    /**
+     * Closes the file without finishing it, such as when the export fails. Does nothing if
+     * it is already closed.
+     */
+    void close();
+}
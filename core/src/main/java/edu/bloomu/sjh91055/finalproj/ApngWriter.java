@@ -0,0 +1,180 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an animated PNG that loops forever, as a palette image of 4 bits per pixel, or 8
+ * if the palette has more than 16 colors. The transparent index is given an alpha of zero
+ * and every frame after the first is blended over the ones before it, so the earlier
+ * frames show through. Unlike a GIF, frame times are kept exactly, as fractions of a
+ * second.
+ * <p>
+ * The number of frames has to be written near the start of the file, before any of them.
+ * It is not known until the last frame has been written, so the count is written as zero
+ * and filled in once the file is finished.
+ *
+ * @author Steven Hricenak
+ */
+public class ApngWriter implements AnimationWriter {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a,
+            '\n'};
+    private static final int CONTROL_OFFSET = SIGNATURE.length + 25;
+
+    private final int width;
+    private final int height;
+    private final int[] palette;
+    private final int transparent;
+    private final int fps;
+    private final int depth;
+    private final CRC32 crc;
+    private File file;
+    private OutputStream out;
+    private int frames;
+    private int sequence;
+
+    /**
+     * Creates a writer. Nothing is written until open is called.
+     *
+     * @param width       the width of the animation
+     * @param height      the height of the animation
+     * @param palette     the colors, at most 256, as ARGB; alpha is ignored
+     * @param transparent the index of the palette that leaves earlier frames showing
+     * @param fps         the number of frame times per second
+     */
+    public ApngWriter(int width, int height, int[] palette, int transparent, int fps) {
+        this.width = width;
+        this.height = height;
+        this.palette = palette;
+        this.transparent = transparent;
+        this.fps = fps;
+        depth = palette.length <= 16 ? 4 : 8;
+        crc = new CRC32();
+    }
+
+    @Override
+    public void open(File file) throws IOException {
+        this.file = file;
+        out = new BufferedOutputStream(new FileOutputStream(file));
+        out.write(SIGNATURE);
+        writeChunk("IHDR", ByteBuffer.allocate(13).putInt(width).putInt(height)
+                .put((byte) depth).put((byte) 3).put((byte) 0).put((byte) 0).put((byte) 0)
+                .array());
+        writeChunk("acTL", control(0));
+
+        byte[] colors = new byte[palette.length * 3];
+        byte[] alpha = new byte[transparent + 1];
+        for (int i = 0; i < palette.length; i++) {
+            colors[3 * i] = (byte) (palette[i] >> 16);
+            colors[3 * i + 1] = (byte) (palette[i] >> 8);
+            colors[3 * i + 2] = (byte) palette[i];
+        }
+        for (int i = 0; i < transparent; i++)
+            alpha[i] = (byte) 0xff;
+        writeChunk("PLTE", colors);
+        writeChunk("tRNS", alpha);
+    }
+
+    @Override
+    public byte[] compress(byte[] indices, int width, int height) {
+        int stride = (width * depth + 7) / 8;
+        byte[] rows = new byte[(stride + 1) * height];
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            int row = y * (stride + 1) + 1;
+            if (depth == 8)
+                System.arraycopy(indices, i, rows, row, width);
+            else
+                for (int x = 0; x < width; x++)
+                    rows[row + x / 2] |= (x & 1) == 0 ? indices[i + x] << 4 : indices[i + x];
+            i += width;
+        }
+
+        Deflater deflater = new Deflater();
+        ByteArrayOutputStream data = new ByteArrayOutputStream(rows.length / 8 + 64);
+        byte[] buffer = new byte[8192];
+        try {
+            deflater.setInput(rows);
+            deflater.finish();
+            while (!deflater.finished())
+                data.write(buffer, 0, deflater.deflate(buffer));
+        } finally {
+            deflater.end();
+        }
+        return data.toByteArray();
+    }
+
+    @Override
+    public void writeFrame(int x, int y, int width, int height, int start, int length,
+                           byte[] data) throws IOException {
+        //the first frame is also the still image, and is not blended over anything
+        writeChunk("fcTL", ByteBuffer.allocate(26).putInt(sequence++).putInt(width)
+                .putInt(height).putInt(x).putInt(y).putShort((short) Math.min(0xffff, length))
+                .putShort((short) fps).put((byte) 0).put((byte) (frames == 0 ? 0 : 1))
+                .array());
+        if (frames == 0)
+            writeChunk("IDAT", data);
+        else
+            writeChunk("fdAT", ByteBuffer.allocate(4 + data.length).putInt(sequence++)
+                    .put(data).array());
+        frames++;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writeChunk("IEND", new byte[0]);
+        out.close();
+        out = null;
+
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+        try {
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream(20);
+            out = chunk;
+            writeChunk("acTL", control(frames));
+            f.seek(CONTROL_OFFSET);
+            f.write(chunk.toByteArray());
+        } finally {
+            out = null;
+            f.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (out == null)
+            return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        out = null;
+    }
+
+    /**
+     * Returns the contents of the animation control chunk: the number of frames, and
+     * looping forever.
+     */
+    private static byte[] control(int frames) {
+        return ByteBuffer.allocate(8).putInt(frames).putInt(0).array();
+    }
+
+    private void writeChunk(String type, byte[] data) throws IOException {
+        byte[] name = type.getBytes("US-ASCII");
+        crc.reset();
+        crc.update(name);
+        crc.update(data);
+        out.write(ByteBuffer.allocate(4).putInt(data.length).array());
+        out.write(name);
+        out.write(data);
+        out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+}
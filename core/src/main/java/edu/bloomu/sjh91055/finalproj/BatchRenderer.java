@@ -0,0 +1,329 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Renders saved projects to mp4 videos on a desktop JVM, with no device. Given a directory,
+ * every project directory in it is rendered, or the directory itself if it is a project,
+ * as copied off a device from the app's files. Edits still in a project's journal are
+ * replayed first, as the app would on startup, but without repairing the journal, so the
+ * projects are only ever read. Each project is exported by VideoExporter,
+ * exactly as the app would, to a video named after its directory.
+ * <p>
+ * Several projects are rendered at once, one per core by default. Each export holds a
+ * few frames' worth of rasters and pictures however long the project is, so it is
+ * charged an estimate of that, by the size of its frames, against a memory budget, and
+ * waits for earlier exports to finish if the budget is used up. A project too large for
+ * the budget on its own is rendered alone.
+ * <p>
+ * The time, frame count and frames per second of each project are reported as it
+ * finishes, with a total at the end.
+ *
+ * @author Steven Hricenak
+ */
+public class BatchRenderer {
+    //YuvConverter's ARGB buffer, VideoExporter's pictures and the rasters in its queues
+    private static final int BYTES_PER_PIXEL = 24;
+    private static final long STORE_BUDGET = 16L * 1024 * 1024;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable r) {
+            r.run();
+        }
+    };
+
+    /**
+     * The outcome of rendering one project.
+     */
+    public static class Result {
+        private final String name;
+        private final File video;
+        private final int frames;
+        private final long nanos;
+        private final Exception error;
+
+        Result(String name, File video, int frames, long nanos, Exception error) {
+            this.name = name;
+            this.video = video;
+            this.frames = frames;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public File getVideo() {
+            return video;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        /**
+         * Returns what went wrong.
+         *
+         * @return the exception, or null if the project was rendered
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null)
+                return name + ": failed, " + error;
+            return String.format(Locale.US, "%s: %d frames in %.2f s, %.1f frames/s, %d KB",
+                    name, frames, getSeconds(), frames / Math.max(getSeconds(), 1e-9),
+                    video.length() / 1024);
+        }
+    }
+
+    private final int fps;
+    private final int threads;
+    private final long memory;
+    private final int defaultWidth;
+    private final int defaultHeight;
+
+    /**
+     * Creates a renderer.
+     *
+     * @param fps           the frame rate of the videos
+     * @param threads       the most projects rendered at once
+     * @param memory        the number of bytes the projects being rendered may use
+     * @param defaultWidth  the width of projects that were saved without a size
+     * @param defaultHeight the height of projects that were saved without a size
+     */
+    public BatchRenderer(int fps, int threads, long memory, int defaultWidth,
+                         int defaultHeight) {
+        this.fps = fps;
+        this.threads = threads;
+        this.memory = memory;
+        this.defaultWidth = defaultWidth;
+        this.defaultHeight = defaultHeight;
+    }
+
+    /**
+     * Renders every project in a directory, or the directory itself if it is a project.
+     * Results are printed as each project finishes.
+     *
+     * @param projects the directory
+     * @param output   the directory videos are written to, created if necessary
+     * @return the results, in the order of the projects' names
+     */
+    public List<Result> render(File projects, File output) throws InterruptedException {
+        List<File> dirs = new ArrayList<>();
+        if (isProject(projects))
+            dirs.add(projects);
+        else {
+            File[] files = projects.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File f : files)
+                    if (isProject(f))
+                        dirs.add(f);
+            }
+        }
+        if (!output.isDirectory())
+            output.mkdirs();
+
+        //the budget is counted in kilobytes, so that it fits the semaphore's permits
+        final int budget = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memory / 1024));
+        final Semaphore permits = new Semaphore(budget);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (final File dir : dirs) {
+            final File video = new File(output, dir.getName() + ".mp4");
+            futures.add(pool.submit(new Callable<Result>() {
+                @Override
+                public Result call() throws InterruptedException {
+                    Result r = render(dir, video, permits, budget);
+                    System.out.println(r);
+                    return r;
+                }
+            }));
+        }
+        pool.shutdown();
+
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> f : futures) {
+            try {
+                results.add(f.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Renders one project, once its share of the memory budget is free. The project's
+     * storage and frames are closed afterwards, so their threads and mapped files do not
+     * pile up over a large batch.
+     */
+    private Result render(File dir, File video, Semaphore permits, int budget)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        ProjectStorage project = new ProjectStorage(dir);
+        try {
+            List<Frame> frames;
+            try {
+                frames = project.load();
+            } catch (IOException e) {
+                return new Result(dir.getName(), video, 0, System.nanoTime() - start, e);
+            }
+            int width = project.getWidth() > 0 ? project.getWidth() : defaultWidth;
+            int height = project.getHeight() > 0 ? project.getHeight() : defaultHeight;
+            if (frames.isEmpty() || width < 2 || height < 2)
+                return new Result(dir.getName(), video, 0, System.nanoTime() - start,
+                        new IOException("Nothing to render"));
+
+            long bytes = (long) width * height * BYTES_PER_PIXEL + STORE_BUDGET;
+            int cost = (int) Math.min(budget, bytes / 1024);
+            permits.acquire(cost);
+            try {
+                start = System.nanoTime();
+                return render(dir, video, project, frames, width, height, start);
+            } finally {
+                permits.release(cost);
+            }
+        } finally {
+            project.close();
+        }
+    }
+
+    /**
+     * Replays the journal of a loaded project onto its frames and encodes them.
+     */
+    private Result render(File dir, File video, ProjectStorage project, List<Frame> frames,
+                          int width, int height, long start) throws InterruptedException {
+        FrameStore store = new FrameStore(STORE_BUDGET);
+        try {
+            store.setSize(width, height);
+            for (Frame f : frames)
+                store.add(f);
+            if (project.getBackground() != null)
+                store.setBackground(project.getBackground());
+            try {
+                Journal.replayReadOnly(dir, store, project.getCheckpoint());
+            } catch (IOException e) {
+                return new Result(dir.getName(), video, 0, System.nanoTime() - start, e);
+            }
+            final CountDownLatch finished = new CountDownLatch(1);
+            final Exception[] failure = new Exception[1];
+            new VideoExporter(store, video, fps, new Exporter.Listener() {
+                @Override
+                public void onProgress(int done, int total) {
+                }
+
+                @Override
+                public void onFinished(File file) {
+                    finished.countDown();
+                }
+
+                @Override
+                public void onFailed(File file, Exception e) {
+                    failure[0] = e;
+                    finished.countDown();
+                }
+
+                @Override
+                public void onCancelled(File file) {
+                    finished.countDown();
+                }
+            }, DIRECT).start();
+            finished.await();
+            return new Result(dir.getName(), video, store.size(),
+                    System.nanoTime() - start, failure[0]);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static boolean isProject(File dir) {
+        if (!dir.isDirectory())
+            return false;
+        ProjectStorage storage = new ProjectStorage(dir);
+        try {
+            return storage.exists();
+        } finally {
+            storage.close();
+        }
+    }
+
+    /**
+     * Renders the projects named on the command line:
+     * <pre>
+     * BatchRenderer [-fps N] [-threads N] [-memory MB] [-size WxH] projects output
+     * </pre>
+     * Projects saved without a size are rendered at 1920x1080 unless -size is given.
+     * Exits with status 1 if any project fails.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int fps = 4;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long memory = Runtime.getRuntime().maxMemory() / 2;
+        int width = 1920; //the app is locked to landscape
+        int height = 1080;
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-fps"))
+                    fps = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-memory"))
+                    memory = Long.parseLong(args[++i]) * 1024 * 1024;
+                else if (args[i].equals("-size")) {
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                } else
+                    paths.add(args[i]);
+            }
+        } catch (RuntimeException e) {
+            paths.clear();
+        }
+        if (paths.size() != 2 || fps < 1 || threads < 1) {
+            System.err.println("Usage: BatchRenderer [-fps N] [-threads N] [-memory MB]"
+                    + " [-size WxH] projects output");
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = new BatchRenderer(fps, threads, memory, width, height)
+                .render(new File(paths.get(0)), new File(paths.get(1)));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int frames = 0;
+        int failed = 0;
+        for (Result r : results) {
+            if (r.getError() == null)
+                frames += r.getFrames();
+            else
+                failed++;
+        }
+        System.out.println(String.format(Locale.US,
+                "%d projects, %d failed, %d frames in %.2f s, %.1f frames/s",
+                results.size(), failed, frames, seconds, frames / Math.max(seconds, 1e-9)));
+        System.exit(failed > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,177 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the binary forms of frames and strokes straight out of a ByteBuffer, such as a
+ * record in a memory-mapped project, so they are parsed by the same code whether they
+ * come from a buffer or a stream. Reading past the end of the buffer throws an
+ * EOFException, as reading past the end of a stream does.
+ * <p>
+ * Unlike a stream, a buffer knows how many bytes are left, so lengths read from it can be
+ * checked before anything is allocated for them; see require.
+ *
+ * @author Steven Hricenak
+ */
+class BufferInput implements DataInput {
+    private final ByteBuffer buffer;
+
+    /**
+     * Reads from the position of a buffer up to its limit, moving its position.
+     *
+     * @param buffer the buffer
+     */
+    BufferInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the number of bytes left to read.
+     *
+     * @return the bytes
+     */
+    int remaining() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Checks that a length just read is not negative and, if the input is a buffer, that
+     * there are at least that many bytes left, so that a corrupt length fails cleanly
+     * instead of allocating a huge array.
+     *
+     * @param in    the input the length was read from
+     * @param bytes the number of bytes the length stands for
+     * @throws IOException if the length cannot be right
+     */
+    static void require(DataInput in, long bytes) throws IOException {
+        if (bytes < 0)
+            throw new IOException("Negative length " + bytes);
+        if (in instanceof BufferInput && bytes > ((BufferInput) in).remaining())
+            throw new EOFException("Length " + bytes + " runs past the end of the record");
+    }
+
+    /**
+     * Reads shorts in bulk, as readShort would one at a time.
+     *
+     * @param dst the array to fill
+     */
+    void readShorts(short[] dst) throws IOException {
+        ensure(dst.length * 2L);
+        buffer.asShortBuffer().get(dst);
+        buffer.position(buffer.position() + dst.length * 2);
+    }
+
+    private void ensure(long bytes) throws EOFException {
+        if (bytes > buffer.remaining())
+            throw new EOFException();
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        ensure(len);
+        buffer.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        n = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + n);
+        return n;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        ensure(1);
+        return buffer.get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xff;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        ensure(2);
+        return buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xffff;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        ensure(2);
+        return buffer.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        ensure(4);
+        return buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        ensure(8);
+        return buffer.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        ensure(4);
+        return buffer.getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        ensure(8);
+        return buffer.getDouble();
+    }
+
+    /**
+     * Reads the bytes up to the end of a line, ended by \n, \r or \r\n, each as a
+     * character, as DataInputStream.readLine does.
+     *
+     * @return the line, without its end, or null if there is nothing left to read
+     */
+    @Override
+    public String readLine() {
+        if (!buffer.hasRemaining())
+            return null;
+        StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            int c = buffer.get() & 0xff;
+            if (c == '\n')
+                break;
+            if (c == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n')
+                    buffer.get();
+                break;
+            }
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
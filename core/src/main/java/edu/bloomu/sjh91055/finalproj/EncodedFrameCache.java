@@ -0,0 +1,200 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encoded video frames kept on disk between exports, so that exporting an animation again
+ * after a small edit only encodes the frames that changed. Each entry is one H.264 access
+ * unit, encoded as an IDR frame so that it can be muxed anywhere in any later video, and
+ * is named after the content hashes of the frame and the background under it, and the
+ * sizes it was scaled between.
+ * <p>
+ * The cache is an LRU with a byte budget, like the FrameStore's cache of rasters, but its
+ * entries are files in a directory of their own. Entries are written to a temporary file
+ * and renamed into place, so a crash never leaves a partial one. Their order is rebuilt
+ * from the files' modification times when the cache is opened, and a hit touches its
+ * file, so the least recently used entries are still evicted first after a restart.
+ *
+ * @author Steven Hricenak
+ */
+public class EncodedFrameCache {
+    private static final String SUFFIX = ".h264";
+    private static final String TEMP = ".tmp";
+
+    private final File dir;
+    private final long budget;
+    private final LinkedHashMap<String, Long> entries;
+    private long bytes;
+    private long hits;
+
+    /**
+     * Opens the cache stored in a directory, creating the directory if needed, and
+     * evicts entries until it fits the budget.
+     *
+     * @param dir    the directory, which holds nothing else
+     * @param budget the greatest number of bytes of entries kept
+     */
+    public EncodedFrameCache(File dir, long budget) {
+        this.dir = dir;
+        this.budget = budget;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        dir.mkdirs();
+        File[] files = dir.listFiles();
+        if (files == null)
+            files = new File[0];
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long x = a.lastModified();
+                long y = b.lastModified();
+                return x < y ? -1 : x == y ? 0 : 1;
+            }
+        });
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(SUFFIX)) {
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), f.length());
+                bytes += f.length();
+            } else if (name.endsWith(TEMP))
+                f.delete();
+        }
+        trim();
+    }
+
+    /**
+     * Returns the key of a frame encoded at a given size.
+     *
+     * @param contentHash    the content hash of the frame
+     * @param backgroundHash the content hash of the background it is drawn over
+     * @param sourceWidth    the width the frame is drawn at
+     * @param sourceHeight   the height the frame is drawn at
+     * @param width          the width of the video
+     * @param height         the height of the video
+     * @return the key
+     */
+    public static String key(long contentHash, long backgroundHash, int sourceWidth,
+                             int sourceHeight, int width, int height) {
+        return String.format(Locale.US, "%016x-%016x-%dx%d-%dx%d", contentHash,
+                backgroundHash, sourceWidth, sourceHeight, width, height);
+    }
+
+    /**
+     * Reads an encoded frame.
+     *
+     * @param key the key of the frame
+     * @return the access unit, or null if it is not cached or cannot be read
+     */
+    public synchronized ByteBuffer get(String key) {
+        Long length = entries.get(key);
+        if (length == null)
+            return null;
+        File file = file(key);
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+                while (data.hasRemaining())
+                    if (channel.read(data) < 0)
+                        throw new IOException("Truncated " + file);
+                data.flip();
+                file.setLastModified(System.currentTimeMillis());
+                hits++;
+                return data;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            entries.remove(key);
+            bytes -= length;
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores an encoded frame, evicting the least recently used entries if the cache
+     * is over its budget. A frame that cannot be written is simply not cached.
+     *
+     * @param key  the key of the frame
+     * @param data the access unit, from its position to its limit, which is not moved
+     */
+    public synchronized void put(String key, ByteBuffer data) {
+        if (entries.containsKey(key) || data.remaining() > budget)
+            return;
+        File tmp = new File(dir, key + TEMP);
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                ByteBuffer buffer = data.duplicate();
+                while (buffer.hasRemaining())
+                    out.getChannel().write(buffer);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file(key)))
+                throw new IOException("Could not rename " + tmp);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        entries.put(key, (long) data.remaining());
+        bytes += data.remaining();
+        trim();
+    }
+
+    /**
+     * Returns the number of bytes of entries kept.
+     *
+     * @return the bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of times get has found an entry since the cache was opened.
+     *
+     * @return the hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Deletes every entry.
+     */
+    public synchronized void clear() {
+        for (String key : entries.keySet())
+            file(key).delete();
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            file(e.getKey()).delete();
+            bytes -= e.getValue();
+            it.remove();
+        }
+    }
+
+    private File file(String key) {
+        return new File(dir, key + SUFFIX);
+    }
+}
@@ -0,0 +1,57 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.File;
+
+/**
+ * Exports the animation to a file in the background.
+ *
+ * @author Steven Hricenak
+ */
+public interface Exporter {
+    /**
+     * Receives the progress and outcome of an export, through the Executor the exporter is
+     * given.
+     */
+    interface Listener {
+        /**
+         * Called after each frame is written.
+         *
+         * @param done  the number of frames written so far
+         * @param total the number of frames in the animation
+         */
+        void onProgress(int done, int total);
+
+        /**
+         * Called once the file has been written.
+         *
+         * @param file the exported file
+         */
+        void onFinished(File file);
+
+        /**
+         * Called if the export fails. The partial file is deleted.
+         *
+         * @param file the exported file
+         * @param e    what went wrong
+         */
+        void onFailed(File file, Exception e);
+
+        /**
+         * Called once a cancelled export has stopped. The partial file is deleted.
+         *
+         * @param file the exported file
+         */
+        void onCancelled(File file);
+    }
+
+    /**
+     * Starts the export on background threads.
+     */
+    void start();
+
+    /**
+     * Stops the export as soon as possible. The listener's onCancelled is called once it
+     * has stopped, unless the export had already finished or failed.
+     */
+    void cancel();
+}
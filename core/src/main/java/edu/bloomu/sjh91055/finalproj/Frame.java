@@ -0,0 +1,402 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One frame of the animation, stored as the list of strokes drawn on it rather than as
+ * pixels. A frame may also have a base image underneath its strokes: frames saved by
+ * older versions of the app only exist as images, so they are kept in their encoded form
+ * and decoded only when the frame is rasterized.
+ * <p>
+ * The strokes can be split into layers, so that a character can be drawn over scenery
+ * without the two getting in each other's way. The strokes are kept in one list, bottom
+ * layer first, with the number in each layer alongside, so a frame with layers is
+ * rasterized like any other. Layers above the last one with strokes do not count: a
+ * frame whose strokes are all in the bottom layer is saved as it always was.
+ * <p>
+ * A frame loaded from a saved project can be lazy: it only holds its saved record, and the
+ * record is parsed the first time the frame's contents are needed. Frames that are never
+ * looked at, or saved again unchanged, are never parsed.
+ *
+ * @author Steven Hricenak
+ */
+public class Frame {
+    private final ArrayList<Stroke> strokes;
+    private int[] layerSizes;
+    private byte[] base;
+    private int version;
+    private ByteBuffer record;
+    private long contentHash;
+    private int hashVersion = -1;
+
+    /**
+     * Creates a blank frame.
+     */
+    public Frame() {
+        strokes = new ArrayList<>();
+        layerSizes = new int[1];
+    }
+
+    /**
+     * Creates a frame whose only content is an encoded image.
+     *
+     * @param base the encoded image drawn underneath the strokes
+     */
+    public Frame(byte[] base) {
+        this();
+        this.base = base;
+    }
+
+    /**
+     * Creates a frame whose contents are parsed from a saved record when first needed.
+     *
+     * @param record the frame, as written by writeTo; it must not be changed afterwards
+     * @return the frame
+     */
+    public static Frame lazy(ByteBuffer record) {
+        Frame f = new Frame();
+        f.record = record;
+        return f;
+    }
+
+    /**
+     * Returns a new frame with the same contents. Strokes are immutable, so they are
+     * shared rather than copied, and a frame that has not been parsed yet is not parsed.
+     *
+     * @return the copy
+     */
+    public Frame copy() {
+        synchronized (this) {
+            if (record != null)
+                return lazy(record).inheritHash(this); //not parsed yet, so share the record
+        }
+        Frame f = new Frame(base);
+        f.strokes.addAll(strokes);
+        f.layerSizes = layerSizes.clone();
+        return f.inheritHash(this);
+    }
+
+    /**
+     * Adds a stroke on top of the frame, to its top layer.
+     *
+     * @param s the stroke
+     */
+    public void addStroke(Stroke s) {
+        addStroke(getLayerCount() - 1, s);
+    }
+
+    /**
+     * Adds a stroke on top of the others in a layer, adding empty layers up to it if the
+     * frame does not have that many.
+     *
+     * @param layer the layer, 0 for the bottom one
+     * @param s     the stroke
+     */
+    public void addStroke(int layer, Stroke s) {
+        load();
+        if (layer >= layerSizes.length)
+            layerSizes = Arrays.copyOf(layerSizes, layer + 1);
+        strokes.add(layerEnd(layer), s);
+        layerSizes[layer]++;
+        version++;
+    }
+
+    /**
+     * Removes the stroke on top of the frame, if there is one.
+     */
+    public void removeLastStroke() {
+        load();
+        int layer = layerSizes.length - 1;
+        while (layer > 0 && layerSizes[layer] == 0)
+            layer--;
+        removeLastStroke(layer);
+    }
+
+    /**
+     * Removes the stroke on top of a layer, if there is one.
+     *
+     * @param layer the layer
+     */
+    public void removeLastStroke(int layer) {
+        load();
+        if (layer < layerSizes.length && layerSizes[layer] > 0) {
+            strokes.remove(layerEnd(layer) - 1);
+            layerSizes[layer]--;
+            version++;
+        }
+    }
+
+    /**
+     * Replaces the contents of the frame with strokes in a single layer.
+     *
+     * @param strokes the strokes, bottom first
+     * @param base    the encoded image drawn underneath the strokes, or null
+     */
+    public void restore(List<Stroke> strokes, byte[] base) {
+        restore(strokes, new int[]{strokes.size()}, base);
+    }
+
+    /**
+     * Replaces the contents of the frame, such as with what it held before being cleared.
+     *
+     * @param strokes    the strokes, bottom layer first
+     * @param layerSizes the number of strokes in each layer, bottom first
+     * @param base       the encoded image drawn underneath the strokes, or null
+     */
+    public void restore(List<Stroke> strokes, int[] layerSizes, byte[] base) {
+        record = null;
+        this.strokes.clear();
+        this.strokes.addAll(strokes);
+        this.layerSizes = layerSizes.clone();
+        this.base = base;
+        version++;
+    }
+
+    /**
+     * Removes the strokes and the base image, leaving a blank frame.
+     */
+    public void clear() {
+        record = null;
+        strokes.clear();
+        layerSizes = new int[1];
+        base = null;
+        version++;
+    }
+
+    /**
+     * Returns every stroke of the frame, in the order they are drawn: bottom layer first,
+     * and oldest first within a layer.
+     *
+     * @return the strokes
+     */
+    public List<Stroke> getStrokes() {
+        load();
+        return strokes;
+    }
+
+    /**
+     * Returns the number of layers, counting up to the top one that has strokes.
+     *
+     * @return the number of layers, at least 1
+     */
+    public int getLayerCount() {
+        load();
+        int n = layerSizes.length;
+        while (n > 1 && layerSizes[n - 1] == 0)
+            n--;
+        return n;
+    }
+
+    /**
+     * Returns the number of strokes in each layer.
+     *
+     * @return a copy of the counts, bottom layer first
+     */
+    public int[] getLayerSizes() {
+        load();
+        return Arrays.copyOf(layerSizes, getLayerCount());
+    }
+
+    /**
+     * Tells whether any stroke is in a layer above the given one, which a stroke added
+     * to that layer would have to be drawn underneath.
+     *
+     * @param layer the layer
+     * @return true if a higher layer has strokes
+     */
+    public boolean hasStrokesAbove(int layer) {
+        return layer + 1 < getLayerCount();
+    }
+
+    /**
+     * Returns the index in the stroke list just past the last stroke of a layer.
+     */
+    private int layerEnd(int layer) {
+        int end = 0;
+        for (int i = 0; i <= layer; i++)
+            end += layerSizes[i];
+        return end;
+    }
+
+    public byte[] getBase() {
+        load();
+        return base;
+    }
+
+    /**
+     * Returns a number that changes every time the frame is edited, so that anything
+     * derived from the frame can tell whether it is out of date.
+     *
+     * @return the edit count of the frame
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns a 64 bit FNV-1a hash of the frame's saved form. Frames with the same strokes
+     * and base image have the same hash, so identical frames can be found without comparing
+     * their pixels. The hash is cached until the frame is edited.
+     *
+     * @return the hash of the frame's contents
+     */
+    public long getContentHash() {
+        if (hashVersion == version)
+            return contentHash;
+        ByteBuffer saved;
+        synchronized (this) {
+            saved = record;
+        }
+        ContentHash hash = new ContentHash();
+        if (saved != null) {
+            ByteBuffer in = saved.duplicate();
+            while (in.hasRemaining())
+                hash.write(in.get());
+        } else {
+            try {
+                writeTo(new DataOutputStream(hash));
+            } catch (IOException e) {
+                e.printStackTrace(); //cannot happen when hashing
+            }
+        }
+        contentHash = hash.value;
+        hashVersion = version;
+        return contentHash;
+    }
+
+    /**
+     * Caches a content hash computed from a copy of this frame, so it does not have to be
+     * computed again. It is ignored if the frame has been edited since the copy was taken.
+     *
+     * @param hash    the hash of the copy
+     * @param version the version of this frame when the copy was taken
+     */
+    public void setContentHash(long hash, int version) {
+        if (version == this.version) {
+            contentHash = hash;
+            hashVersion = version;
+        }
+    }
+
+    /**
+     * Gives this new copy the cached hash of the frame it was copied from, if it is valid.
+     */
+    private Frame inheritHash(Frame source) {
+        if (source.hashVersion == source.version) {
+            contentHash = source.contentHash;
+            hashVersion = version;
+        }
+        return this;
+    }
+
+    /**
+     * Hashes the bytes written to it.
+     */
+    private static class ContentHash extends OutputStream {
+        private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long PRIME = 0x100000001b3L;
+
+        long value = OFFSET_BASIS;
+
+        @Override
+        public void write(int b) {
+            value = (value ^ (b & 0xff)) * PRIME;
+        }
+    }
+
+    /**
+     * Writes the frame in the binary form read by readFrom. A frame with a single layer
+     * is written as its stroke count and strokes; one with more writes the number of
+     * layers, negated, followed by the count and strokes of each layer.
+     *
+     * @param out the stream to write to
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        load();
+        if (base == null)
+            out.writeInt(-1);
+        else {
+            out.writeInt(base.length);
+            out.write(base);
+        }
+        int layers = getLayerCount();
+        if (layers > 1)
+            out.writeInt(-layers);
+        int i = 0;
+        for (int layer = 0; layer < layers; layer++) {
+            int end = layers > 1 ? i + layerSizes[layer] : strokes.size();
+            out.writeInt(end - i);
+            for (; i < end; i++)
+                strokes.get(i).writeTo(out);
+        }
+    }
+
+    /**
+     * Reads a frame written by writeTo.
+     *
+     * @param in the stream to read from
+     * @return the frame
+     */
+    public static Frame readFrom(DataInput in) throws IOException {
+        Frame f = new Frame();
+        f.read(in);
+        return f;
+    }
+
+    /**
+     * Reads the contents of the frame, as written by writeTo, into this blank frame. This
+     * is the one parser of the format, for streams and saved records alike. When reading
+     * a record, every length is checked against the bytes left before anything is
+     * allocated for it.
+     */
+    private void read(DataInput in) throws IOException {
+        int baseLength = in.readInt();
+        if (baseLength >= 0) {
+            BufferInput.require(in, baseLength);
+            base = new byte[baseLength];
+            in.readFully(base);
+        }
+        int count = in.readInt();
+        int layers = count < 0 ? -count : 1;
+        if (count < 0)
+            BufferInput.require(in, 4L * layers);
+        layerSizes = new int[layers];
+        for (int layer = 0; layer < layers; layer++) {
+            int n = count < 0 ? in.readInt() : count;
+            BufferInput.require(in, Stroke.MIN_BYTES * (long) n);
+            layerSizes[layer] = n;
+            strokes.ensureCapacity(strokes.size() + n);
+            for (int i = 0; i < n; i++)
+                strokes.add(Stroke.readFrom(in));
+        }
+    }
+
+    /**
+     * Parses the saved record of a lazy frame. A record that cannot be parsed leaves the
+     * frame blank.
+     */
+    private synchronized void load() {
+        if (record == null)
+            return;
+        long start = System.nanoTime();
+        ByteBuffer in = record.duplicate();
+        record = null;
+        try {
+            read(new BufferInput(in));
+        } catch (IOException e) {
+            e.printStackTrace();
+            strokes.clear();
+            layerSizes = new int[1];
+            base = null;
+        }
+        Metrics.get().loadFrame.record(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,190 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A lossless image format for frames drawn in a few solid colors, used in place of PNG for
+ * base images. Each pixel is an index into a palette of up to 256 colors, and each row is
+ * either a list of runs of one index, or marked as the same as the row above. Frames are
+ * mostly background with a few strokes across them, so an image comes down to a few runs
+ * per row, and neither encoding nor decoding does any compression work beyond that.
+ * <p>
+ * Decoding hands the runs straight to a SpanTarget, so an image is drawn into a frame's
+ * tiles without ever being expanded into an array of pixels, and runs of the background
+ * color are skipped entirely. Every image is encoded on its own rather than as a change
+ * from the frame before it, so frames can still be loaded and rasterized in any order.
+ *
+ * @author Steven Hricenak
+ */
+public class FrameCodec {
+    public static final int MAX_COLORS = 256;
+    private static final int MAGIC = 0x46524c45;
+    private static final int LITERAL_ROW = 0;
+    private static final int REPEATED_ROW = 1;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Tells whether data was written by encode, as opposed to being a PNG or other image.
+     *
+     * @param data the encoded image
+     * @return true if the data starts like an encoded frame
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data.length >= 4 && ByteBuffer.wrap(data).getInt() == MAGIC;
+    }
+
+    /**
+     * Encodes an image.
+     *
+     * @param argb   the pixels, row by row
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the encoded image, or null if it has more than MAX_COLORS colors
+     */
+    public static byte[] encode(int[] argb, int width, int height) {
+        int[] palette = new int[MAX_COLORS];
+        int colors = 0;
+        ByteArrayOutputStream runs = new ByteArrayOutputStream(width + height * 4);
+        int lastColor = 0;
+        int lastIndex = -1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            if (y > 0 && sameRow(argb, row - width, row, width)) {
+                runs.write(REPEATED_ROW);
+                continue;
+            }
+            runs.write(LITERAL_ROW);
+            int x = 0;
+            while (x < width) {
+                int color = argb[row + x];
+                int end = x + 1;
+                while (end < width && argb[row + end] == color)
+                    end++;
+                if (lastIndex < 0 || color != lastColor) {
+                    lastIndex = indexOf(palette, colors, color);
+                    if (lastIndex < 0) {
+                        if (colors == MAX_COLORS)
+                            return null;
+                        lastIndex = colors;
+                        palette[colors++] = color;
+                    }
+                    lastColor = color;
+                }
+                writeVarInt(runs, end - x);
+                runs.write(lastIndex);
+                x = end;
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(16 + colors * 4);
+        header.putInt(MAGIC).putInt(width).putInt(height).putInt(colors);
+        for (int i = 0; i < colors; i++)
+            header.putInt(palette[i]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(header.capacity() + runs.size());
+        out.write(header.array(), 0, header.capacity());
+        out.write(runs.toByteArray(), 0, runs.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * Draws an encoded image into the top left corner of a target, clipped to the target's
+     * size. Runs of the skipped color are left out, so a target that is already filled
+     * with it does not have to be written at all there.
+     *
+     * @param data   the encoded image
+     * @param target where the pixels are written
+     * @param skip   the color the target is already filled with
+     * @throws IllegalArgumentException if the data is not a valid encoded image
+     */
+    public static void decode(byte[] data, SpanTarget target, int skip) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            if (in.getInt() != MAGIC)
+                throw new IllegalArgumentException("Not an encoded frame");
+            int width = in.getInt();
+            int height = in.getInt();
+            int colors = in.getInt();
+            if (width < 0 || height < 0 || colors < 0 || colors > MAX_COLORS)
+                throw new IllegalArgumentException("Bad frame header");
+            int[] palette = new int[colors];
+            for (int i = 0; i < colors; i++)
+                palette[i] = in.getInt();
+
+            int clipWidth = Math.min(width, target.getWidth());
+            int clipHeight = Math.min(height, target.getHeight());
+            //the runs of the last literal row, as start, end, color triples
+            int[] runs = new int[48];
+            int runCount = 0;
+            for (int y = 0; y < height; y++) {
+                int kind = in.get();
+                if (kind == LITERAL_ROW) {
+                    runCount = 0;
+                    int x = 0;
+                    while (x < width) {
+                        int length = readVarInt(in);
+                        int index = in.get() & 0xff;
+                        if (length <= 0 || x + length > width || index >= colors)
+                            throw new IllegalArgumentException("Bad run in row " + y);
+                        int start = Math.min(x, clipWidth);
+                        int end = Math.min(x + length, clipWidth);
+                        if (palette[index] != skip && start < end) {
+                            if (3 * runCount + 3 > runs.length) {
+                                int[] bigger = new int[runs.length * 2];
+                                System.arraycopy(runs, 0, bigger, 0, 3 * runCount);
+                                runs = bigger;
+                            }
+                            runs[3 * runCount] = start;
+                            runs[3 * runCount + 1] = end;
+                            runs[3 * runCount + 2] = palette[index];
+                            runCount++;
+                        }
+                        x += length;
+                    }
+                } else if (kind != REPEATED_ROW || y == 0)
+                    throw new IllegalArgumentException("Bad row " + y);
+                if (y < clipHeight)
+                    for (int i = 0; i < runCount; i++)
+                        target.fillSpan(y, runs[3 * i], runs[3 * i + 1], runs[3 * i + 2]);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated frame", e);
+        }
+    }
+
+    private static boolean sameRow(int[] argb, int a, int b, int width) {
+        for (int i = 0; i < width; i++)
+            if (argb[a + i] != argb[b + i])
+                return false;
+        return true;
+    }
+
+    private static int indexOf(int[] palette, int count, int color) {
+        for (int i = 0; i < count; i++)
+            if (palette[i] == color)
+                return i;
+        return -1;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7f) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+        throw new IllegalArgumentException("Bad run length");
+    }
+}
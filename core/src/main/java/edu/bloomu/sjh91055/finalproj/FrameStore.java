@@ -0,0 +1,860 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds every frame of the animation. Frames are kept as compact stroke lists, which are
+ * small enough to all stay in memory; their pixels only exist for the small working set
+ * of frames being drawn, overlaid, played or exported. Those are rasterized on demand into
+ * TiledRasters held in an LRU cache bounded by a byte budget. A frame that falls out of
+ * the cache is simply rasterized again the next time it is needed.
+ * <p>
+ * The frame being drawn on is pinned, so it is never evicted; new strokes are rasterized
+ * straight into its cached tiles instead of redrawing the whole frame. A duplicated frame
+ * shares every tile with the original, so until one of them is drawn on the copy costs
+ * no pixel memory. Rasterized frames are kept with their tiles packed to 4 bits per pixel,
+ * and only the tiles of the current frame that strokes are drawn into are expanded to
+ * ARGB, so several times more frames fit in the budget.
+ * <p>
+ * Under every frame is a background shared by the whole animation, such as scenery that
+ * does not move. It is a Frame of its own, edited through the store with the index
+ * BACKGROUND, and stored once however many frames there are. It is rasterized once into
+ * an underlay, and each cached raster is the frame's composite: a copy of the underlay,
+ * sharing all its tiles, with the frame's own layers drawn on top. The background only
+ * costs memory once, plus the tiles each frame draws over. A stroke added under a
+ * frame's higher layers is rasterized by drawing that area again, and a change to the
+ * background drops every composite, to be built again when next needed.
+ * <p>
+ * Edits made through the store are recorded in an UndoHistory, which is given a quarter of
+ * the budget; the cache keeps the rest, so undo does not add to the memory used. They are
+ * also written to the project's Journal, if the store has one, as they are made.
+ *
+ * @author Steven Hricenak
+ */
+public class FrameStore {
+    public static final int BACKGROUND_COLOR = TiledRaster.BACKGROUND_COLOR;
+    public static final int BACKGROUND = -1;
+
+    /**
+     * Decodes base images that are not in FrameCodec's format, such as PNGs saved by older
+     * versions of the app. Decoding them needs the platform's image codecs, so the store
+     * is given a decoder rather than depending on one itself.
+     */
+    public interface ImageDecoder {
+        /**
+         * Draws an image into the top left corner of a raster, clipped to its size.
+         *
+         * @param data   the encoded image
+         * @param target the raster, filled with the background color
+         * @return false if the image could not be decoded
+         */
+        boolean decode(byte[] data, TiledRaster target);
+    }
+
+    private final long budget;
+    private int width;
+    private int height;
+
+    private final ArrayList<Frame> frames;
+    private Frame background;
+    private TiledRaster underlay;
+    private int backgroundGeneration;
+    private final LinkedHashMap<Frame, TiledRaster> cache;
+    private Frame pinned;
+    private final UndoHistory history;
+    private ImageDecoder decoder;
+    private Journal journal;
+
+    private final ExecutorService prefetcher;
+    private int prefetchIndex;
+    private int prefetchCount;
+    private boolean prefetching;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param budget the maximum number of bytes of rasterized frames and undo history
+     *               kept in memory
+     */
+    public FrameStore(long budget) {
+        this.budget = budget - budget / 4;
+        Metrics.get().rasterBudget.set(this.budget);
+        history = new UndoHistory(budget / 4);
+        frames = new ArrayList<>();
+        background = new Frame();
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        prefetcher = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Sets the decoder used for base images that are not in FrameCodec's format. Without
+     * one, such images are left out when frames are rasterized.
+     *
+     * @param decoder the decoder, or null
+     */
+    public synchronized void setImageDecoder(ImageDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * Sets the journal every edit made through the store is written to. Frames added
+     * with add, such as when a project is loaded, are not edits and are not journaled.
+     *
+     * @param journal the journal, or null
+     */
+    public synchronized void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the size frames are rasterized at. Cached rasters of a different size are
+     * dropped. A change of size is journaled, since the project is saved at it.
+     *
+     * @param w the width in pixels
+     * @param h the height in pixels
+     */
+    public synchronized void setSize(int w, int h) {
+        if (w != width || h != height) {
+            width = w;
+            height = h;
+            releaseAll();
+            if (journal != null)
+                journal.size(w, h);
+        }
+    }
+
+    public synchronized int getWidth() {
+        return width;
+    }
+
+    public synchronized int getHeight() {
+        return height;
+    }
+
+    /**
+     * Sets the background shared by every frame, such as when a project is loaded. Like
+     * add, this is not an edit.
+     *
+     * @param frame the background
+     */
+    public synchronized void setBackground(Frame frame) {
+        history.forget(background);
+        background = frame;
+        backgroundChanged();
+    }
+
+    /**
+     * Returns the background shared by every frame.
+     *
+     * @return the background
+     */
+    public synchronized Frame getBackground() {
+        return background;
+    }
+
+    /**
+     * Returns a number that changes whenever the background does, so that anything
+     * made from the composites of frames can tell whether it is out of date.
+     *
+     * @return the count of changes to the background
+     */
+    public synchronized int getBackgroundGeneration() {
+        return backgroundGeneration;
+    }
+
+    /**
+     * Returns the number of frames in the animation.
+     *
+     * @return the number of frames
+     */
+    public synchronized int size() {
+        return frames.size();
+    }
+
+    /**
+     * Returns the frame at the given index.
+     *
+     * @param index the position of the frame
+     * @return the frame
+     */
+    public synchronized Frame getFrame(int index) {
+        return frames.get(index);
+    }
+
+    /**
+     * Returns every frame of the animation, in order. The list is a copy, so it is not
+     * affected by frames added later.
+     *
+     * @return the frames
+     */
+    public synchronized List<Frame> getFrames() {
+        return new ArrayList<>(frames);
+    }
+
+    /**
+     * Appends a frame to the end of the animation.
+     *
+     * @param frame the frame to add
+     * @return the index of the new frame
+     */
+    public synchronized int add(Frame frame) {
+        frames.add(frame);
+        return frames.size() - 1;
+    }
+
+    /**
+     * Appends a blank frame to the end of the animation. Unlike add, this is an edit that
+     * can be undone.
+     *
+     * @return the index of the new frame
+     */
+    public synchronized int create() {
+        Frame frame = new Frame();
+        frames.add(frame);
+        history.record(UndoHistory.Edit.create(frame), null);
+        if (journal != null)
+            journal.create();
+        return frames.size() - 1;
+    }
+
+    /**
+     * Appends a copy of the frame at the given index to the end of the animation. If the
+     * original is rasterized, the copy shares its tiles.
+     *
+     * @param index the position of the frame to copy
+     * @return the index of the new frame
+     */
+    public synchronized int duplicate(int index) {
+        Frame source = frames.get(index);
+        Frame copy = source.copy();
+        frames.add(copy);
+        history.record(UndoHistory.Edit.create(copy), null);
+        TiledRaster raster = cache.get(source);
+        if (raster != null)
+            put(copy, raster.copy());
+        if (journal != null)
+            journal.duplicate(index);
+        return frames.size() - 1;
+    }
+
+    /**
+     * Adds a stroke on top of the frame at the given index, to its top layer.
+     *
+     * @param index the position of the frame, or BACKGROUND
+     * @param s     the stroke
+     */
+    public synchronized void addStroke(int index, Stroke s) {
+        addStroke(index, frame(index).getLayerCount() - 1, s);
+    }
+
+    /**
+     * Adds a stroke on top of a layer of the frame at the given index, rasterizing it
+     * into the frame's cached tiles if it has any.
+     *
+     * @param index the position of the frame, or BACKGROUND
+     * @param layer the layer, 0 for the bottom one
+     * @param s     the stroke
+     */
+    public synchronized void addStroke(int index, int layer, Stroke s) {
+        Frame frame = frame(index);
+        history.record(UndoHistory.Edit.stroke(frame, layer, s), capture(frame, s));
+        drawStroke(frame, layer, s);
+        if (journal != null)
+            journal.stroke(index, layer, s);
+    }
+
+    /**
+     * Removes everything drawn on the frame at the given index.
+     *
+     * @param index the position of the frame, or BACKGROUND
+     */
+    public synchronized void clearFrame(int index) {
+        Frame frame = frame(index);
+        history.record(UndoHistory.Edit.clear(frame), capture(frame, null));
+        clear(frame);
+        if (journal != null)
+            journal.clear(index);
+    }
+
+    /**
+     * Undoes the latest edit of the frame at the given index. If that edit created the
+     * frame, the frame is removed, unless it is the only one. The journal gets the
+     * outcome, the frame's contents or its removal, since the history is not journaled.
+     *
+     * @param index the position of the frame, or BACKGROUND
+     * @return false if there was nothing to undo
+     */
+    public synchronized boolean undo(int index) {
+        Frame frame = frame(index);
+        UndoHistory.Edit edit = history.peekUndo(frame);
+        if (edit == null || edit.getKind() == UndoHistory.CREATE && frames.size() == 1)
+            return false;
+        history.undo(frame);
+        switch (edit.getKind()) {
+            case UndoHistory.STROKE:
+                frame.removeLastStroke(edit.getLayer());
+                restore(frame, history.takeDelta(edit));
+                break;
+            case UndoHistory.CLEAR:
+                frame.restore(edit.getStrokes(), edit.getLayerSizes(), edit.getBase());
+                restore(frame, history.takeDelta(edit));
+                break;
+            case UndoHistory.CREATE:
+                remove(index);
+                if (journal != null)
+                    journal.remove(index);
+                return true;
+        }
+        if (frame == background)
+            backgroundChanged();
+        if (journal != null)
+            journal.replace(index, frame);
+        return true;
+    }
+
+    /**
+     * Applies again the latest undone edit of the frame at the given index.
+     *
+     * @param index the position of the frame, or BACKGROUND
+     * @return false if there was nothing to redo
+     */
+    public synchronized boolean redo(int index) {
+        Frame frame = frame(index);
+        UndoHistory.Edit edit = history.redo(frame);
+        if (edit == null)
+            return false;
+        switch (edit.getKind()) {
+            case UndoHistory.STROKE:
+                history.attach(edit, capture(frame, edit.getStroke()));
+                drawStroke(frame, edit.getLayer(), edit.getStroke());
+                break;
+            case UndoHistory.CLEAR:
+                history.attach(edit, capture(frame, null));
+                clear(frame);
+                break;
+        }
+        if (journal != null)
+            journal.replace(index, frame);
+        return true;
+    }
+
+    /**
+     * Replaces the contents of the frame at the given index, as a journal is replayed.
+     * The frame's undo history is forgotten, since it no longer leads to the contents.
+     *
+     * @param index    the position of the frame, or BACKGROUND
+     * @param contents the frame to take the strokes and base image of
+     */
+    synchronized void replace(int index, Frame contents) {
+        Frame frame = frame(index);
+        history.forget(frame);
+        frame.restore(contents.getStrokes(), contents.getLayerSizes(), contents.getBase());
+        restore(frame, null);
+        if (frame == background)
+            backgroundChanged();
+    }
+
+    /**
+     * Removes the frame at the given index, and its history and cached raster.
+     *
+     * @param index the position of the frame
+     */
+    synchronized void remove(int index) {
+        Frame frame = frames.remove(index);
+        history.forget(frame);
+        TiledRaster raster = cache.remove(frame);
+        if (raster != null)
+            raster.release();
+        if (pinned == frame)
+            pinned = null;
+    }
+
+    /**
+     * Returns the history of the edits made through the store.
+     *
+     * @return the undo history
+     */
+    public UndoHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Returns the frame at an index, or the background.
+     */
+    private Frame frame(int index) {
+        return index == BACKGROUND ? background : frames.get(index);
+    }
+
+    private void drawStroke(Frame frame, int layer, Stroke s) {
+        boolean covered = frame.hasStrokesAbove(layer);
+        frame.addStroke(layer, s);
+        TiledRaster raster = cache.get(frame);
+        if (frame == background)
+            backgroundChanged();
+        else if (raster != null && !covered)
+            StrokeRasterizer.draw(s, raster);
+        else if (raster != null) {
+            int[] bounds = new int[4];
+            s.getBounds(bounds);
+            redraw(frame, raster, bounds[0], bounds[1], bounds[2], bounds[3]);
+        }
+    }
+
+    private void clear(Frame frame) {
+        frame.clear();
+        TiledRaster raster = cache.get(frame);
+        if (frame == background)
+            backgroundChanged();
+        else if (raster != null)
+            raster.share(underlay());
+    }
+
+    /**
+     * Draws an area of a frame's cached raster again from the underlay up, clipped to
+     * the area. A frame with a base image is instead dropped from the cache.
+     */
+    private void redraw(Frame frame, TiledRaster raster, int left, int top, int right,
+                        int bottom) {
+        if (frame.getBase() != null) {
+            cache.remove(frame);
+            raster.release();
+            return;
+        }
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(raster.getWidth(), right);
+        bottom = Math.min(raster.getHeight(), bottom);
+        if (left >= right || top >= bottom)
+            return;
+        int w = right - left;
+        int h = bottom - top;
+        int[] pixels = new int[w * h];
+        underlay().read(pixels, 0, w, left, top, w, h);
+        raster.write(pixels, 0, w, left, top, w, h);
+        SpanTarget clip = new ClippedTarget(raster, left, top, right, bottom);
+        int[] bounds = new int[4];
+        for (Stroke s : frame.getStrokes()) {
+            s.getBounds(bounds);
+            if (bounds[0] < right && bounds[2] > left && bounds[1] < bottom
+                    && bounds[3] > top)
+                StrokeRasterizer.draw(s, clip);
+        }
+    }
+
+    /**
+     * Passes on only the parts of spans inside a rectangle.
+     */
+    private static class ClippedTarget implements SpanTarget {
+        private final SpanTarget target;
+        private final int left;
+        private final int top;
+        private final int right;
+        private final int bottom;
+
+        ClippedTarget(SpanTarget target, int left, int top, int right, int bottom) {
+            this.target = target;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        @Override
+        public int getWidth() {
+            return target.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return target.getHeight();
+        }
+
+        @Override
+        public void fillSpan(int y, int x0, int x1, int color) {
+            if (y < top || y >= bottom)
+                return;
+            x0 = Math.max(x0, left);
+            x1 = Math.min(x1, right);
+            if (x0 < x1)
+                target.fillSpan(y, x0, x1, color);
+        }
+    }
+
+    /**
+     * Returns the rasterized background, rasterizing it first if it has changed. Its
+     * tiles are packed, so the composites sharing them do not pack copies of their own.
+     */
+    private TiledRaster underlay() {
+        if (underlay == null || underlay.getWidth() != width
+                || underlay.getHeight() != height) {
+            if (underlay != null)
+                underlay.release();
+            underlay = new TiledRaster(width, height);
+            rasterize(background, underlay);
+            underlay.pack();
+        }
+        return underlay;
+    }
+
+    /**
+     * Drops the underlay and every composite made from it, and the tiles kept for undo,
+     * which hold the old background too.
+     */
+    private void backgroundChanged() {
+        backgroundGeneration++;
+        if (underlay != null)
+            underlay.release();
+        underlay = null;
+        history.releaseDeltas();
+        releaseAll();
+    }
+
+    /**
+     * Takes the tiles of a frame's cached raster that a stroke is about to change, or
+     * every tile if the stroke is null.
+     *
+     * @return the tiles, or null if the frame is not rasterized
+     */
+    private TileDelta capture(Frame frame, Stroke s) {
+        TiledRaster raster = cache.get(frame);
+        if (raster == null)
+            return null;
+        if (s == null)
+            return TileDelta.capture(raster, 0, 0, raster.getWidth(), raster.getHeight());
+        int[] bounds = new int[4];
+        s.getBounds(bounds);
+        return TileDelta.capture(raster, bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    /**
+     * Puts back the tiles a frame's cached raster had before an edit that has just been
+     * undone. If they are missing or do not fit, the raster is dropped instead, so the
+     * frame is rasterized again from its strokes when it is next needed.
+     */
+    private void restore(Frame frame, TileDelta delta) {
+        TiledRaster raster = cache.get(frame);
+        if (raster != null && (delta == null || !delta.restore(raster))) {
+            cache.remove(frame);
+            raster.release();
+        }
+        if (delta != null)
+            delta.release();
+    }
+
+    /**
+     * Returns the pixels of the frame at the given index, rasterizing the frame if they
+     * are not cached. The raster returned is always the one in the cache, which holds
+     * its references to tiles; the caller only borrows it, and must not keep it past the
+     * next time the frame may be evicted. A frame removed while it is being rasterized
+     * has no place in the cache, so null is returned instead; only a thread other than
+     * the one removing frames, such as the prefetcher, can see that.
+     *
+     * @param index the position of the frame
+     * @return the rasterized frame, or null if the frame was removed meanwhile
+     */
+    public TiledRaster getRaster(int index) {
+        Frame frame;
+        synchronized (this) {
+            frame = frames.get(index);
+        }
+        while (true) {
+            Frame snapshot;
+            TiledRaster raster;
+            int version, w, h;
+            synchronized (this) {
+                raster = cache.get(frame);
+                if (raster != null)
+                    return raster;
+                snapshot = frame.copy();
+                version = frame.getVersion();
+                w = width;
+                h = height;
+                raster = underlay().copy();
+            }
+            //rasterized outside the lock, from a snapshot, so strokes can still be added
+            rasterize(snapshot, raster);
+            raster.pack();
+            synchronized (this) {
+                TiledRaster raced = cache.get(frame);
+                if (raced != null) {
+                    raster.release();
+                    return raced;
+                }
+                if (!frames.contains(frame)) {
+                    //removed meanwhile, so there is nothing to cache it for
+                    raster.release();
+                    return null;
+                }
+                if (version == frame.getVersion() && w == width && h == height) {
+                    put(frame, raster);
+                    return raster;
+                }
+                //the frame or the size changed meanwhile, so draw it again
+                raster.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the pixels of a frame as they were when a snapshot of it was taken, for work
+     * done off the main thread while the frame may still be edited. If the frame is cached
+     * and has not changed since, its tiles are shared rather than rasterized again. The
+     * snapshot is drawn over the background as it is now. The raster is not cached, and
+     * the caller must release it.
+     *
+     * @param frame    the frame in the store
+     * @param snapshot a copy of the frame taken at the given version
+     * @param version  the version of the frame when the copy was taken
+     * @return the rasterized snapshot
+     */
+    public TiledRaster getSnapshotRaster(Frame frame, Frame snapshot, int version) {
+        TiledRaster raster;
+        synchronized (this) {
+            raster = cache.get(frame);
+            if (raster != null && frame.getVersion() == version)
+                return raster.copy();
+            raster = underlay().copy();
+        }
+        rasterize(snapshot, raster);
+        return raster;
+    }
+
+    /**
+     * Returns the pixels of a frame as they were when snapshots of it and of the background
+     * were taken, so that they match the snapshots even if the background has changed
+     * since. While the background is unchanged, this is the same as getSnapshotRaster
+     * without one. The raster is not cached, and the caller must release it.
+     *
+     * @param frame      the frame in the store
+     * @param snapshot   a copy of the frame taken at the given version
+     * @param version    the version of the frame when the copy was taken
+     * @param background a copy of the background taken at the given generation
+     * @param generation the background generation when the copy was taken
+     * @return the rasterized snapshot
+     */
+    public TiledRaster getSnapshotRaster(Frame frame, Frame snapshot, int version,
+                                         Frame background, int generation) {
+        TiledRaster raster;
+        synchronized (this) {
+            if (generation == backgroundGeneration)
+                return getSnapshotRaster(frame, snapshot, version);
+            raster = new TiledRaster(width, height);
+        }
+        rasterize(background, raster);
+        rasterize(snapshot, raster);
+        return raster;
+    }
+
+    /**
+     * Returns the content hash of a frame as it was when a snapshot of it was taken. The
+     * hash is computed from the snapshot, off the main thread, and cached in the frame
+     * if it has not been edited since.
+     *
+     * @param frame    the frame in the store
+     * @param snapshot a copy of the frame taken at the given version
+     * @param version  the version of the frame when the copy was taken
+     * @return the hash of the snapshot's contents
+     */
+    public long getContentHash(Frame frame, Frame snapshot, int version) {
+        long hash = snapshot.getContentHash();
+        synchronized (this) {
+            frame.setContentHash(hash, version);
+        }
+        return hash;
+    }
+
+    /**
+     * Makes the frame at the given index the one being drawn on. It is pinned in memory
+     * until another frame is made current, and the previous current frame becomes an
+     * ordinary cache entry again.
+     *
+     * @param index the position of the frame
+     * @return the rasterized frame
+     */
+    public TiledRaster setCurrent(int index) {
+        synchronized (this) {
+            TiledRaster previous = pinned == null ? null : cache.get(pinned);
+            if (previous != null) {
+                previous.compact();
+                previous.pack();
+            }
+            //pinned first, so the raster cannot be evicted as soon as it is cached
+            pinned = frames.get(index);
+        }
+        TiledRaster raster = getRaster(index);
+        synchronized (this) {
+            trim();
+        }
+        return raster;
+    }
+
+    /**
+     * Returns the pixels of the frame at the given index if they are already in memory.
+     *
+     * @param index the position of the frame
+     * @return the rasterized frame, or null if it has not been rasterized
+     */
+    public synchronized TiledRaster getCachedRaster(int index) {
+        return cache.get(frames.get(index));
+    }
+
+    /**
+     * Rasterizes the frames following the given index on a background thread, so that
+     * they are already in memory when playback reaches them. Frames that do not fit in
+     * the budget are not rasterized. Only the latest request matters: a request made while
+     * the prefetch thread is busy replaces any earlier one it has not got to yet.
+     *
+     * @param index the position of the frame currently shown
+     * @param count how many frames to read ahead
+     */
+    public void prefetch(int index, int count) {
+        synchronized (this) {
+            prefetchIndex = index;
+            prefetchCount = count;
+            if (prefetching)
+                return;
+            prefetching = true;
+        }
+        prefetcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                int next;
+                while ((next = nextToPrefetch()) >= 0)
+                    getRaster(next);
+            }
+        });
+    }
+
+    /**
+     * Returns the first frame of the latest prefetch request that is not in memory yet,
+     * or -1 if there is none or the budget is used up, in which case prefetching stops.
+     */
+    private synchronized int nextToPrefetch() {
+        if (cachedBytes() < budget)
+            for (int i = prefetchIndex + 1; i <= prefetchIndex + prefetchCount
+                    && i < frames.size(); i++)
+                if (!cache.containsKey(frames.get(i)))
+                    return i;
+        prefetching = false;
+        return -1;
+    }
+
+    /**
+     * Stops the prefetch thread once it has finished any frame it is rasterizing, and the
+     * thread that compresses the undo history. The store must not be edited or prefetch
+     * afterwards.
+     */
+    public void close() {
+        prefetcher.shutdown();
+        history.close();
+    }
+
+    /**
+     * Removes every frame from the store.
+     */
+    public synchronized void clear() {
+        frames.clear();
+        history.clear();
+        background = new Frame();
+        backgroundChanged();
+        pinned = null;
+        if (journal != null)
+            journal.reset();
+    }
+
+    /**
+     * Draws a frame's base image and strokes into a raster, over the background it
+     * holds. A base image is a whole picture saved before frames had a background, so
+     * it is drawn on a blank raster instead.
+     */
+    private void rasterize(Frame frame, TiledRaster target) {
+        byte[] base = frame.getBase();
+        if (base != null) {
+            target.clear();
+            drawBase(base, target);
+        }
+        for (Stroke s : frame.getStrokes())
+            StrokeRasterizer.draw(s, target);
+    }
+
+    /**
+     * Decodes an encoded base image into the top left corner of the target. Images in
+     * FrameCodec's format are drawn run by run; anything else, such as a PNG that could not
+     * be converted, is handed to the ImageDecoder.
+     */
+    private void drawBase(byte[] base, TiledRaster target) {
+        if (FrameCodec.isEncoded(base)) {
+            try {
+                FrameCodec.decode(base, target, BACKGROUND_COLOR);
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        ImageDecoder d;
+        synchronized (this) {
+            d = decoder;
+        }
+        if (d != null)
+            d.decode(base, target);
+    }
+
+    /**
+     * Adds a rasterized frame to the cache, evicting the least recently used frames if the
+     * budget is exceeded.
+     */
+    private void put(Frame frame, TiledRaster raster) {
+        TiledRaster old = cache.put(frame, raster);
+        if (old != null && old != raster)
+            old.release();
+        trim();
+    }
+
+    /**
+     * Returns the number of bytes of tiles held by the cache and the underlay. Each
+     * raster counts its share of a shared tile, as TiledRaster.getByteCount does, so a
+     * tile shared only within the cache counts once in total. A tile also referred to
+     * from outside the cache, such as by a snapshot being exported or by undo history,
+     * counts for less, as the rest of it is held elsewhere.
+     */
+    private long cachedBytes() {
+        long bytes = underlay == null ? 0 : underlay.getByteCount();
+        for (TiledRaster r : cache.values())
+            bytes += r.getByteCount();
+        return bytes;
+    }
+
+    /**
+     * Evicts least recently used frames until the cache is within its budget. The pinned
+     * frame is never evicted.
+     */
+    private void trim() {
+        long bytes = cachedBytes();
+        Iterator<Map.Entry<Frame, TiledRaster>> it = cache.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            Map.Entry<Frame, TiledRaster> entry = it.next();
+            if (entry.getKey() == pinned)
+                continue;
+            bytes -= entry.getValue().getByteCount();
+            entry.getValue().release();
+            it.remove();
+        }
+        Metrics.get().rasterBytes.set(bytes);
+    }
+
+    /**
+     * Empties the cache, dropping every reference it holds to tiles.
+     */
+    private void releaseAll() {
+        for (TiledRaster r : cache.values())
+            r.release();
+        cache.clear();
+        Metrics.get().rasterBytes.set(0);
+    }
+}
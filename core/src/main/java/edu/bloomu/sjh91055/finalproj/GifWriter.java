@@ -0,0 +1,200 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes an animated GIF that loops forever. Every frame shares one global color table,
+ * the palette the writer is created with, so frames carry nothing but their LZW-compressed
+ * pixels. Frames are left in place when the next one is drawn, and the transparent index
+ * lets the earlier frames show through.
+ * <p>
+ * GIF delays are in hundredths of a second, so frame times are rounded to the nearest
+ * hundredth, with the rounding carried over so that the animation as a whole keeps time.
+ * Most viewers slow down any delay below two hundredths, so no frame is shown for less.
+ *
+ * @author Steven Hricenak
+ */
+public class GifWriter implements AnimationWriter {
+    private static final int MAX_CODES = 4096;
+    private static final int MIN_DELAY = 2;
+
+    private final int width;
+    private final int height;
+    private final int[] palette;
+    private final int transparent;
+    private final int fps;
+    private final int bits;
+    private OutputStream out;
+
+    /**
+     * Creates a writer. Nothing is written until open is called.
+     *
+     * @param width       the width of the animation
+     * @param height      the height of the animation
+     * @param palette     the colors, at most 256, as ARGB; alpha is ignored
+     * @param transparent the index of the palette that leaves earlier frames showing
+     * @param fps         the number of frame times per second
+     */
+    public GifWriter(int width, int height, int[] palette, int transparent, int fps) {
+        this.width = width;
+        this.height = height;
+        this.palette = palette;
+        this.transparent = transparent;
+        this.fps = fps;
+        int b = 1;
+        while (1 << b < palette.length)
+            b++;
+        bits = b;
+    }
+
+    @Override
+    public void open(File file) throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(file));
+        out.write(new byte[]{'G', 'I', 'F', '8', '9', 'a'});
+        writeShort(width);
+        writeShort(height);
+        out.write(0x80 | (bits - 1) << 4 | (bits - 1));
+        out.write(0);
+        out.write(0);
+        for (int i = 0; i < 1 << bits; i++) {
+            int c = i < palette.length ? palette[i] : 0;
+            out.write(c >> 16);
+            out.write(c >> 8);
+            out.write(c);
+        }
+
+        //loop forever
+        out.write(new byte[]{0x21, (byte) 0xff, 0x0b, 'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E',
+                '2', '.', '0', 0x03, 0x01, 0x00, 0x00, 0x00});
+    }
+
+    @Override
+    public byte[] compress(byte[] indices, int width, int height) {
+        return encode(indices, width * height, Math.max(2, bits));
+    }
+
+    @Override
+    public void writeFrame(int x, int y, int width, int height, int start, int length,
+                           byte[] data) throws IOException {
+        int delay = centiseconds(start + length) - centiseconds(start);
+        out.write(new byte[]{0x21, (byte) 0xf9, 0x04, 1 << 2 | 1});
+        writeShort(Math.min(0xffff, Math.max(MIN_DELAY, delay)));
+        out.write(transparent);
+        out.write(0);
+
+        out.write(0x2c);
+        writeShort(x);
+        writeShort(y);
+        writeShort(width);
+        writeShort(height);
+        out.write(0);
+        out.write(data);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.write(0x3b);
+        out.close();
+        out = null;
+    }
+
+    @Override
+    public void close() {
+        if (out == null)
+            return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        out = null;
+    }
+
+    /**
+     * Compresses pixels into the image data of a GIF: the minimum code size, then the LZW
+     * codes in sub-blocks of up to 255 bytes, then an empty sub-block.
+     *
+     * @param pixels      the palette indices, each below 2 to the power of minCodeSize
+     * @param count       the number of pixels
+     * @param minCodeSize the number of bits the palette indices fit in, at least 2
+     * @return the image data
+     */
+    public static byte[] encode(byte[] pixels, int count, int minCodeSize) {
+        int clear = 1 << minCodeSize;
+        int eoi = clear + 1;
+        //the code of each string, one more than the code, by its prefix code and last pixel
+        int[] table = new int[MAX_CODES << minCodeSize];
+        ByteArrayOutputStream codes = new ByteArrayOutputStream(count / 4 + 16);
+        int codeSize = minCodeSize + 1;
+        int next = eoi + 1;
+        long buffer = clear;
+        int buffered = codeSize;
+
+        int prefix = count > 0 ? pixels[0] & 0xff : -1;
+        for (int i = 1; i < count; i++) {
+            int p = pixels[i] & 0xff;
+            int key = prefix << minCodeSize | p;
+            if (table[key] != 0) {
+                prefix = table[key] - 1;
+                continue;
+            }
+            buffer |= (long) prefix << buffered;
+            buffered += codeSize;
+            if (next < MAX_CODES) {
+                table[key] = ++next;
+                if (next > 1 << codeSize)
+                    codeSize++;
+            } else {
+                buffer |= (long) clear << buffered;
+                buffered += codeSize;
+                Arrays.fill(table, 0);
+                codeSize = minCodeSize + 1;
+                next = eoi + 1;
+            }
+            prefix = p;
+            while (buffered >= 8) {
+                codes.write((int) buffer);
+                buffer >>>= 8;
+                buffered -= 8;
+            }
+        }
+        if (prefix >= 0) {
+            buffer |= (long) prefix << buffered;
+            buffered += codeSize;
+        }
+        buffer |= (long) eoi << buffered;
+        buffered += codeSize;
+        while (buffered > 0) {
+            codes.write((int) buffer);
+            buffer >>>= 8;
+            buffered -= 8;
+        }
+
+        byte[] raw = codes.toByteArray();
+        ByteArrayOutputStream data = new ByteArrayOutputStream(raw.length + raw.length / 255
+                + 3);
+        data.write(minCodeSize);
+        for (int off = 0; off < raw.length; off += 255) {
+            int n = Math.min(255, raw.length - off);
+            data.write(n);
+            data.write(raw, off, n);
+        }
+        data.write(0);
+        return data.toByteArray();
+    }
+
+    private int centiseconds(int frames) {
+        return (int) (((long) frames * 100 + fps / 2) / fps);
+    }
+
+    private void writeShort(int v) throws IOException {
+        out.write(v);
+        out.write(v >> 8);
+    }
+}
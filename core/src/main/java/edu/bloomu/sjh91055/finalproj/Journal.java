@@ -0,0 +1,511 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the edits made to a project since it was last saved, so that a
+ * crash or a killed process loses at most the last moment of work. Each edit, such as a
+ * stroke, a cleared frame or a new frame, is a small record numbered in sequence; saving
+ * an edit costs about as much as the edit, however large the project is.
+ * <p>
+ * Records are buffered in memory and written by a background thread, which syncs the
+ * file once for every record added since its last write, so a burst of edits shares one
+ * sync. Each record has a checksum, and replay stops at the first record that is torn or
+ * corrupt, which can only be the last one written before a crash.
+ * <p>
+ * The journal is split into segment files named after the sequence number of their first
+ * record. A checkpoint starts a new segment; once the project has been saved with every
+ * edit up to the checkpoint, ProjectStorage records the checkpoint's sequence number in
+ * its index and the older segments are deleted. On startup, the records after the
+ * number in the index are replayed onto the loaded frames, so an edit is never applied
+ * twice even if the app died between saving the project and deleting the segments.
+ *
+ * @author Steven Hricenak
+ */
+public class Journal {
+    private static final String PREFIX = "journal.";
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+    private static final long COMMIT_DELAY_MILLIS = 50;
+    //short enough to close from the main thread
+    private static final long CLOSE_WAIT_MILLIS = 250;
+
+    private static final byte STROKE = 0;
+    private static final byte CLEAR = 1;
+    private static final byte CREATE = 2;
+    private static final byte DUPLICATE = 3;
+    private static final byte REPLACE = 4;
+    private static final byte REMOVE = 5;
+    private static final byte RESET = 6;
+    private static final byte LAYER_STROKE = 7;
+    private static final byte SIZE = 8;
+
+    private final File dir;
+    private final ScheduledExecutorService writer;
+    private final ByteArrayOutputStream record;
+    private final DataOutputStream recordOut;
+    private final CRC32 crc;
+
+    private final ByteArrayOutputStream pending;
+    private long sequence;
+    private long segment;
+    private boolean scheduled;
+
+    //touched only by the writer thread
+    private FileChannel channel;
+    private long channelSegment = -1;
+
+    /**
+     * Opens the journal of the project stored in a directory. It must be replayed before
+     * any edit is journaled, even when there is nothing to replay, so that the sequence
+     * numbers carry on from the saved project's.
+     *
+     * @param dir the project's directory
+     */
+    public Journal(File dir) {
+        this.dir = dir;
+        writer = Executors.newSingleThreadScheduledExecutor();
+        record = new ByteArrayOutputStream();
+        recordOut = new DataOutputStream(record);
+        crc = new CRC32();
+        pending = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Applies the edits recorded after a saved project to its frames, in order. Edits
+     * made from here on start a new segment, after any torn record, which is cut off.
+     *
+     * @param store the frames of the project as loaded
+     * @param after the sequence number of the last edit the saved project includes
+     * @return the number of edits applied
+     * @throws IOException if a segment cannot be read, or an edit does not fit the
+     *                     frames, in which case the edits before it are still applied
+     */
+    public synchronized int replay(FrameStore store, long after) throws IOException {
+        long[] latest = {after};
+        try {
+            return replaySegments(dir, store, after, true, latest);
+        } finally {
+            sequence = latest[0];
+            segment = sequence + 1;
+        }
+    }
+
+    /**
+     * Applies the edits journaled in a project's directory after a saved project to its
+     * frames, as replay does, but without changing any file: the first torn or corrupt
+     * record ends the replay, and is left as it is. For tools that only read projects.
+     *
+     * @param dir   the project's directory
+     * @param store the frames of the project as loaded
+     * @param after the sequence number of the last edit the saved project includes
+     * @return the number of edits applied
+     * @throws IOException if a segment cannot be read, or an edit does not fit the
+     *                     frames, in which case the edits before it are still applied
+     */
+    public static int replayReadOnly(File dir, FrameStore store, long after)
+            throws IOException {
+        return replaySegments(dir, store, after, false, new long[]{after});
+    }
+
+    /**
+     * Applies the records of every segment after a sequence number, noting the latest
+     * number seen. If repair is set, a torn record is cut off and the segments after it,
+     * which can only hold edits made since, are deleted.
+     */
+    private static int replaySegments(File dir, FrameStore store, long after,
+                                      boolean repair, long[] latest) throws IOException {
+        CRC32 crc = new CRC32();
+        int applied = 0;
+        boolean torn = false;
+        for (long start : segments(dir)) {
+            File file = segmentFile(dir, start);
+            if (torn && !repair)
+                break;
+            if (torn) {
+                file.delete();
+                continue;
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, repair ? "rw" : "r");
+            try {
+                long valid = 0;
+                ByteBuffer header = ByteBuffer.allocate(8);
+                while (true) {
+                    header.clear();
+                    if (raf.getChannel().read(header, valid) < 8)
+                        break;
+                    int length = header.getInt(0);
+                    int checksum = header.getInt(4);
+                    if (length < 13 || length > MAX_RECORD_BYTES
+                            || valid + 8 + length > raf.length())
+                        break;
+                    byte[] body = new byte[length];
+                    raf.seek(valid + 8);
+                    raf.readFully(body);
+                    crc.reset();
+                    crc.update(body);
+                    if ((int) crc.getValue() != checksum)
+                        break;
+                    DataInputStream in =
+                            new DataInputStream(new ByteArrayInputStream(body));
+                    long seq = in.readLong();
+                    if (seq > after) {
+                        try {
+                            apply(store, in);
+                        } catch (RuntimeException e) {
+                            throw new IOException("Edit " + seq + " does not fit", e);
+                        }
+                        applied++;
+                    }
+                    latest[0] = Math.max(latest[0], seq);
+                    valid += 8 + length;
+                }
+                if (valid < raf.length()) {
+                    if (repair)
+                        raf.setLength(valid);
+                    torn = true;
+                }
+            } finally {
+                raf.close();
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(FrameStore store, DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        int index = in.readInt();
+        switch (op) {
+            case STROKE:
+                store.addStroke(index, 0, Stroke.readFrom(in));
+                break;
+            case LAYER_STROKE:
+                int layer = in.readInt();
+                store.addStroke(index, layer, Stroke.readFrom(in));
+                break;
+            case CLEAR:
+                store.clearFrame(index);
+                break;
+            case CREATE:
+                store.create();
+                break;
+            case DUPLICATE:
+                store.duplicate(index);
+                break;
+            case REPLACE:
+                store.replace(index, Frame.readFrom(in));
+                break;
+            case REMOVE:
+                store.remove(index);
+                break;
+            case RESET:
+                store.clear();
+                break;
+            case SIZE:
+                store.setSize(index, in.readInt());
+                break;
+            default:
+                throw new IOException("Unknown journal record " + op);
+        }
+    }
+
+    /**
+     * Records a stroke added on top of a layer of a frame, or of the background if the
+     * index is FrameStore.BACKGROUND.
+     */
+    public void stroke(int index, int layer, Stroke s) {
+        if (layer == 0)
+            append(STROKE, index, 0, s, null);
+        else
+            append(LAYER_STROKE, index, layer, s, null);
+    }
+
+    /**
+     * Records a frame being cleared.
+     */
+    public void clear(int index) {
+        append(CLEAR, index, 0, null, null);
+    }
+
+    /**
+     * Records a blank frame being added to the end.
+     */
+    public void create() {
+        append(CREATE, 0, 0, null, null);
+    }
+
+    /**
+     * Records a copy of a frame being added to the end.
+     */
+    public void duplicate(int index) {
+        append(DUPLICATE, index, 0, null, null);
+    }
+
+    /**
+     * Records the whole contents of a frame, as left by an edit that is not replayed
+     * itself, such as an undo, whose outcome depends on history that is not journaled.
+     */
+    public void replace(int index, Frame frame) {
+        append(REPLACE, index, 0, null, frame);
+    }
+
+    /**
+     * Records a frame being removed.
+     */
+    public void remove(int index) {
+        append(REMOVE, index, 0, null, null);
+    }
+
+    /**
+     * Records every frame being removed.
+     */
+    public void reset() {
+        append(RESET, 0, 0, null, null);
+    }
+
+    /**
+     * Records the size frames are drawn at changing, such as when a new project takes
+     * the working resolution, so the replayed frames are saved at the size they were
+     * drawn at.
+     */
+    public void size(int width, int height) {
+        append(SIZE, width, height, null, null);
+    }
+
+    /**
+     * Adds a record to the buffer, and has it written shortly if no write is due yet.
+     * The extra int follows the index in LAYER_STROKE and SIZE records only.
+     */
+    private synchronized void append(byte op, int index, int extra, Stroke s,
+                                     Frame frame) {
+        try {
+            record.reset();
+            recordOut.writeLong(++sequence);
+            recordOut.writeByte(op);
+            recordOut.writeInt(index);
+            if (op == LAYER_STROKE || op == SIZE)
+                recordOut.writeInt(extra);
+            if (s != null)
+                s.writeTo(recordOut);
+            if (frame != null)
+                frame.writeTo(recordOut);
+            recordOut.flush();
+            crc.reset();
+            crc.update(record.toByteArray());
+            DataOutputStream out = new DataOutputStream(pending);
+            out.writeInt(record.size());
+            out.writeInt((int) crc.getValue());
+            record.writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); //never thrown by in-memory streams
+        }
+        if (!scheduled) {
+            scheduled = true;
+            writer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    commit();
+                }
+            }, COMMIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes and syncs the records buffered so far. Runs on the writer thread.
+     */
+    private void commit() {
+        byte[] bytes;
+        long target;
+        synchronized (this) {
+            scheduled = false;
+            bytes = pending.toByteArray();
+            pending.reset();
+            target = segment;
+        }
+        write(target, bytes);
+    }
+
+    private void write(long target, byte[] bytes) {
+        if (bytes.length == 0)
+            return;
+        try {
+            if (channelSegment != target) {
+                closeChannel();
+                channel = new FileOutputStream(segmentFile(target), true).getChannel();
+                channelSegment = target;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null)
+            channel.close();
+        channel = null;
+        channelSegment = -1;
+    }
+
+    /**
+     * Returns the sequence number of the latest edit.
+     *
+     * @return the number, which is 0 if no edit was ever journaled
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Ends the current segment, so the edits so far can be discarded once the project
+     * is saved with them. Must be called when the frames are snapshotted for that save,
+     * with no edit in between.
+     *
+     * @return the sequence number of the latest edit, to save with the project
+     */
+    public synchronized long checkpoint() {
+        final long target = segment;
+        final byte[] bytes = pending.toByteArray();
+        pending.reset();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(target, bytes);
+            }
+        });
+        segment = sequence + 1;
+        return sequence;
+    }
+
+    /**
+     * Deletes, in the background, the segments holding only edits up to a checkpoint,
+     * once the project has been saved with them. Does nothing once the journal is closed,
+     * since a later discard deletes them just as well.
+     *
+     * @param checkpoint the sequence number returned by checkpoint
+     */
+    public synchronized void discard(final long checkpoint) {
+        if (writer.isShutdown())
+            return;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                long current;
+                synchronized (Journal.this) {
+                    current = segment;
+                }
+                long[] starts = segments();
+                for (int i = 0; i < starts.length && starts[i] < current; i++) {
+                    long end = (i + 1 < starts.length ? starts[i + 1] : current) - 1;
+                    if (end > checkpoint)
+                        break;
+                    if (starts[i] == channelSegment) {
+                        try {
+                            closeChannel();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    segmentFile(starts[i]).delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until every edit journaled so far is on disk.
+     */
+    public void flush() throws InterruptedException {
+        try {
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    commit();
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the edits journaled so far, closes the segment file and stops the writer
+     * thread. It waits a moment for the edits to reach disk, but no longer, so it can be
+     * called from the main thread; a slow write still finishes in the background. No edit
+     * may be journaled afterwards.
+     */
+    public void close() {
+        synchronized (this) {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    commit();
+                    try {
+                        closeChannel();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            writer.shutdown();
+        }
+        try {
+            writer.awaitTermination(CLOSE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long[] segments() {
+        return segments(dir);
+    }
+
+    /**
+     * Returns the first sequence numbers of the segments in a directory, in order.
+     */
+    private static long[] segments(File dir) {
+        String[] names = dir.list();
+        if (names == null)
+            return new long[0];
+        long[] starts = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            if (!name.startsWith(PREFIX))
+                continue;
+            try {
+                starts[n] = Long.parseLong(name.substring(PREFIX.length()));
+                n++;
+            } catch (NumberFormatException e) {
+                //not a segment
+            }
+        }
+        starts = Arrays.copyOf(starts, n);
+        Arrays.sort(starts);
+        return starts;
+    }
+
+    private File segmentFile(long start) {
+        return segmentFile(dir, start);
+    }
+
+    private static File segmentFile(File dir, long start) {
+        return new File(dir, PREFIX + start);
+    }
+}
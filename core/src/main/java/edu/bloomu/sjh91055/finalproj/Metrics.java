@@ -0,0 +1,284 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timings of the parts of the app that decide whether it stutters or runs out
+ * of memory: how long views take to draw, how long a touch takes to reach the screen,
+ * dropped and stalled playback frames, the bytes of rasters and bitmaps held against their
+ * budgets, how many bitmaps were allocated rather than reused, the time to save and load
+ * each frame, the rate frames are exported at and how many of them were reused from
+ * earlier exports.
+ * <p>
+ * Recording is cheap enough to leave on everywhere. Every histogram is a fixed array of
+ * buckets, one per power of two of microseconds, allocated when the metrics are created, so
+ * recording a value only bumps a few numbers. Percentiles are read from the buckets, and
+ * are only as precise as a bucket: a reported p95 of 4 ms means 95% of the values were
+ * under 4 ms.
+ * <p>
+ * The app records into a single shared instance. A report of every metric can be shown
+ * on screen or written to a file to attach to a bug report.
+ *
+ * @author Steven Hricenak
+ */
+public class Metrics {
+    private static final Metrics SHARED = new Metrics();
+
+    /**
+     * A distribution of durations, in nanoseconds.
+     */
+    public static class Histogram {
+        private static final int BUCKETS = 32;
+
+        private final String name;
+        private final long[] buckets;
+        private long count;
+        private long sum;
+        private long max;
+        private long last;
+
+        Histogram(String name) {
+            this.name = name;
+            buckets = new long[BUCKETS];
+        }
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        public void record(long nanos) {
+            record(nanos, 1);
+        }
+
+        /**
+         * Records a duration spread evenly over a number of items, such as the time to
+         * export a run of identical frames, as that many durations.
+         *
+         * @param nanos the total duration in nanoseconds
+         * @param items the number of items, at least 1
+         */
+        public synchronized void record(long nanos, int items) {
+            long each = Math.max(0, nanos) / items;
+            int b = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(each / 1000));
+            buckets[b] += items;
+            count += items;
+            sum += each * items;
+            max = Math.max(max, each);
+            last = each;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the mean duration.
+         *
+         * @return the mean in nanoseconds, or 0 if nothing was recorded
+         */
+        public synchronized long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public synchronized long getMax() {
+            return max;
+        }
+
+        public synchronized long getLast() {
+            return last;
+        }
+
+        /**
+         * Returns the number of items recorded per second of recorded time.
+         *
+         * @return the rate, or 0 if nothing was recorded
+         */
+        public synchronized double getRate() {
+            return sum == 0 ? 0 : count * 1e9 / sum;
+        }
+
+        /**
+         * Returns a duration that the given fraction of the recorded durations were
+         * under: the upper bound of the bucket the percentile falls in.
+         *
+         * @param fraction the fraction, such as 0.95
+         * @return the bound in nanoseconds, or 0 if nothing was recorded
+         */
+        public synchronized long getPercentile(double fraction) {
+            if (count == 0)
+                return 0;
+            long rank = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += buckets[b];
+                if (seen >= rank)
+                    return Math.min(max, (1L << b) * 1000);
+            }
+            return max;
+        }
+
+        synchronized void reset() {
+            for (int b = 0; b < BUCKETS; b++)
+                buckets[b] = 0;
+            count = 0;
+            sum = 0;
+            max = 0;
+            last = 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: %d, mean %.2f, p50 %.2f, p95 %.2f, max %.2f ms", name,
+                    getCount(), millis(getMean()), millis(getPercentile(0.5)),
+                    millis(getPercentile(0.95)), millis(getMax()));
+        }
+    }
+
+    /**
+     * A running total of events.
+     */
+    public static class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void add(long n) {
+            value.addAndGet(n);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + get();
+        }
+    }
+
+    /**
+     * The latest value of a quantity, such as a number of bytes held.
+     */
+    public static class Gauge {
+        private volatile long value;
+
+        public void set(long value) {
+            this.value = value;
+        }
+
+        public long get() {
+            return value;
+        }
+    }
+
+    public final Histogram draw = new Histogram("draw");
+    public final Histogram touchLatency = new Histogram("touch to invalidate");
+    public final Histogram saveFrame = new Histogram("save frame");
+    public final Histogram loadFrame = new Histogram("load frame");
+    public final Histogram exportFrame = new Histogram("export frame");
+    public final Counter droppedFrames = new Counter("playback dropped");
+    public final Counter stalledFrames = new Counter("playback stalled");
+    public final Counter reusedFrames = new Counter("export reused");
+    public final Counter allocatedBitmaps = new Counter("bitmaps allocated");
+    public final Counter reusedBitmaps = new Counter("reused");
+    public final Gauge rasterBytes = new Gauge();
+    public final Gauge rasterBudget = new Gauge();
+    public final Gauge bitmapBytes = new Gauge();
+    public final Gauge pooledBitmapBytes = new Gauge();
+    public final Gauge thumbnailBytes = new Gauge();
+    public final Gauge thumbnailBudget = new Gauge();
+
+    /**
+     * Returns the metrics the app records into.
+     *
+     * @return the shared instance
+     */
+    public static Metrics get() {
+        return SHARED;
+    }
+
+    /**
+     * Clears the histograms and counters. Gauges keep their values, which are still
+     * current.
+     */
+    public void reset() {
+        draw.reset();
+        touchLatency.reset();
+        saveFrame.reset();
+        loadFrame.reset();
+        exportFrame.reset();
+        droppedFrames.value.set(0);
+        stalledFrames.value.set(0);
+        reusedFrames.value.set(0);
+        allocatedBitmaps.value.set(0);
+        reusedBitmaps.value.set(0);
+    }
+
+    /**
+     * Describes every metric, one per line.
+     *
+     * @return the report
+     */
+    public String report() {
+        Runtime rt = Runtime.getRuntime();
+        StringBuilder sb = new StringBuilder();
+        sb.append(draw).append('\n');
+        sb.append(touchLatency).append('\n');
+        sb.append(droppedFrames).append(", ").append(stalledFrames).append('\n');
+        sb.append(String.format(Locale.US,
+                "rasters: %.1f of %.1f MB, bitmaps: %.1f MB, pooled: %.1f MB\n",
+                megabytes(rasterBytes.get()), megabytes(rasterBudget.get()),
+                megabytes(bitmapBytes.get()), megabytes(pooledBitmapBytes.get())));
+        sb.append(allocatedBitmaps).append(", ").append(reusedBitmaps).append('\n');
+        sb.append(String.format(Locale.US,
+                "thumbnails: %.1f of %.1f MB, heap: %.1f of %.1f MB\n",
+                megabytes(thumbnailBytes.get()), megabytes(thumbnailBudget.get()),
+                megabytes(rt.totalMemory() - rt.freeMemory()), megabytes(rt.maxMemory())));
+        sb.append(saveFrame).append('\n');
+        sb.append(loadFrame).append('\n');
+        sb.append(exportFrame).append(String.format(Locale.US, ", %.1f frames/s",
+                exportFrame.getRate())).append('\n');
+        sb.append(reusedFrames).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Writes the report, with the bucket counts of every histogram, for a bug report.
+     *
+     * @param out where to write
+     */
+    public void writeTo(Writer out) throws IOException {
+        out.write(report());
+        for (Histogram h : new Histogram[]{draw, touchLatency, saveFrame, loadFrame,
+                exportFrame}) {
+            out.write(h.getName() + " buckets (us):");
+            synchronized (h) {
+                for (int b = 0; b < Histogram.BUCKETS; b++)
+                    if (h.buckets[b] > 0)
+                        out.write(" <" + (1L << b) + "=" + h.buckets[b]);
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024);
+    }
+}
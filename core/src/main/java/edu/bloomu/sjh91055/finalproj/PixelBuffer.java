@@ -0,0 +1,78 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.util.Arrays;
+
+/**
+ * A plain array of ARGB pixels, laid out row by row. This is what frames are rasterized
+ * into for display, onion skinning, playback and export.
+ *
+ * @author Steven Hricenak
+ */
+public class PixelBuffer implements SpanTarget {
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    /**
+     * Creates a buffer of the given size, with every pixel transparent.
+     */
+    public PixelBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        pixels = new int[width * height];
+    }
+
+    /**
+     * Returns a new buffer with the same pixels.
+     *
+     * @return the copy
+     */
+    public PixelBuffer copy() {
+        PixelBuffer b = new PixelBuffer(width, height);
+        System.arraycopy(pixels, 0, b.pixels, 0, pixels.length);
+        return b;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the backing array, which has a stride equal to the width.
+     *
+     * @return the pixels
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns the number of bytes held by the buffer.
+     *
+     * @return the size in bytes
+     */
+    public int getByteCount() {
+        return pixels.length * 4;
+    }
+
+    /**
+     * Sets every pixel to a color.
+     *
+     * @param color the ARGB color
+     */
+    public void fill(int color) {
+        Arrays.fill(pixels, color);
+    }
+
+    @Override
+    public void fillSpan(int y, int x0, int x1, int color) {
+        int row = y * width;
+        Arrays.fill(pixels, row + x0, row + x1, color);
+    }
+}
@@ -0,0 +1,108 @@
+package edu.bloomu.sjh91055.finalproj;
+
+/**
+ * Thins out touch samples as they arrive, before they reach the stroke. A sample too
+ * close to the last point kept adds nothing and is dropped. A sample that carries on in
+ * nearly the same direction as the last segment moves that segment's end point instead of
+ * starting a new one, so straight runs are stored as a single segment. Runs are only
+ * extended up to a maximum length, so a slow curve cannot drift from the line.
+ * <p>
+ * Nothing is allocated, so the decimator can be used on every touch event.
+ *
+ * @author Steven Hricenak
+ */
+public class PointDecimator {
+    public static final int DROP = 0;
+    public static final int KEEP = 1;
+    public static final int REPLACE = 2;
+
+    private final float minDistance;
+    private final float maxRun;
+    private final float minCos;
+
+    private boolean hasPrevious;
+    private float previousX;
+    private float previousY;
+    private float lastX;
+    private float lastY;
+
+    /**
+     * Creates a decimator.
+     *
+     * @param minDistance samples closer than this to the last point are dropped
+     * @param maxRun      the longest a straight run can be extended to
+     * @param maxAngle    the largest turn, in radians, treated as carrying straight on
+     */
+    public PointDecimator(float minDistance, float maxRun, double maxAngle) {
+        this.minDistance = minDistance;
+        this.maxRun = maxRun;
+        minCos = (float) Math.cos(maxAngle);
+    }
+
+    /**
+     * Starts a new stroke at the given point.
+     *
+     * @param x the x coordinate of the first point
+     * @param y the y coordinate of the first point
+     */
+    public void start(float x, float y) {
+        hasPrevious = false;
+        lastX = x;
+        lastY = y;
+    }
+
+    /**
+     * Decides what to do with the next sample.
+     *
+     * @param x          the x coordinate of the sample
+     * @param y          the y coordinate of the sample
+     * @param canReplace whether the last point kept may still be moved
+     * @return DROP if the sample should be ignored, REPLACE if it should take the place
+     * of the last point kept, or KEEP if it should be added after it
+     */
+    public int accept(float x, float y, boolean canReplace) {
+        float dx = x - lastX;
+        float dy = y - lastY;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if (length < minDistance)
+            return DROP;
+        if (canReplace && hasPrevious) {
+            float px = lastX - previousX;
+            float py = lastY - previousY;
+            float previousLength = (float) Math.sqrt(px * px + py * py);
+            float rx = x - previousX;
+            float ry = y - previousY;
+            if ((px * dx + py * dy) >= minCos * previousLength * length
+                    && rx * rx + ry * ry <= maxRun * maxRun) {
+                lastX = x;
+                lastY = y;
+                return REPLACE;
+            }
+        }
+        hasPrevious = true;
+        previousX = lastX;
+        previousY = lastY;
+        lastX = x;
+        lastY = y;
+        return KEEP;
+    }
+
+    /**
+     * Returns the x coordinate of the point kept before the last one, which starts the
+     * segment a REPLACE moves the end of.
+     *
+     * @return the x coordinate
+     */
+    public float getPreviousX() {
+        return previousX;
+    }
+
+    /**
+     * Returns the y coordinate of the point kept before the last one.
+     *
+     * @return the y coordinate
+     */
+    public float getPreviousY() {
+        return previousY;
+    }
+}
@@ -0,0 +1,90 @@
+package edu.bloomu.sjh91055.finalproj;
+
+/**
+ * A fixed-size ring buffer of points, kept in primitive arrays so that adding and
+ * removing points never allocates. Touch samples are queued here as they arrive, and
+ * drained into the stroke being drawn once per display frame.
+ *
+ * @author Steven Hricenak
+ */
+public class PointRing {
+    private final float[] xs;
+    private final float[] ys;
+    private int head;
+    private int size;
+
+    /**
+     * Creates an empty ring.
+     *
+     * @param capacity the most points the ring can hold
+     */
+    public PointRing(int capacity) {
+        xs = new float[capacity];
+        ys = new float[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds a point after the newest one.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return false if the ring is full, in which case the point is not added
+     */
+    public boolean offer(float x, float y) {
+        if (size == xs.length)
+            return false;
+        int i = (head + size) % xs.length;
+        xs[i] = x;
+        ys[i] = y;
+        size++;
+        return true;
+    }
+
+    /**
+     * Returns the x coordinate of a point.
+     *
+     * @param i the index of the point, with 0 being the oldest
+     * @return the x coordinate
+     */
+    public float getX(int i) {
+        return xs[(head + i) % xs.length];
+    }
+
+    /**
+     * Returns the y coordinate of a point.
+     *
+     * @param i the index of the point, with 0 being the oldest
+     * @return the y coordinate
+     */
+    public float getY(int i) {
+        return ys[(head + i) % ys.length];
+    }
+
+    /**
+     * Moves the newest point. The ring must not be empty.
+     *
+     * @param x the new x coordinate
+     * @param y the new y coordinate
+     */
+    public void setLast(float x, float y) {
+        int i = (head + size - 1) % xs.length;
+        xs[i] = x;
+        ys[i] = y;
+    }
+
+    /**
+     * Removes every point.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+}
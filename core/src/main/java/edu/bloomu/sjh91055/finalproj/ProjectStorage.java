@@ -0,0 +1,531 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Saves and loads a project in a directory of its own, using two binary files. The frame
+ * records live in an append-only data file; the index file lists the size of the project
+ * and, for every frame in order, where its record is in the data file.
+ * <p>
+ * Saving only appends the records of frames that changed since the last save, then
+ * replaces the index by writing a temporary file and renaming it over the old one. The
+ * rename is atomic, so a crash at any point leaves either the old project or the new one.
+ * When most of the data file is records no frame refers to any more, it is compacted into
+ * a new data file with a higher generation number, which the new index then names.
+ * <p>
+ * Saves never change bytes already in a data file, so a project is loaded by mapping its
+ * files and handing out lazy frames that point into the mapping.
+ * <p>
+ * Saves run one at a time on a background thread. The caller only snapshots the frames
+ * that changed, which is cheap, so it can be called from the main thread. A save relies
+ * on the files being as the previous save left them, so a directory must only be saved
+ * through one instance at a time; an app gets the one for the whole process from open.
+ * <p>
+ * The index also holds the sequence number of the last Journal edit the save includes,
+ * so the edits journaled after it can be replayed when the project is loaded. Indexes
+ * written before the journal existed are read as including no edits.
+ * <p>
+ * The background shared by every frame is saved once, as one more frame record, which
+ * the index lists after the frames. Indexes written before there were backgrounds are
+ * read as having none.
+ *
+ * @author Steven Hricenak
+ */
+public class ProjectStorage {
+    private static final int MAGIC = 0x464c5042; //"FLPB"
+    private static final int VERSION = 3;
+    private static final int INDEX_HEADER_BYTES = 36;
+    private static final int INDEX_ENTRY_BYTES = 12;
+    private static final long COMPACT_MIN_BYTES = 64 * 1024;
+
+    private static final HashMap<File, ProjectStorage> SHARED = new HashMap<>();
+
+    private final File dir;
+    private final ExecutorService saver;
+
+    private final IdentityHashMap<Frame, Record> saved;
+    private int generation;
+    private long dataLength;
+    private int width;
+    private int height;
+    private long checkpoint;
+    private Frame background;
+    private File obsolete;
+
+    /**
+     * The location of a saved frame record in the data file, and the version of the frame
+     * it holds.
+     */
+    private static class Record {
+        final long offset;
+        final int length;
+        final int version;
+
+        Record(long offset, int length, int version) {
+            this.offset = offset;
+            this.length = length;
+            this.version = version;
+        }
+    }
+
+    /**
+     * A frame as it was when a save was requested. The copy is only made if the frame
+     * needs to be written.
+     */
+    private static class Snapshot {
+        final Frame frame;
+        final int version;
+        final Frame copy;
+
+        Snapshot(Frame frame, int version, Frame copy) {
+            this.frame = frame;
+            this.version = version;
+            this.copy = copy;
+        }
+    }
+
+    /**
+     * Opens the project stored in a directory, which is created if necessary.
+     *
+     * @param dir the project's directory
+     */
+    public ProjectStorage(File dir) {
+        this.dir = dir;
+        if (!dir.isDirectory())
+            dir.mkdirs();
+        saver = Executors.newSingleThreadExecutor();
+        saved = new IdentityHashMap<>();
+    }
+
+    /**
+     * Returns the storage of a directory shared by the whole process, opening it the
+     * first time. Activities come and go while saves they requested are still running,
+     * so the activity that replaces one must load and save through the same instance,
+     * whose saves and loads run in order. The shared storage is never closed.
+     *
+     * @param dir the project's directory
+     * @return the storage
+     */
+    public static ProjectStorage open(File dir) {
+        synchronized (SHARED) {
+            File key = dir.getAbsoluteFile();
+            ProjectStorage storage = SHARED.get(key);
+            if (storage == null) {
+                storage = new ProjectStorage(dir);
+                SHARED.put(key, storage);
+            }
+            return storage;
+        }
+    }
+
+    /**
+     * Tells whether a project has been saved in the directory.
+     *
+     * @return true if there is an index file
+     */
+    public boolean exists() {
+        return indexFile().isFile();
+    }
+
+    /**
+     * Returns the width of the frames when the project was loaded or last saved.
+     *
+     * @return the width in pixels
+     */
+    public synchronized int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the frames when the project was loaded or last saved.
+     *
+     * @return the height in pixels
+     */
+    public synchronized int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the sequence number of the last journaled edit the project was loaded or
+     * last saved with.
+     *
+     * @return the number, or 0 if it was saved without a journal
+     */
+    public synchronized long getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Returns the background shared by every frame, as the project was loaded.
+     *
+     * @return the background, lazy like the frames, or null if the project has none
+     */
+    public synchronized Frame getBackground() {
+        return background;
+    }
+
+    /**
+     * Opens the saved project. The index and the data file are memory-mapped, and every
+     * frame is returned lazy, so only the frames that are actually looked at are ever
+     * parsed. Loading takes the same short time however long the project is. It waits
+     * for the saves requested before it, so it never reads an index they are replacing.
+     *
+     * @return the frames in order, or an empty list if nothing has been saved
+     */
+    public List<Frame> load() throws IOException {
+        try {
+            return saver.submit(new Callable<List<Frame>>() {
+                @Override
+                public List<Frame> call() throws IOException {
+                    return read();
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads the index and maps the data file. Runs on the saver thread.
+     */
+    private synchronized List<Frame> read() throws IOException {
+        ArrayList<Frame> frames = new ArrayList<>();
+        saved.clear();
+        background = null;
+        if (!exists())
+            return frames;
+
+        ByteBuffer index = map(indexFile(), indexFile().length());
+        int version = index.getInt() == MAGIC ? index.getInt() : -1;
+        if (version < 1 || version > VERSION)
+            throw new IOException("Not a project index");
+        width = index.getInt();
+        height = index.getInt();
+        generation = index.getInt();
+        dataLength = index.getLong();
+        checkpoint = version >= 2 ? index.getLong() : 0;
+        int count = index.getInt();
+
+        //only the part of the data file the index covers, which no later save truncates
+        ByteBuffer data = map(dataFile(generation), dataLength);
+        frames.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            long offset = index.getLong();
+            int length = index.getInt();
+            data.limit((int) offset + length).position((int) offset);
+            Frame f = Frame.lazy(data.slice());
+            frames.add(f);
+            saved.put(f, new Record(offset, length, f.getVersion()));
+        }
+        long offset = version >= 3 ? index.getLong() : -1;
+        if (offset >= 0) {
+            int length = index.getInt();
+            data.limit((int) offset + length).position((int) offset);
+            background = Frame.lazy(data.slice());
+            saved.put(background, new Record(offset, length, background.getVersion()));
+        }
+        return frames;
+    }
+
+    /**
+     * Maps the start of a file into memory, read only. The mapping stays valid after the
+     * file is closed, and even after it is deleted.
+     */
+    private static ByteBuffer map(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Saves the project, without a background, in the background. Frames that have not
+     * changed since they were last saved or loaded are not written again.
+     *
+     * @param frames  the frames of the project, in order
+     * @param width   the width of the frames
+     * @param height  the height of the frames
+     * @param onSaved run on the background thread once the save is on disk, or null
+     */
+    public void save(List<Frame> frames, int width, int height, Runnable onSaved) {
+        save(frames, null, width, height, -1, onSaved);
+    }
+
+    /**
+     * Saves the project, without a background, as it is at a journal checkpoint.
+     *
+     * @param frames     the frames of the project, in order
+     * @param width      the width of the frames
+     * @param height     the height of the frames
+     * @param checkpoint the sequence number of the last journaled edit the frames
+     *                   include, or -1 to keep that of the previous save
+     * @param onSaved    run on the background thread once the save is on disk, or null
+     */
+    public void save(List<Frame> frames, int width, int height, long checkpoint,
+                     Runnable onSaved) {
+        save(frames, null, width, height, checkpoint, onSaved);
+    }
+
+    /**
+     * Saves the project in the background, as it is at a journal checkpoint.
+     *
+     * @param frames     the frames of the project, in order
+     * @param background the background shared by every frame, or null for none
+     * @param width      the width of the frames
+     * @param height     the height of the frames
+     * @param checkpoint the sequence number of the last journaled edit the frames
+     *                   include, or -1 to keep that of the previous save
+     * @param onSaved    run on the background thread once the save is on disk, or null
+     */
+    public void save(List<Frame> frames, Frame background, final int width,
+                     final int height, final long checkpoint, final Runnable onSaved) {
+        final ArrayList<Snapshot> snapshots = new ArrayList<>(frames.size() + 1);
+        final boolean shared = background != null;
+        synchronized (this) {
+            for (Frame f : frames)
+                snapshots.add(snapshot(f));
+            if (shared)
+                snapshots.add(snapshot(background));
+        }
+        saver.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(snapshots, shared, width, height, checkpoint);
+                    if (onSaved != null)
+                        onSaved.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Takes a snapshot of a frame, copying it only if it has changed since it was saved.
+     */
+    private Snapshot snapshot(Frame f) {
+        Record r = saved.get(f);
+        boolean clean = r != null && r.version == f.getVersion();
+        return new Snapshot(f, f.getVersion(), clean ? null : f.copy());
+    }
+
+    /**
+     * Waits until every save requested so far has finished.
+     */
+    public void flush() throws InterruptedException {
+        try {
+            saver.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stops the saver thread once every save requested so far is on disk, and then drops
+     * the records of the mapped files, so the mappings go once the loaded frames do. The
+     * storage must not be used afterwards.
+     */
+    public void close() {
+        saver.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ProjectStorage.this) {
+                    saved.clear();
+                    background = null;
+                }
+            }
+        });
+        saver.shutdown();
+    }
+
+    /**
+     * Appends the changed frames to the data file, compacting it first if needed, and
+     * replaces the index. The last snapshot is the background if there is one. Runs on
+     * the saver thread.
+     */
+    private void write(List<Snapshot> snapshots, boolean shared, int width, int height,
+                       long checkpoint) throws IOException {
+        long live = 0;
+        synchronized (this) {
+            if (checkpoint < 0)
+                checkpoint = this.checkpoint;
+            for (Snapshot s : snapshots) {
+                Record r = saved.get(s.frame);
+                if (s.copy == null && r == null)
+                    throw new IllegalStateException("Unchanged frame was never saved");
+                if (s.copy == null)
+                    live += r.length;
+            }
+        }
+        if (dataLength > COMPACT_MIN_BYTES && live < dataLength / 2)
+            compact(snapshots);
+
+        IdentityHashMap<Frame, Record> written = new IdentityHashMap<>();
+        RandomAccessFile data = new RandomAccessFile(dataFile(generation), "rw");
+        try {
+            FileChannel channel = data.getChannel();
+            //anything past the length in the index was left by a save that did not finish
+            channel.truncate(dataLength);
+            long position = dataLength;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (Snapshot s : snapshots) {
+                Record r;
+                synchronized (this) {
+                    r = saved.get(s.frame);
+                }
+                if (s.copy != null) {
+                    long start = System.nanoTime();
+                    bytes.reset();
+                    s.copy.writeTo(new DataOutputStream(bytes));
+                    writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), position);
+                    r = new Record(position, bytes.size(), s.version);
+                    position += bytes.size();
+                    Metrics.get().saveFrame.record(System.nanoTime() - start);
+                }
+                written.put(s.frame, r);
+            }
+            channel.force(false);
+            writeIndex(snapshots, shared, written, width, height, generation, position,
+                    checkpoint);
+            synchronized (this) {
+                saved.clear();
+                saved.putAll(written);
+                dataLength = position;
+                this.width = width;
+                this.height = height;
+                this.checkpoint = checkpoint;
+            }
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * Copies the records of the unchanged frames into a data file of the next generation.
+     * The new file only takes effect once an index naming it has been written.
+     */
+    private void compact(List<Snapshot> snapshots) throws IOException {
+        int next = generation + 1;
+        IdentityHashMap<Frame, Record> moved = new IdentityHashMap<>();
+        RandomAccessFile from = new RandomAccessFile(dataFile(generation), "r");
+        RandomAccessFile to = new RandomAccessFile(dataFile(next), "rw");
+        long position = 0;
+        try {
+            to.setLength(0);
+            FileChannel src = from.getChannel();
+            FileChannel dst = to.getChannel();
+            for (Snapshot s : snapshots) {
+                Record r;
+                synchronized (this) {
+                    r = saved.get(s.frame);
+                }
+                if (s.copy != null)
+                    continue;
+                long n = 0;
+                while (n < r.length)
+                    n += src.transferTo(r.offset + n, r.length - n, dst.position(position + n));
+                moved.put(s.frame, new Record(position, r.length, r.version));
+                position += r.length;
+            }
+            dst.force(false);
+        } finally {
+            from.close();
+            to.close();
+        }
+        File old = dataFile(generation);
+        synchronized (this) {
+            saved.clear();
+            saved.putAll(moved);
+            generation = next;
+            dataLength = position;
+        }
+        //the old file is deleted once the next index, which names the new one, is written
+        obsolete = old;
+    }
+
+    /**
+     * Writes the index to a temporary file and renames it over the old index.
+     */
+    private void writeIndex(List<Snapshot> snapshots, boolean shared,
+                            IdentityHashMap<Frame, Record> records, int width, int height,
+                            int generation, long dataLength, long checkpoint)
+            throws IOException {
+        int count = shared ? snapshots.size() - 1 : snapshots.size();
+        ByteBuffer buffer = ByteBuffer.allocate(
+                INDEX_HEADER_BYTES + 4 + (count + 1) * INDEX_ENTRY_BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(generation);
+        buffer.putLong(dataLength);
+        buffer.putLong(checkpoint);
+        buffer.putInt(count);
+        for (Snapshot s : snapshots) {
+            Record r = records.get(s.frame);
+            buffer.putLong(r.offset);
+            buffer.putInt(r.length);
+        }
+        if (!shared) {
+            buffer.putLong(-1);
+            buffer.putInt(0);
+        }
+        buffer.flip();
+
+        File tmp = new File(dir, "index.tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            writeFully(out.getChannel(), buffer, 0);
+            out.getChannel().force(true);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(indexFile()))
+            throw new IOException("Could not replace " + indexFile());
+        if (obsolete != null) {
+            obsolete.delete();
+            obsolete = null;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private File indexFile() {
+        return new File(dir, "index");
+    }
+
+    private File dataFile(int generation) {
+        return new File(dir, "frames." + generation);
+    }
+}
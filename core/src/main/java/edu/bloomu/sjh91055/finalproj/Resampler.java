@@ -0,0 +1,193 @@
+package edu.bloomu.sjh91055.finalproj;
+
+/**
+ * Scales rasters to another size with a Lanczos filter of two lobes, for exporting an
+ * animation at a different resolution than it was drawn at. When shrinking, the filter
+ * is widened by the scale, so every source pixel counts towards the result and thin
+ * strokes fade rather than break up.
+ * <p>
+ * The filter is separable. The weights of each output column and row are worked out
+ * once, in fixed point, when the resampler is created. Frames are then scaled a band of
+ * output rows at a time: the source rows the band needs are scaled horizontally into a
+ * buffer, and the buffer is filtered vertically into the band. The buffers are reused,
+ * so a resampler can only scale one frame at a time.
+ *
+ * @author Steven Hricenak
+ */
+public class Resampler {
+    private static final int LOBES = 2;
+    private static final int WEIGHT_BITS = 14;
+    private static final int BAND_ROWS = 32;
+
+    /**
+     * The source pixels each output pixel along one axis is made from, and their
+     * weights, which add up to 1 &lt;&lt; WEIGHT_BITS.
+     */
+    private static class Taps {
+        final int[] start;
+        final int[] count;
+        final int[] weights;
+        final int stride;
+
+        Taps(int src, int dst) {
+            double ratio = (double) src / dst;
+            double filterScale = Math.max(1, ratio);
+            double support = LOBES * filterScale;
+            stride = (int) Math.ceil(2 * support) + 1;
+            start = new int[dst];
+            count = new int[dst];
+            weights = new int[dst * stride];
+            double[] w = new double[stride];
+            for (int i = 0; i < dst; i++) {
+                double center = (i + 0.5) * ratio;
+                int left = Math.max(0, (int) Math.floor(center - support));
+                int right = Math.min(src, (int) Math.ceil(center + support));
+                double sum = 0;
+                for (int j = left; j < right; j++) {
+                    w[j - left] = lanczos((j + 0.5 - center) / filterScale);
+                    sum += w[j - left];
+                }
+                int total = 0;
+                int largest = 0;
+                for (int j = 0; j < right - left; j++) {
+                    int fixed = (int) Math.round(w[j] / sum * (1 << WEIGHT_BITS));
+                    weights[i * stride + j] = fixed;
+                    total += fixed;
+                    if (fixed > weights[i * stride + largest])
+                        largest = j;
+                }
+                //rounding is made up on the largest weight, so flat areas stay exact
+                weights[i * stride + largest] += (1 << WEIGHT_BITS) - total;
+                start[i] = left;
+                count[i] = right - left;
+            }
+        }
+    }
+
+    private final int srcWidth;
+    private final int dstWidth;
+    private final int dstHeight;
+    private final Taps columns;
+    private final Taps rows;
+    private final int[] row;
+    private final int[] buffer;
+    private final int[] band;
+
+    /**
+     * Creates a resampler from one size to another.
+     *
+     * @param srcWidth  the width of the rasters to scale
+     * @param srcHeight the height of the rasters to scale
+     * @param dstWidth  the width to scale them to
+     * @param dstHeight the height to scale them to
+     */
+    public Resampler(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        this.srcWidth = srcWidth;
+        this.dstWidth = dstWidth;
+        this.dstHeight = dstHeight;
+        columns = new Taps(srcWidth, dstWidth);
+        rows = new Taps(srcHeight, dstHeight);
+        row = new int[srcWidth];
+        int bandSource = 0;
+        for (int top = 0; top < dstHeight; top += BAND_ROWS) {
+            int last = Math.min(dstHeight, top + BAND_ROWS) - 1;
+            bandSource = Math.max(bandSource,
+                    rows.start[last] + rows.count[last] - rows.start[top]);
+        }
+        buffer = new int[bandSource * dstWidth * 3];
+        band = new int[BAND_ROWS * dstWidth];
+    }
+
+    /**
+     * Scales the top left corner of a raster into another raster.
+     *
+     * @param src the raster to scale, at least as large as the source size
+     * @param dst the raster to write, at least as large as the output size
+     */
+    public void resample(TiledRaster src, TiledRaster dst) {
+        for (int top = 0; top < dstHeight; top += BAND_ROWS) {
+            int bottom = Math.min(dstHeight, top + BAND_ROWS);
+            int from = rows.start[top];
+            int to = rows.start[bottom - 1] + rows.count[bottom - 1];
+            for (int y = from; y < to; y++) {
+                src.read(row, 0, srcWidth, 0, y, srcWidth, 1);
+                scaleRow((y - from) * dstWidth * 3);
+            }
+            for (int y = top; y < bottom; y++)
+                filterColumn(y, from, (y - top) * dstWidth);
+            dst.write(band, 0, dstWidth, 0, top, dstWidth, bottom - top);
+        }
+    }
+
+    /**
+     * Scales the source row horizontally into the buffer, keeping each channel apart at
+     * full precision.
+     */
+    private void scaleRow(int out) {
+        for (int x = 0; x < dstWidth; x++) {
+            int r = 0, g = 0, b = 0;
+            int s = columns.start[x];
+            int w = x * columns.stride;
+            for (int j = 0; j < columns.count[x]; j++) {
+                int c = row[s + j];
+                int weight = columns.weights[w + j];
+                r += (c >> 16 & 0xff) * weight;
+                g += (c >> 8 & 0xff) * weight;
+                b += (c & 0xff) * weight;
+            }
+            buffer[out++] = r;
+            buffer[out++] = g;
+            buffer[out++] = b;
+        }
+    }
+
+    /**
+     * Filters the buffered rows vertically into one row of the band.
+     */
+    private void filterColumn(int y, int from, int out) {
+        int s = rows.start[y] - from;
+        int w = y * rows.stride;
+        int n = rows.count[y];
+        for (int x = 0; x < dstWidth; x++) {
+            long r = 0, g = 0, b = 0;
+            for (int j = 0; j < n; j++) {
+                int i = ((s + j) * dstWidth + x) * 3;
+                int weight = rows.weights[w + j];
+                r += (long) buffer[i] * weight;
+                g += (long) buffer[i + 1] * weight;
+                b += (long) buffer[i + 2] * weight;
+            }
+            band[out + x] = 0xff000000 | channel(r) << 16 | channel(g) << 8 | channel(b);
+        }
+    }
+
+    private static int channel(long sum) {
+        long v = (sum + (1L << (2 * WEIGHT_BITS - 1))) >> (2 * WEIGHT_BITS);
+        return (int) Math.max(0, Math.min(255, v));
+    }
+
+    private static double lanczos(double x) {
+        if (x == 0)
+            return 1;
+        if (x <= -LOBES || x >= LOBES)
+            return 0;
+        double px = Math.PI * x;
+        return LOBES * Math.sin(px) * Math.sin(px / LOBES) / (px * px);
+    }
+
+    /**
+     * Returns a size with the same shape as another, scaled so its shorter side has the
+     * given length, with both sides even, as video needs.
+     *
+     * @param width     the width to scale
+     * @param height    the height to scale
+     * @param shortSide the length of the shorter side, or 0 to keep the size
+     * @return the width and height
+     */
+    public static int[] evenSize(int width, int height, int shortSide) {
+        double scale = shortSide > 0 ? (double) shortSide / Math.min(width, height) : 1;
+        int w = (int) Math.round(width * scale) & ~1;
+        int h = (int) Math.round(height * scale) & ~1;
+        return new int[]{Math.max(2, w), Math.max(2, h)};
+    }
+}
@@ -0,0 +1,20 @@
+package edu.bloomu.sjh91055.finalproj;
+
+/**
+ * Something strokes can be rasterized into. The rasterizer breaks every stroke into
+ * horizontal runs of pixels, so a target only has to know how to fill a run.
+ *
+ * @author Steven Hricenak
+ */
+public interface SpanTarget {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Sets the pixels from x0 (inclusive) to x1 (exclusive) on row y to a color. The
+     * rasterizer has already clipped the run to the target's bounds.
+     */
+    void fillSpan(int y, int x0, int x1, int color);
+}
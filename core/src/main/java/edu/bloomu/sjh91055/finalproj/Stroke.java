@@ -0,0 +1,162 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A single stroke drawn by the user: a polyline with round caps and joins, drawn in one
+ * color at one width. The points are quantized to a quarter of a pixel and stored as
+ * shorts, so a typical stroke costs a few hundred bytes instead of the pixels it covers.
+ * Strokes are immutable, which lets frames that were duplicated share them.
+ *
+ * @author Steven Hricenak
+ */
+public class Stroke {
+    public static final int QUANTUM = 4;
+    //the color, width and point count written before the points
+    static final int MIN_BYTES = 12;
+
+    private final int color;
+    private final float width;
+    private final short[] points;
+
+    /**
+     * Creates a stroke from already quantized points.
+     *
+     * @param color  the ARGB color of the stroke
+     * @param width  the width of the stroke in pixels
+     * @param points the x and y coordinates of each point, interleaved, in units of
+     *               1 / QUANTUM pixels
+     */
+    public Stroke(int color, float width, short[] points) {
+        this.color = color;
+        this.width = width;
+        this.points = points;
+    }
+
+    /**
+     * Creates a stroke from points in pixel coordinates. Consecutive points that quantize
+     * to the same position are dropped.
+     *
+     * @param xy    the x and y coordinates of each point, interleaved
+     * @param count the number of points (half the number of used array entries)
+     * @param color the ARGB color of the stroke
+     * @param width the width of the stroke in pixels
+     * @return the new stroke
+     */
+    public static Stroke fromPoints(float[] xy, int count, int color, float width) {
+        short[] quantized = new short[count * 2];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            short x = quantize(xy[2 * i]);
+            short y = quantize(xy[2 * i + 1]);
+            if (n > 0 && quantized[n - 2] == x && quantized[n - 1] == y)
+                continue;
+            quantized[n++] = x;
+            quantized[n++] = y;
+        }
+        if (n < quantized.length) {
+            short[] trimmed = new short[n];
+            System.arraycopy(quantized, 0, trimmed, 0, n);
+            quantized = trimmed;
+        }
+        return new Stroke(color, width, quantized);
+    }
+
+    private static short quantize(float v) {
+        int q = Math.round(v * QUANTUM);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, q));
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of points in the stroke.
+     *
+     * @return the number of points
+     */
+    public int getPointCount() {
+        return points.length / 2;
+    }
+
+    /**
+     * Returns the x coordinate of a point, in pixels.
+     *
+     * @param i the index of the point
+     * @return the x coordinate
+     */
+    public float getX(int i) {
+        return points[2 * i] / (float) QUANTUM;
+    }
+
+    /**
+     * Returns the y coordinate of a point, in pixels.
+     *
+     * @param i the index of the point
+     * @return the y coordinate
+     */
+    public float getY(int i) {
+        return points[2 * i + 1] / (float) QUANTUM;
+    }
+
+    /**
+     * Computes the pixel rectangle covered by the stroke's ink, including its caps.
+     *
+     * @param out receives left, top, right and bottom; right and bottom are exclusive
+     */
+    public void getBounds(int[] out) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < getPointCount(); i++) {
+            minX = Math.min(minX, getX(i));
+            maxX = Math.max(maxX, getX(i));
+            minY = Math.min(minY, getY(i));
+            maxY = Math.max(maxY, getY(i));
+        }
+        float r = width / 2;
+        out[0] = (int) Math.floor(minX - r);
+        out[1] = (int) Math.floor(minY - r);
+        out[2] = (int) Math.ceil(maxX + r) + 1;
+        out[3] = (int) Math.ceil(maxY + r) + 1;
+    }
+
+    /**
+     * Writes the stroke in the binary form read by readFrom.
+     *
+     * @param out the stream to write to
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(color);
+        out.writeFloat(width);
+        out.writeInt(points.length);
+        for (short p : points)
+            out.writeShort(p);
+    }
+
+    /**
+     * Reads a stroke written by writeTo.
+     *
+     * @param in the stream to read from
+     * @return the stroke
+     */
+    public static Stroke readFrom(DataInput in) throws IOException {
+        int color = in.readInt();
+        float width = in.readFloat();
+        int count = in.readInt();
+        BufferInput.require(in, 2L * count);
+        short[] points = new short[count];
+        if (in instanceof BufferInput)
+            ((BufferInput) in).readShorts(points);
+        else
+            for (int i = 0; i < points.length; i++)
+                points[i] = in.readShort();
+        return new Stroke(color, width, points);
+    }
+}
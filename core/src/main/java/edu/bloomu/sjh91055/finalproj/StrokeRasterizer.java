@@ -0,0 +1,108 @@
+package edu.bloomu.sjh91055.finalproj;
+
+/**
+ * Turns strokes into pixels. A stroke is drawn the same way the DoodleView's Paint draws
+ * the live path: round caps, round joins and no anti-aliasing. Each segment of the
+ * polyline is treated as a capsule (the segment swept by a disc of half the stroke's
+ * width), and every pixel whose center falls inside a capsule is set to the stroke's
+ * color. The capsule is convex, so on any row it covers a single run of pixels, which is
+ * handed to the SpanTarget in one call.
+ * <p>
+ * This class does not depend on Android, so the same code rasterizes frames for the
+ * screen and for export.
+ *
+ * @author Steven Hricenak
+ */
+public class StrokeRasterizer {
+
+    private StrokeRasterizer() {
+    }
+
+    /**
+     * Draws a stroke into a target.
+     *
+     * @param s      the stroke
+     * @param target where the pixels are written
+     */
+    public static void draw(Stroke s, SpanTarget target) {
+        int n = s.getPointCount();
+        float r = s.getWidth() / 2;
+        if (n == 1)
+            drawSegment(s.getX(0), s.getY(0), s.getX(0), s.getY(0), r, s.getColor(), target);
+        for (int i = 1; i < n; i++)
+            drawSegment(s.getX(i - 1), s.getY(i - 1), s.getX(i), s.getY(i), r, s.getColor(),
+                    target);
+    }
+
+    /**
+     * Fills the capsule around the segment from (x0, y0) to (x1, y1) with radius r.
+     */
+    static void drawSegment(float x0, float y0, float x1, float y1, float r, int color,
+                            SpanTarget target) {
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float len = (float) Math.sqrt(dx * dx + dy * dy);
+        //unit normal of the segment, scaled by the radius
+        float nx = len > 0 ? -dy / len * r : 0;
+        float ny = len > 0 ? dx / len * r : 0;
+        float[] cornersX = {x0 + nx, x1 + nx, x1 - nx, x0 - nx};
+        float[] cornersY = {y0 + ny, y1 + ny, y1 - ny, y0 - ny};
+
+        int top = Math.max(0, (int) Math.floor(Math.min(y0, y1) - r));
+        int bottom = Math.min(target.getHeight() - 1, (int) Math.ceil(Math.max(y0, y1) + r));
+        int width = target.getWidth();
+
+        for (int y = top; y <= bottom; y++) {
+            float yc = y + 0.5f;
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+
+            //the end caps
+            float h = discHalfWidth(yc - y0, r);
+            if (h >= 0) {
+                min = Math.min(min, x0 - h);
+                max = Math.max(max, x0 + h);
+            }
+            h = discHalfWidth(yc - y1, r);
+            if (h >= 0) {
+                min = Math.min(min, x1 - h);
+                max = Math.max(max, x1 + h);
+            }
+
+            //the body, a rectangle which may be rotated
+            if (len > 0) {
+                for (int e = 0; e < 4; e++) {
+                    float ax = cornersX[e], ay = cornersY[e];
+                    float bx = cornersX[(e + 1) % 4], by = cornersY[(e + 1) % 4];
+                    if ((ay - yc) * (by - yc) > 0)
+                        continue;
+                    if (ay == by) {
+                        min = Math.min(min, Math.min(ax, bx));
+                        max = Math.max(max, Math.max(ax, bx));
+                    } else {
+                        float x = ax + (yc - ay) * (bx - ax) / (by - ay);
+                        min = Math.min(min, x);
+                        max = Math.max(max, x);
+                    }
+                }
+            }
+
+            if (min > max)
+                continue;
+            //pixels whose centers lie within [min, max]
+            int left = Math.max(0, (int) Math.ceil(min - 0.5f));
+            int right = Math.min(width, (int) Math.floor(max - 0.5f) + 1);
+            if (left < right)
+                target.fillSpan(y, left, right, color);
+        }
+    }
+
+    /**
+     * Returns half the width of a disc of radius r on a line dy away from its center, or
+     * -1 if the line misses the disc.
+     */
+    private static float discHalfWidth(float dy, float r) {
+        float d = r * r - dy * dy;
+        return d < 0 ? -1 : (float) Math.sqrt(d);
+    }
+}
@@ -0,0 +1,230 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A square block of pixels that can be shared by several TiledRasters. Each raster that
+ * refers to a tile holds one reference to it, and a raster only writes into a tile it
+ * holds the only reference to; otherwise it copies the tile first. Tiles that are
+ * entirely the background color are all represented by the one BLANK tile, which is
+ * never written to.
+ * <p>
+ * A tile of 16 colors or fewer can also be packed, with 4 bits per pixel indexing a small
+ * palette of its own. Strokes are drawn in a handful of solid colors without
+ * anti-aliasing, so nearly every tile of a frame packs, in an eighth of the memory.
+ * Packed tiles are never written to; copying one expands it back to ARGB.
+ *
+ * @author Steven Hricenak
+ */
+public final class Tile {
+    public static final int SIZE = 64;
+    public static final int BYTES = SIZE * SIZE * 4;
+    public static final int PACKED_COLORS = 16;
+    public static final Tile BLANK = new Tile(TiledRaster.BACKGROUND_COLOR);
+
+    private final int[] pixels;
+    private final byte[] packed;
+    private final int[] palette;
+    private final AtomicInteger references;
+
+    private Tile(int color) {
+        this(new int[SIZE * SIZE]);
+        Arrays.fill(pixels, color);
+    }
+
+    private Tile(int[] pixels) {
+        this.pixels = pixels;
+        packed = null;
+        palette = null;
+        references = new AtomicInteger(1);
+    }
+
+    private Tile(byte[] packed, int[] palette) {
+        pixels = null;
+        this.packed = packed;
+        this.palette = palette;
+        references = new AtomicInteger(1);
+    }
+
+    /**
+     * Returns an unshared tile holding the given pixels, or BLANK if they are all the
+     * background color. The array is used as it is, not copied.
+     *
+     * @param pixels SIZE rows of SIZE pixels
+     * @return the tile, with one reference
+     */
+    public static Tile fromPixels(int[] pixels) {
+        Tile t = new Tile(pixels);
+        return t.isSolid(TiledRaster.BACKGROUND_COLOR) ? BLANK : t;
+    }
+
+    /**
+     * Returns a new unshared tile with the same pixels as this one, in ARGB even if this
+     * tile is packed.
+     *
+     * @return the copy, with one reference
+     */
+    public Tile copy() {
+        if (pixels != null)
+            return new Tile(pixels.clone());
+        int[] expanded = new int[SIZE * SIZE];
+        read(0, expanded, 0, expanded.length);
+        return new Tile(expanded);
+    }
+
+    /**
+     * Returns a packed copy of this tile, or null if it has more than PACKED_COLORS
+     * colors. A tile that is already packed is returned as it is.
+     *
+     * @return the packed tile, with one reference of its own, or null
+     */
+    public Tile pack() {
+        if (packed != null)
+            return retain();
+        int[] colors = new int[PACKED_COLORS];
+        int count = 0;
+        byte[] indices = new byte[SIZE * SIZE / 2];
+        int last = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            int p = pixels[i];
+            if (count == 0 || colors[last] != p) {
+                last = 0;
+                while (last < count && colors[last] != p)
+                    last++;
+                if (last == count) {
+                    if (count == PACKED_COLORS)
+                        return null;
+                    colors[count++] = p;
+                }
+            }
+            indices[i >> 1] |= last << ((i & 1) << 2);
+        }
+        return new Tile(indices, Arrays.copyOf(colors, count));
+    }
+
+    public boolean isPacked() {
+        return packed != null;
+    }
+
+    /**
+     * Returns the pixels of an ARGB tile, row by row with a stride of SIZE. They must not
+     * be modified unless the tile is writable. A packed tile has no pixel array, and
+     * returns null; use read instead.
+     *
+     * @return the pixels, or null if the tile is packed
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Copies a run of pixels out of the tile in ARGB, expanding them if the tile is packed.
+     *
+     * @param from      the index of the first pixel, counting row by row
+     * @param dst       the array to copy into
+     * @param dstOffset where in dst the first pixel goes
+     * @param length    the number of pixels
+     */
+    public void read(int from, int[] dst, int dstOffset, int length) {
+        if (pixels != null) {
+            System.arraycopy(pixels, from, dst, dstOffset, length);
+            return;
+        }
+        int i = from;
+        int end = from + length;
+        if ((i & 1) != 0 && i < end)
+            dst[dstOffset++] = palette[(packed[i++ >> 1] >> 4) & 0xf];
+        for (; i + 1 < end; i += 2) {
+            int b = packed[i >> 1];
+            dst[dstOffset++] = palette[b & 0xf];
+            dst[dstOffset++] = palette[(b >> 4) & 0xf];
+        }
+        if (i < end)
+            dst[dstOffset] = palette[packed[i >> 1] & 0xf];
+    }
+
+    /**
+     * Tells whether every pixel of a run is the given color.
+     *
+     * @param from  the index of the first pixel, counting row by row
+     * @param to    the index after the last pixel
+     * @param color the ARGB color
+     * @return true if the run is a single solid color
+     */
+    public boolean isRunColor(int from, int to, int color) {
+        if (pixels != null) {
+            for (int i = from; i < to; i++)
+                if (pixels[i] != color)
+                    return false;
+            return true;
+        }
+        int index = -1;
+        for (int c = 0; c < palette.length; c++)
+            if (palette[c] == color)
+                index = c;
+        if (index < 0)
+            return false;
+        for (int i = from; i < to; i++)
+            if (((packed[i >> 1] >> ((i & 1) << 2)) & 0xf) != index)
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes the tile's pixels take up.
+     *
+     * @return the size in bytes
+     */
+    public int getByteCount() {
+        return pixels != null ? BYTES : packed.length + palette.length * 4;
+    }
+
+    /**
+     * Adds a reference to the tile.
+     *
+     * @return this tile
+     */
+    public Tile retain() {
+        if (this != BLANK)
+            references.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Drops a reference to the tile.
+     */
+    public void release() {
+        if (this != BLANK)
+            references.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of references to the tile.
+     *
+     * @return the reference count
+     */
+    public int getReferences() {
+        return references.get();
+    }
+
+    /**
+     * Tells whether the holder of a reference may write into the tile, which is only the
+     * case if it holds the only reference and the tile is not BLANK or packed.
+     *
+     * @return true if the tile may be modified in place
+     */
+    public boolean isWritable() {
+        return this != BLANK && pixels != null && references.get() == 1;
+    }
+
+    /**
+     * Tells whether every pixel of the tile is the given color.
+     *
+     * @param color the ARGB color
+     * @return true if the tile is a single solid color
+     */
+    public boolean isSolid(int color) {
+        return isRunColor(0, SIZE * SIZE, color);
+    }
+}
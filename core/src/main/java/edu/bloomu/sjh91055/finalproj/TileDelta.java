@@ -0,0 +1,185 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The tiles of a raster within a rectangle, as they were before an edit, so the edit can
+ * be undone by putting them back. Capturing them only takes a reference to each tile:
+ * tiles are copy-on-write, so the raster copies a tile the first time the edit draws on
+ * it, and the delta costs only the tiles the edit actually touched.
+ * <p>
+ * A delta can then be compressed, usually on a background thread, after which it holds
+ * no tiles at all; mostly blank tiles with a few strokes on them deflate to a small
+ * fraction of their size.
+ *
+ * @author Steven Hricenak
+ */
+public class TileDelta {
+    private final int cols;
+    private final int rows;
+    private final int[] indices;
+    private Tile[] tiles;
+    private byte[] packed;
+
+    private TileDelta(int cols, int rows, int[] indices, Tile[] tiles) {
+        this.cols = cols;
+        this.rows = rows;
+        this.indices = indices;
+        this.tiles = tiles;
+    }
+
+    /**
+     * Takes a reference to every tile of a raster that overlaps a rectangle.
+     *
+     * @param raster the raster about to be edited
+     * @param left   the left edge of the rectangle
+     * @param top    the top edge of the rectangle
+     * @param right  the right edge of the rectangle, exclusive
+     * @param bottom the bottom edge of the rectangle, exclusive
+     * @return the delta
+     */
+    public static TileDelta capture(TiledRaster raster, int left, int top, int right,
+                                    int bottom) {
+        int col0 = Math.max(0, left / Tile.SIZE);
+        int row0 = Math.max(0, top / Tile.SIZE);
+        int col1 = Math.min(raster.getColumns(), (right + Tile.SIZE - 1) / Tile.SIZE);
+        int row1 = Math.min(raster.getRows(), (bottom + Tile.SIZE - 1) / Tile.SIZE);
+        int count = Math.max(0, col1 - col0) * Math.max(0, row1 - row0);
+        int[] indices = new int[count];
+        Tile[] tiles = new Tile[count];
+        int i = 0;
+        for (int row = row0; row < row1; row++)
+            for (int col = col0; col < col1; col++, i++) {
+                indices[i] = row * raster.getColumns() + col;
+                tiles[i] = raster.getTile(col, row).retain();
+            }
+        return new TileDelta(raster.getColumns(), raster.getRows(), indices, tiles);
+    }
+
+    /**
+     * Returns the number of bytes the delta keeps alive: the tiles it holds that are not
+     * BLANK, or the compressed data.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getByteCount() {
+        long bytes = indices.length * 4;
+        if (packed != null)
+            bytes += packed.length;
+        if (tiles != null)
+            for (Tile t : tiles)
+                if (t != Tile.BLANK)
+                    bytes += t.getByteCount();
+        return bytes;
+    }
+
+    /**
+     * Deflates the tiles and drops the references to them. Does nothing if the delta has
+     * already been compressed, restored or released.
+     */
+    public synchronized void compress() {
+        if (tiles == null)
+            return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteBuffer buffer = ByteBuffer.allocate(Tile.BYTES);
+        int[] pixels = new int[Tile.SIZE * Tile.SIZE];
+        try {
+            DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes,
+                    deflater));
+            for (Tile t : tiles) {
+                out.writeBoolean(t != Tile.BLANK);
+                if (t != Tile.BLANK) {
+                    t.read(0, pixels, 0, pixels.length);
+                    buffer.clear();
+                    buffer.asIntBuffer().put(pixels);
+                    out.write(buffer.array());
+                }
+            }
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            deflater.end();
+        }
+        packed = bytes.toByteArray();
+        releaseTiles();
+    }
+
+    /**
+     * Puts the tiles back into the raster they were captured from, dropping the tiles they
+     * replace. The delta is used up, and holds nothing afterwards.
+     *
+     * @param raster the raster
+     * @return false if the raster's grid does not match, or the delta has already been
+     * used, in which case the raster is not changed
+     */
+    public synchronized boolean restore(TiledRaster raster) {
+        if (raster.getColumns() != cols || raster.getRows() != rows)
+            return false;
+        if (tiles == null && packed != null)
+            tiles = unpack();
+        if (tiles == null)
+            return false;
+        for (int i = 0; i < indices.length; i++)
+            raster.replaceTile(indices[i] % cols, indices[i] / cols, tiles[i]).release();
+        tiles = null;
+        packed = null;
+        return true;
+    }
+
+    /**
+     * Drops everything the delta holds.
+     */
+    public synchronized void release() {
+        releaseTiles();
+        packed = null;
+    }
+
+    private void releaseTiles() {
+        if (tiles != null)
+            for (Tile t : tiles)
+                t.release();
+        tiles = null;
+    }
+
+    /**
+     * Inflates the compressed tiles into new tiles, or returns null if the data is
+     * damaged.
+     */
+    private Tile[] unpack() {
+        Tile[] result = new Tile[indices.length];
+        byte[] raw = new byte[Tile.BYTES];
+        try {
+            DataInputStream in = new DataInputStream(new InflaterInputStream(
+                    new ByteArrayInputStream(packed)));
+            for (int i = 0; i < result.length; i++) {
+                if (!in.readBoolean()) {
+                    result[i] = Tile.BLANK;
+                    continue;
+                }
+                in.readFully(raw);
+                int[] pixels = new int[Tile.SIZE * Tile.SIZE];
+                ByteBuffer.wrap(raw).asIntBuffer().get(pixels);
+                result[i] = Tile.fromPixels(pixels);
+            }
+            in.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            for (Tile t : result)
+                if (t != null)
+                    t.release();
+            return null;
+        }
+        return result;
+    }
+}
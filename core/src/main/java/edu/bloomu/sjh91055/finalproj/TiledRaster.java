@@ -0,0 +1,307 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.util.Arrays;
+
+/**
+ * The pixels of a frame, split into a grid of Tiles that are shared copy-on-write. Copying
+ * a raster only copies the grid of references, and a tile is copied the first time a
+ * stroke actually changes one of its pixels. A new or cleared raster refers to nothing
+ * but Tile.BLANK, so it costs no pixel memory at all; memory grows with what has been
+ * drawn, not with the size of the screen.
+ *
+ * @author Steven Hricenak
+ */
+public class TiledRaster implements SpanTarget {
+    public static final int BACKGROUND_COLOR = 0xFFFFFFFF;
+
+    private final int width;
+    private final int height;
+    private final int cols;
+    private final int rows;
+    private final Tile[] tiles;
+
+    /**
+     * Creates a raster of the given size with every pixel the background color.
+     */
+    public TiledRaster(int width, int height) {
+        this.width = width;
+        this.height = height;
+        cols = (width + Tile.SIZE - 1) / Tile.SIZE;
+        rows = (height + Tile.SIZE - 1) / Tile.SIZE;
+        tiles = new Tile[cols * rows];
+        Arrays.fill(tiles, Tile.BLANK);
+    }
+
+    /**
+     * Returns a raster with the same pixels that shares every tile with this one.
+     *
+     * @return the copy
+     */
+    public TiledRaster copy() {
+        TiledRaster r = new TiledRaster(width, height);
+        for (int i = 0; i < tiles.length; i++)
+            r.tiles[i] = tiles[i].retain();
+        return r;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the tile at a position in the grid. Its pixels must only be read.
+     *
+     * @param col the column of the tile
+     * @param row the row of the tile
+     * @return the tile
+     */
+    public Tile getTile(int col, int row) {
+        return tiles[row * cols + col];
+    }
+
+    /**
+     * Puts a tile at a position in the grid. The raster takes over the caller's reference
+     * to the new tile, and the caller takes over the raster's reference to the old one.
+     *
+     * @param col the column of the tile
+     * @param row the row of the tile
+     * @param t   the new tile
+     * @return the tile that was there before
+     */
+    public Tile replaceTile(int col, int row, Tile t) {
+        Tile old = tiles[row * cols + col];
+        tiles[row * cols + col] = t;
+        return old;
+    }
+
+    /**
+     * Returns the number of bytes of pixels this raster accounts for. A tile shared by
+     * several rasters is split evenly between them, and BLANK costs nothing.
+     *
+     * @return the approximate size in bytes
+     */
+    public long getByteCount() {
+        long bytes = 0;
+        for (Tile t : tiles)
+            if (t != Tile.BLANK)
+                bytes += t.getByteCount() / Math.max(1, t.getReferences());
+        return bytes;
+    }
+
+    /**
+     * Sets every pixel back to the background color.
+     */
+    public void clear() {
+        release();
+        Arrays.fill(tiles, Tile.BLANK);
+    }
+
+    /**
+     * Makes this raster share every tile of another raster of the same size, dropping
+     * its own, so it has the same pixels at no cost.
+     *
+     * @param other the raster to take the pixels of
+     */
+    public void share(TiledRaster other) {
+        for (int i = 0; i < tiles.length; i++) {
+            Tile t = other.tiles[i].retain();
+            tiles[i].release();
+            tiles[i] = t;
+        }
+    }
+
+    /**
+     * Drops this raster's references to its tiles. The raster must not be used afterwards
+     * except to be cleared.
+     */
+    public void release() {
+        for (Tile t : tiles)
+            t.release();
+    }
+
+    /**
+     * Replaces any tile this raster holds the only reference to, and which has been drawn
+     * back to the background color, with BLANK.
+     */
+    public void compact() {
+        for (int i = 0; i < tiles.length; i++) {
+            Tile t = tiles[i];
+            if (t.isWritable() && t.isSolid(BACKGROUND_COLOR)) {
+                t.release();
+                tiles[i] = Tile.BLANK;
+            }
+        }
+    }
+
+    /**
+     * Replaces every tile that has few enough colors with a packed copy, so a raster that
+     * is only being kept for display or export takes an eighth of the memory. Tiles are
+     * expanded again, one at a time, as they are drawn on.
+     */
+    public void pack() {
+        for (int i = 0; i < tiles.length; i++) {
+            Tile t = tiles[i];
+            if (t == Tile.BLANK || t.isPacked())
+                continue;
+            Tile p = t.pack();
+            if (p != null) {
+                t.release();
+                tiles[i] = p;
+            }
+        }
+    }
+
+    @Override
+    public void fillSpan(int y, int x0, int x1, int color) {
+        int row = y / Tile.SIZE;
+        int offsetY = (y % Tile.SIZE) * Tile.SIZE;
+        for (int col = x0 / Tile.SIZE; col * Tile.SIZE < x1; col++) {
+            int tileX = col * Tile.SIZE;
+            int from = Math.max(x0, tileX) - tileX;
+            int to = Math.min(x1, tileX + Tile.SIZE) - tileX;
+            int index = row * cols + col;
+            Tile t = tiles[index];
+            if (!t.isWritable()) {
+                if (t.isRunColor(offsetY + from, offsetY + to, color))
+                    continue; //the span would not change anything, so keep sharing
+                t = writable(index);
+            }
+            Arrays.fill(t.getPixels(), offsetY + from, offsetY + to, color);
+        }
+    }
+
+    /**
+     * Copies a block of pixels into the raster. Tiles the block leaves entirely the
+     * background color stay BLANK.
+     *
+     * @param src    the pixels, row by row
+     * @param offset the index of the top left pixel of the block in src
+     * @param stride the distance between rows in src
+     * @param x      the left edge of the block in the raster
+     * @param y      the top edge of the block in the raster
+     * @param w      the width of the block
+     * @param h      the height of the block
+     */
+    public void write(int[] src, int offset, int stride, int x, int y, int w, int h) {
+        for (int row = y / Tile.SIZE; row * Tile.SIZE < y + h; row++) {
+            for (int col = x / Tile.SIZE; col * Tile.SIZE < x + w; col++) {
+                int left = Math.max(x, col * Tile.SIZE);
+                int top = Math.max(y, row * Tile.SIZE);
+                int right = Math.min(x + w, (col + 1) * Tile.SIZE);
+                int bottom = Math.min(y + h, (row + 1) * Tile.SIZE);
+                int index = row * cols + col;
+                if (tiles[index] == Tile.BLANK
+                        && isBlockColor(src, offset + (top - y) * stride + (left - x), stride,
+                        right - left, bottom - top, BACKGROUND_COLOR))
+                    continue;
+                int[] dst = writable(index).getPixels();
+                for (int py = top; py < bottom; py++)
+                    System.arraycopy(src, offset + (py - y) * stride + (left - x), dst,
+                            (py - row * Tile.SIZE) * Tile.SIZE + left - col * Tile.SIZE,
+                            right - left);
+            }
+        }
+    }
+
+    /**
+     * Copies a block of the raster's pixels into an array.
+     *
+     * @param dst    the array to copy into, row by row
+     * @param offset the index in dst the top left pixel of the block goes to
+     * @param stride the distance between rows in dst
+     * @param x      the left edge of the block in the raster
+     * @param y      the top edge of the block in the raster
+     * @param w      the width of the block
+     * @param h      the height of the block
+     */
+    public void read(int[] dst, int offset, int stride, int x, int y, int w, int h) {
+        for (int py = y; py < y + h; py++) {
+            int row = py / Tile.SIZE;
+            int tileY = (py % Tile.SIZE) * Tile.SIZE;
+            int px = x;
+            while (px < x + w) {
+                int col = px / Tile.SIZE;
+                int run = Math.min(x + w, (col + 1) * Tile.SIZE) - px;
+                tiles[row * cols + col].read(tileY + px - col * Tile.SIZE, dst,
+                        offset + (py - y) * stride + px - x, run);
+                px += run;
+            }
+        }
+    }
+
+    /**
+     * Shrinks the raster by a power of two, averaging each square block of pixels into
+     * one, as the given level of a mipmap would be. A band of rows is read at a time, so
+     * the full-size pixels are never all in memory. Rows and columns left over at the
+     * right and bottom edges are left out.
+     *
+     * @param level the number of times the size is halved
+     * @param dst   receives the pixels, row by row, (width &gt;&gt; level) by
+     *              (height &gt;&gt; level)
+     */
+    public void downscale(int level, int[] dst) {
+        int scale = 1 << level;
+        int w = width >> level;
+        int h = height >> level;
+        int[] band = new int[w * scale * scale];
+        int[] sums = new int[w * 3];
+        for (int y = 0; y < h; y++) {
+            read(band, 0, w * scale, 0, y * scale, w * scale, scale);
+            Arrays.fill(sums, 0);
+            for (int i = 0; i < band.length; i++) {
+                int c = band[i];
+                int x = (i % (w * scale)) >> level;
+                sums[3 * x] += c >> 16 & 0xff;
+                sums[3 * x + 1] += c >> 8 & 0xff;
+                sums[3 * x + 2] += c & 0xff;
+            }
+            int shift = 2 * level;
+            for (int x = 0; x < w; x++)
+                dst[y * w + x] = 0xff000000 | (sums[3 * x] >> shift) << 16
+                        | (sums[3 * x + 1] >> shift) << 8 | sums[3 * x + 2] >> shift;
+        }
+    }
+
+    /**
+     * Makes the tile at the given grid index safe to write into, copying it if it is
+     * shared or BLANK.
+     */
+    private Tile writable(int index) {
+        Tile t = tiles[index];
+        if (t.isWritable())
+            return t;
+        Tile copy = t.copy();
+        t.release();
+        tiles[index] = copy;
+        return copy;
+    }
+
+    private static boolean isSpanColor(int[] pixels, int from, int to, int color) {
+        for (int i = from; i < to; i++)
+            if (pixels[i] != color)
+                return false;
+        return true;
+    }
+
+    private static boolean isBlockColor(int[] src, int offset, int stride, int w, int h,
+                                        int color) {
+        for (int row = 0; row < h; row++)
+            if (!isSpanColor(src, offset + row * stride, offset + row * stride + w, color))
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,420 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The edits that can be undone and redone, kept as a pair of stacks per frame so that
+ * undo applies to the frame being drawn on. An edit records only what is needed to
+ * reverse it: the stroke that was added, or the strokes a clear removed, and the tiles
+ * of the frame's raster it changed. The tiles are compressed on a background thread
+ * shortly after the edit is recorded.
+ * <p>
+ * The history is bounded by a byte budget. When it is exceeded the oldest edits are
+ * forgotten first, whichever frame they belong to. Forgetting an edit that was undone
+ * also forgets every later edit of that frame that could be redone, since they can no
+ * longer be reached. The bytes are kept as a running total, adjusted as edits are
+ * recorded, compressed and forgotten, so checking the budget never waits on the
+ * compressor.
+ *
+ * @author Steven Hricenak
+ */
+public class UndoHistory {
+    public static final int STROKE = 0;
+    public static final int CLEAR = 1;
+    public static final int CREATE = 2;
+
+    /**
+     * One edit of a frame.
+     */
+    public static class Edit {
+        private final int kind;
+        private final Frame frame;
+        private final int layer;
+        private final Stroke stroke;
+        private final List<Stroke> strokes;
+        private final int[] layerSizes;
+        private final byte[] base;
+        private final long fixedBytes;
+        //guarded by the history the edit is recorded in
+        private TileDelta delta;
+        private long deltaBytes;
+
+        private Edit(int kind, Frame frame, int layer, Stroke stroke, List<Stroke> strokes,
+                     int[] layerSizes, byte[] base) {
+            this.kind = kind;
+            this.frame = frame;
+            this.layer = layer;
+            this.stroke = stroke;
+            this.strokes = strokes;
+            this.layerSizes = layerSizes;
+            this.base = base;
+            //strokes that are still in the frame are not counted, since the frame keeps
+            //them alive anyway
+            long bytes = base == null ? 0 : base.length;
+            if (strokes != null)
+                for (Stroke s : strokes)
+                    bytes += 4 * s.getPointCount();
+            fixedBytes = bytes;
+        }
+
+        /**
+         * Creates the edit of adding a stroke on top of a frame, to its top layer.
+         *
+         * @param frame the frame
+         * @param s     the stroke
+         * @return the edit
+         */
+        public static Edit stroke(Frame frame, Stroke s) {
+            return stroke(frame, frame.getLayerCount() - 1, s);
+        }
+
+        /**
+         * Creates the edit of adding a stroke on top of a layer of a frame.
+         *
+         * @param frame the frame
+         * @param layer the layer
+         * @param s     the stroke
+         * @return the edit
+         */
+        public static Edit stroke(Frame frame, int layer, Stroke s) {
+            return new Edit(STROKE, frame, layer, s, null, null, null);
+        }
+
+        /**
+         * Creates the edit of clearing a frame, taking note of what it holds beforehand.
+         *
+         * @param frame the frame, before it is cleared
+         * @return the edit
+         */
+        public static Edit clear(Frame frame) {
+            return new Edit(CLEAR, frame, 0, null, new ArrayList<>(frame.getStrokes()),
+                    frame.getLayerSizes(), frame.getBase());
+        }
+
+        /**
+         * Creates the edit of adding a frame to the animation. Undoing it removes the
+         * frame, along with its history, so it cannot be redone.
+         *
+         * @param frame the new frame
+         * @return the edit
+         */
+        public static Edit create(Frame frame) {
+            return new Edit(CREATE, frame, 0, null, null, null, null);
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        public Frame getFrame() {
+            return frame;
+        }
+
+        /**
+         * Returns the layer a STROKE edit added its stroke to.
+         *
+         * @return the layer
+         */
+        public int getLayer() {
+            return layer;
+        }
+
+        /**
+         * Returns the stroke a STROKE edit added.
+         *
+         * @return the stroke
+         */
+        public Stroke getStroke() {
+            return stroke;
+        }
+
+        /**
+         * Returns the strokes a CLEAR edit removed.
+         *
+         * @return the strokes, bottom first
+         */
+        public List<Stroke> getStrokes() {
+            return strokes;
+        }
+
+        /**
+         * Returns the number of strokes in each layer before a CLEAR edit.
+         *
+         * @return the counts, bottom layer first
+         */
+        public int[] getLayerSizes() {
+            return layerSizes;
+        }
+
+        /**
+         * Returns the base image a CLEAR edit removed.
+         *
+         * @return the encoded image, or null
+         */
+        public byte[] getBase() {
+            return base;
+        }
+    }
+
+    private final long budget;
+    private final LinkedHashSet<Edit> edits;
+    private final IdentityHashMap<Frame, ArrayList<Edit>> undoStacks;
+    private final IdentityHashMap<Frame, ArrayList<Edit>> redoStacks;
+    private final ExecutorService compressor;
+    private long bytes;
+
+    /**
+     * Creates an empty history.
+     *
+     * @param budget the maximum number of bytes the history may keep alive
+     */
+    public UndoHistory(long budget) {
+        this.budget = budget;
+        edits = new LinkedHashSet<>();
+        undoStacks = new IdentityHashMap<>();
+        redoStacks = new IdentityHashMap<>();
+        compressor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Records a new edit, which cannot be redone, so the edits of its frame that had been
+     * undone are forgotten.
+     *
+     * @param edit  the edit
+     * @param delta the tiles the edit is about to change, or null if the frame is not
+     *              rasterized
+     */
+    public synchronized void record(Edit edit, TileDelta delta) {
+        ArrayList<Edit> redo = redoStacks.remove(edit.frame);
+        if (redo != null)
+            for (Edit e : redo)
+                drop(e);
+        stack(undoStacks, edit.frame).add(edit);
+        edits.add(edit);
+        bytes += edit.fixedBytes;
+        attach(edit, delta);
+    }
+
+    /**
+     * Returns the edit of a frame that would be undone next, without undoing it.
+     *
+     * @param frame the frame
+     * @return the edit, or null if there is nothing to undo
+     */
+    public synchronized Edit peekUndo(Frame frame) {
+        ArrayList<Edit> stack = undoStacks.get(frame);
+        return stack == null || stack.isEmpty() ? null : stack.get(stack.size() - 1);
+    }
+
+    /**
+     * Moves the latest edit of a frame to its redo stack. The caller reverses it.
+     *
+     * @param frame the frame
+     * @return the edit, or null if there is nothing to undo
+     */
+    public synchronized Edit undo(Frame frame) {
+        Edit edit = pop(undoStacks, frame);
+        if (edit != null)
+            stack(redoStacks, frame).add(edit);
+        return edit;
+    }
+
+    /**
+     * Moves the latest undone edit of a frame back to its undo stack. The caller applies
+     * it again, and hands over the tiles it is about to change with attach.
+     *
+     * @param frame the frame
+     * @return the edit, or null if there is nothing to redo
+     */
+    public synchronized Edit redo(Frame frame) {
+        Edit edit = pop(redoStacks, frame);
+        if (edit != null)
+            stack(undoStacks, frame).add(edit);
+        return edit;
+    }
+
+    /**
+     * Gives an edit the tiles it is about to change, and has them compressed in the
+     * background. The oldest edits are forgotten if the budget is exceeded.
+     *
+     * @param edit  the edit
+     * @param delta the tiles, or null if the frame is not rasterized
+     */
+    public synchronized void attach(final Edit edit, final TileDelta delta) {
+        discard(detach(edit));
+        if (delta != null) {
+            //nothing else has the delta yet, so counting it does not wait
+            edit.delta = delta;
+            edit.deltaBytes = delta.getByteCount();
+            bytes += edit.deltaBytes;
+            compressor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    delta.compress();
+                    compressed(edit, delta, delta.getByteCount());
+                }
+            });
+        }
+        trim();
+    }
+
+    /**
+     * Takes the tiles an edit changed, as they were before it, leaving the edit without
+     * them.
+     *
+     * @param edit the edit
+     * @return the tiles, or null if the frame was not rasterized when the edit was made
+     */
+    public synchronized TileDelta takeDelta(Edit edit) {
+        return detach(edit);
+    }
+
+    /**
+     * Forgets every edit of a frame, such as when it is removed from the animation.
+     *
+     * @param frame the frame
+     */
+    public synchronized void forget(Frame frame) {
+        Iterator<Edit> it = edits.iterator();
+        while (it.hasNext()) {
+            Edit e = it.next();
+            if (e.frame == frame) {
+                discard(detach(e));
+                bytes -= e.fixedBytes;
+                it.remove();
+            }
+        }
+        undoStacks.remove(frame);
+        redoStacks.remove(frame);
+    }
+
+    /**
+     * Drops the tiles of every edit, keeping the edits themselves. Undoing one of them
+     * then has its frame rasterized again, which is needed once the pixels under every
+     * frame have changed and the tiles no longer match them.
+     */
+    public synchronized void releaseDeltas() {
+        for (Edit e : edits)
+            discard(detach(e));
+    }
+
+    /**
+     * Forgets every edit.
+     */
+    public synchronized void clear() {
+        for (Edit e : edits)
+            discard(detach(e));
+        edits.clear();
+        bytes = 0;
+        undoStacks.clear();
+        redoStacks.clear();
+    }
+
+    /**
+     * Returns the number of bytes kept alive by the history.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getByteCount() {
+        return bytes;
+    }
+
+    /**
+     * Stops the compressor thread once it has dealt with the tiles queued for it. The
+     * history must not be recorded into afterwards.
+     */
+    public synchronized void close() {
+        compressor.shutdown();
+    }
+
+    /**
+     * Forgets the oldest edits until the history is within its budget.
+     */
+    private void trim() {
+        while (bytes > budget && !edits.isEmpty()) {
+            Edit oldest = edits.iterator().next();
+            ArrayList<Edit> redo = redoStacks.get(oldest.frame);
+            if (redo != null && redo.contains(oldest)) {
+                //the later undone edits can only be redone after this one
+                for (Edit e : redoStacks.remove(oldest.frame))
+                    drop(e);
+            } else {
+                undoStacks.get(oldest.frame).remove(oldest);
+                drop(oldest);
+            }
+        }
+    }
+
+    /**
+     * Drops an edit that has already been taken off its stack.
+     */
+    private void drop(Edit edit) {
+        edits.remove(edit);
+        bytes -= edit.fixedBytes;
+        discard(detach(edit));
+    }
+
+    /**
+     * Counts the compressed size of an edit's tiles, unless the edit has let go of them
+     * in the meantime.
+     */
+    private synchronized void compressed(Edit edit, TileDelta delta, long size) {
+        if (edit.delta == delta) {
+            bytes += size - edit.deltaBytes;
+            edit.deltaBytes = size;
+        }
+    }
+
+    /**
+     * Takes an edit's tiles out of the running total, leaving the edit without them.
+     */
+    private TileDelta detach(Edit edit) {
+        TileDelta d = edit.delta;
+        bytes -= edit.deltaBytes;
+        edit.delta = null;
+        edit.deltaBytes = 0;
+        return d;
+    }
+
+    /**
+     * Releases tiles that are no longer needed on the compressor thread, after any
+     * compression of them under way, so the caller does not wait for it.
+     */
+    private void discard(final TileDelta delta) {
+        if (delta == null)
+            return;
+        if (compressor.isShutdown()) {
+            delta.release();
+            return;
+        }
+        compressor.execute(new Runnable() {
+            @Override
+            public void run() {
+                delta.release();
+            }
+        });
+    }
+
+    private static ArrayList<Edit> stack(IdentityHashMap<Frame, ArrayList<Edit>> stacks,
+                                         Frame frame) {
+        ArrayList<Edit> stack = stacks.get(frame);
+        if (stack == null) {
+            stack = new ArrayList<>();
+            stacks.put(frame, stack);
+        }
+        return stack;
+    }
+
+    private static Edit pop(IdentityHashMap<Frame, ArrayList<Edit>> stacks, Frame frame) {
+        ArrayList<Edit> stack = stacks.get(frame);
+        if (stack == null || stack.isEmpty())
+            return null;
+        return stack.remove(stack.size() - 1);
+    }
+}
@@ -0,0 +1,411 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.jcodec.codecs.h264.H264Encoder;
+import org.jcodec.common.Codec;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.VideoCodecMeta;
+import org.jcodec.common.VideoEncoder;
+import org.jcodec.common.io.FileChannelWrapper;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.Size;
+import org.jcodec.containers.mp4.muxer.MP4Muxer;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Exports the animation to an mp4 video in the background. The frames are snapshotted when
+ * the exporter is created, so the user can keep drawing while it runs; what is exported is
+ * the animation as it was when the export started.
+ * <p>
+ * The export is a pipeline of three threads connected by small bounded queues. The first
+ * rasterizes frames, the second converts their pixels into YUV pictures for the encoder,
+ * splitting each frame across every core, and the third encodes them with JCodec's H.264
+ * encoder and muxes them into the file. All three kinds of work overlap and only a few
+ * frames are in memory at any time. Pictures are handed back to the converter once
+ * encoded, so none are allocated after the first few frames.
+ * <p>
+ * Holds, where the same drawing is repeated over several frames, are found by comparing
+ * the frames' content hashes. Each run of identical frames is rasterized, converted and
+ * encoded once, as a single sample whose duration covers the whole run, which makes the
+ * export faster and the video smaller.
+ * <p>
+ * The video can be made at another resolution than the frames are drawn at, such as to
+ * share it small or to upscale it. Frames are then scaled by a Resampler in the second
+ * stage, before they are converted. A video needs even dimensions, so frames of an odd
+ * size are always scaled to the nearest even size below.
+ * <p>
+ * Given an EncodedFrameCache, every frame is encoded as an IDR frame, which any video can
+ * start from, and kept in the cache. Frames whose content hash is already in the cache
+ * skip the first three stages and are muxed straight from it, so exporting again after a
+ * small edit only rasterizes and encodes the frames that changed. Without a cache, frames
+ * are encoded with inter prediction, which makes a smaller video.
+ * <p>
+ * Progress, completion and failure are reported to a Listener through an Executor. The
+ * source frames are never modified.
+ *
+ * @author Steven Hricenak
+ */
+public class VideoExporter implements Exporter {
+    private static final int QUEUE_SIZE = 2;
+    private static final int PICTURES = QUEUE_SIZE + 2;
+    private static final Hold END = new Hold(0, 0, null);
+
+    /**
+     * A run of identical frames, which is encoded once and shown for as many frame times
+     * as the run is long.
+     */
+    private static class Hold {
+        final int start;
+        final int length;
+        final TiledRaster raster;
+        String key;
+        ByteBuffer encoded;
+        Picture picture;
+
+        Hold(int start, int length, TiledRaster raster) {
+            this.start = start;
+            this.length = length;
+            this.raster = raster;
+        }
+    }
+
+    private final FrameStore store;
+    private final List<Frame> frames;
+    private final List<Frame> snapshots;
+    private final Frame background;
+    private final int backgroundGeneration;
+    private final int[] versions;
+    private final File file;
+    private final int fps;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int width;
+    private final int height;
+    private final Listener listener;
+    private final Executor callbacks;
+
+    private final BlockingQueue<Hold> rasters;
+    private final BlockingQueue<Hold> pictures;
+    private final BlockingQueue<Picture> free;
+    private final ExecutorService workers;
+    private final ForkJoinPool converters;
+    private final AtomicBoolean ended;
+    private EncodedFrameCache cache;
+
+    /**
+     * Snapshots the frames of the animation for export at the size they are drawn at.
+     * Must be called on the thread the frames are edited on.
+     *
+     * @param store     the frames to export
+     * @param file      the video file to write
+     * @param fps       the frame rate of the video
+     * @param listener  receives progress and the outcome of the export
+     * @param callbacks runs the listener's methods, such as by posting them to the main
+     *                  thread
+     */
+    public VideoExporter(FrameStore store, File file, int fps, Listener listener,
+                         Executor callbacks) {
+        this(store, file, fps, store.getWidth() & ~1, store.getHeight() & ~1, listener,
+                callbacks);
+    }
+
+    /**
+     * Snapshots the frames of the animation for export at the given size. Must be called
+     * on the thread the frames are edited on.
+     *
+     * @param store     the frames to export
+     * @param file      the video file to write
+     * @param fps       the frame rate of the video
+     * @param width     the width of the video, which must be even
+     * @param height    the height of the video, which must be even
+     * @param listener  receives progress and the outcome of the export
+     * @param callbacks runs the listener's methods, such as by posting them to the main
+     *                  thread
+     */
+    public VideoExporter(FrameStore store, File file, int fps, int width, int height,
+                         Listener listener, Executor callbacks) {
+        if (width % 2 != 0 || height % 2 != 0)
+            throw new IllegalArgumentException("Odd video size " + width + "x" + height);
+        this.store = store;
+        this.file = file;
+        this.fps = fps;
+        this.listener = listener;
+        this.callbacks = callbacks;
+        frames = store.getFrames();
+        snapshots = new ArrayList<>(frames.size());
+        versions = new int[frames.size()];
+        for (int i = 0; i < frames.size(); i++) {
+            versions[i] = frames.get(i).getVersion();
+            snapshots.add(frames.get(i).copy());
+        }
+        background = store.getBackground().copy();
+        backgroundGeneration = store.getBackgroundGeneration();
+        sourceWidth = store.getWidth();
+        sourceHeight = store.getHeight();
+        this.width = width;
+        this.height = height;
+
+        rasters = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        pictures = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        free = new ArrayBlockingQueue<>(PICTURES);
+        workers = Executors.newFixedThreadPool(3);
+        converters = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        ended = new AtomicBoolean();
+    }
+
+    /**
+     * Has frames encoded one at a time and kept in a cache, and reused from it if they
+     * are already there. Must be called before the export starts.
+     *
+     * @param cache the cache of encoded frames
+     */
+    public void setCache(EncodedFrameCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void start() {
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                fetch();
+            }
+        });
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                convert();
+            }
+        });
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                encode();
+            }
+        });
+        workers.shutdown();
+    }
+
+    @Override
+    public void cancel() {
+        if (!end())
+            return;
+        file.delete();
+        callbacks.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onCancelled(file);
+            }
+        });
+    }
+
+    /**
+     * The first stage: splits the snapshot into runs of identical frames, by their content
+     * hashes, and rasterizes the first frame of each run, unless the run is cached.
+     */
+    private void fetch() {
+        try {
+            int n = frames.size();
+            int i = 0;
+            long hash = n > 0 ? contentHash(0) : 0;
+            long shared = cache != null ? background.getContentHash() : 0;
+            while (i < n && !ended.get()) {
+                int j = i + 1;
+                long next = 0;
+                while (j < n && (next = contentHash(j)) == hash)
+                    j++;
+                String key = null;
+                ByteBuffer encoded = null;
+                if (cache != null) {
+                    key = EncodedFrameCache.key(hash, shared, sourceWidth, sourceHeight,
+                            width, height);
+                    encoded = cache.get(key);
+                }
+                Hold hold = new Hold(i, j - i, encoded != null ? null
+                        : store.getSnapshotRaster(frames.get(i), snapshots.get(i),
+                        versions[i], background, backgroundGeneration));
+                hold.key = key;
+                hold.encoded = encoded;
+                rasters.put(hold);
+                i = j;
+                hash = next;
+            }
+            rasters.put(END);
+        } catch (InterruptedException e) {
+            //cancelled
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * The second stage: scales each raster to the size of the video, if it is not that
+     * size already, and converts it into a YUV picture, split across every core.
+     */
+    private void convert() {
+        try {
+            YuvConverter converter = new YuvConverter(width, height, converters);
+            for (int i = 0; i < PICTURES; i++)
+                free.put(converter.createPicture());
+            Resampler resampler = null;
+            TiledRaster scaled = null;
+            if (width != sourceWidth || height != sourceHeight) {
+                resampler = new Resampler(sourceWidth, sourceHeight, width, height);
+                scaled = new TiledRaster(width, height);
+            }
+            while (true) {
+                Hold hold = rasters.take();
+                if (hold == END)
+                    break;
+                if (hold.encoded != null) {
+                    pictures.put(hold);
+                    continue;
+                }
+                TiledRaster raster = hold.raster;
+                if (raster.getWidth() != sourceWidth || raster.getHeight() != sourceHeight)
+                    throw new IllegalStateException("Frames were resized during export");
+                hold.picture = free.take();
+                if (resampler != null) {
+                    resampler.resample(raster, scaled);
+                    converter.convert(scaled, hold.picture);
+                } else
+                    converter.convert(raster, hold.picture);
+                raster.release();
+                pictures.put(hold);
+            }
+            pictures.put(END);
+        } catch (InterruptedException e) {
+            //cancelled
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * The last stage: encodes each picture to H.264, or takes it from the cache, muxes
+     * it into the mp4 file as a sample lasting as long as its run of frames, and reports
+     * progress. The encoder's output buffer is reused for every frame. The time between
+     * frames leaving the pipeline is recorded as the export rate.
+     */
+    private void encode() {
+        try {
+            FileChannelWrapper channel = NIOUtils.writableChannel(file);
+            try {
+                MP4Muxer muxer = MP4Muxer.createMP4MuxerToChannel(channel);
+                MuxerTrack track = muxer.addVideoTrack(Codec.H264,
+                        VideoCodecMeta.createSimpleVideoCodecMeta(new Size(width, height),
+                                ColorSpace.YUV420J));
+                H264Encoder encoder = H264Encoder.createH264Encoder();
+                ByteBuffer buffer = null;
+                int samples = 0;
+                long last = System.nanoTime();
+                while (true) {
+                    Hold hold = pictures.take();
+                    if (hold == END)
+                        break;
+                    ByteBuffer data;
+                    boolean key = true;
+                    if (hold.encoded != null) {
+                        data = hold.encoded;
+                        Metrics.get().reusedFrames.add(hold.length);
+                    } else {
+                        if (buffer == null)
+                            buffer = ByteBuffer.allocate(
+                                    encoder.estimateBufferSize(hold.picture));
+                        buffer.clear();
+                        if (cache != null) {
+                            data = encoder.encodeIDRFrame(hold.picture, buffer);
+                            //cached before muxing, which rewrites the data in place
+                            cache.put(hold.key, data);
+                        } else {
+                            VideoEncoder.EncodedFrame frame =
+                                    encoder.encodeFrame(hold.picture, buffer);
+                            data = frame.getData();
+                            key = frame.isKeyFrame();
+                        }
+                        free.put(hold.picture);
+                    }
+                    track.addFrame(Packet.createPacket(data, hold.start, fps, hold.length,
+                            samples++, key ? Packet.FrameType.KEY : Packet.FrameType.INTER,
+                            null));
+                    long now = System.nanoTime();
+                    Metrics.get().exportFrame.record(now - last, hold.length);
+                    last = now;
+                    progress(hold.start + hold.length);
+                }
+                muxer.finish();
+            } finally {
+                channel.close();
+            }
+            if (!ended.compareAndSet(false, true))
+                return;
+            converters.shutdown();
+            callbacks.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onFinished(file);
+                }
+            });
+        } catch (InterruptedException e) {
+            //cancelled
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private long contentHash(int i) {
+        return store.getContentHash(frames.get(i), snapshots.get(i), versions[i]);
+    }
+
+    private void progress(final int done) {
+        callbacks.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!ended.get())
+                    listener.onProgress(done, frames.size());
+            }
+        });
+    }
+
+    private void fail(final Exception e) {
+        if (!end())
+            return;
+        file.delete();
+        callbacks.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFailed(file, e);
+            }
+        });
+    }
+
+    /**
+     * Marks the export as over and interrupts any stage still running.
+     *
+     * @return false if the export had already ended
+     */
+    private boolean end() {
+        if (!ended.compareAndSet(false, true))
+            return false;
+        workers.shutdownNow();
+        converters.shutdownNow();
+        Hold hold;
+        while ((hold = rasters.poll()) != null)
+            if (hold != END && hold.raster != null)
+                hold.raster.release();
+        return true;
+    }
+}
@@ -0,0 +1,158 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Converts rasterized frames into the YUV420J pictures JCodec's H.264 encoder takes, using
+ * every core. The frame is split into bands of rows with a fork-join divide, and each band
+ * is read from the raster in bulk and converted on its own. Bands always hold whole pairs
+ * of rows, since each chroma sample covers a 2x2 block of pixels, so no two bands write
+ * the same sample.
+ * <p>
+ * The result is the same as JCodec's own RGB to YUV420J transform, but without the RGB
+ * picture in between. The pixel buffer is allocated once and reused for every frame, so
+ * a converter can only convert one frame at a time.
+ *
+ * @author Steven Hricenak
+ */
+public class YuvConverter {
+    private static final int BAND_ROWS = 32;
+
+    private final int width;
+    private final int height;
+    private final int[] argb;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a converter for pictures of the given size, which must be even.
+     *
+     * @param width  the width of the pictures
+     * @param height the height of the pictures
+     * @param pool   the threads the conversion is split across
+     */
+    public YuvConverter(int width, int height, ForkJoinPool pool) {
+        if (width % 2 != 0 || height % 2 != 0)
+            throw new IllegalArgumentException("Odd picture size " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        this.pool = pool;
+        argb = new int[width * height];
+    }
+
+    /**
+     * Creates a picture this converter can convert into.
+     *
+     * @return a new YUV420J picture
+     */
+    public Picture createPicture() {
+        return Picture.create(width, height, ColorSpace.YUV420J);
+    }
+
+    /**
+     * Converts the top left corner of a raster into a picture. The raster must be at
+     * least as large as the picture, and must not be written to during the conversion.
+     *
+     * @param raster  the frame's pixels
+     * @param picture receives the frame, as created by createPicture
+     */
+    public void convert(TiledRaster raster, Picture picture) {
+        pool.invoke(new Band(raster, picture, 0, height));
+    }
+
+    /**
+     * Converts the rows from top to bottom, splitting them in half until they are small
+     * enough to convert directly.
+     */
+    @SuppressWarnings("serial") //tasks are never serialized
+    private class Band extends RecursiveAction {
+        private final TiledRaster raster;
+        private final Picture picture;
+        private final int top;
+        private final int bottom;
+
+        Band(TiledRaster raster, Picture picture, int top, int bottom) {
+            this.raster = raster;
+            this.picture = picture;
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        @Override
+        protected void compute() {
+            if (bottom - top <= BAND_ROWS) {
+                convertRows(raster, picture, top, bottom);
+                return;
+            }
+            int middle = (top + (bottom - top) / 2) & ~1;
+            invokeAll(new Band(raster, picture, top, middle),
+                    new Band(raster, picture, middle, bottom));
+        }
+    }
+
+    /**
+     * Reads an even number of rows from the raster and writes their luma and chroma
+     * samples into the picture.
+     */
+    private void convertRows(TiledRaster raster, Picture picture, int top, int bottom) {
+        raster.read(argb, top * width, width, 0, top, width, bottom - top);
+        byte[] lumaPlane = picture.getPlaneData(0);
+        byte[] uPlane = picture.getPlaneData(1);
+        byte[] vPlane = picture.getPlaneData(2);
+        int chromaWidth = width / 2;
+        for (int y = top; y < bottom; y += 2) {
+            int row0 = y * width;
+            int row1 = row0 + width;
+            int c = (y / 2) * chromaWidth;
+            for (int x = 0; x < width; x += 2, c++) {
+                int p00 = argb[row0 + x];
+                int p01 = argb[row0 + x + 1];
+                int p10 = argb[row1 + x];
+                int p11 = argb[row1 + x + 1];
+                lumaPlane[row0 + x] = luma(p00);
+                lumaPlane[row0 + x + 1] = luma(p01);
+                lumaPlane[row1 + x] = luma(p10);
+                lumaPlane[row1 + x + 1] = luma(p11);
+                uPlane[c] = (byte) ((u(p00) + u(p01) + u(p10) + u(p11) + 2) >> 2);
+                vPlane[c] = (byte) ((v(p00) + v(p01) + v(p10) + v(p11) + 2) >> 2);
+            }
+        }
+    }
+
+    /*
+     * Full range BT.601 in 8 bit fixed point, as JCodec computes it. Samples are stored as
+     * signed bytes offset by 128.
+     */
+
+    private static byte luma(int c) {
+        int y = (77 * red(c) + 150 * green(c) + 15 * blue(c) + 128) >> 8;
+        return (byte) clip(y - 128);
+    }
+
+    private static int u(int c) {
+        return clip((-43 * red(c) - 85 * green(c) + 128 * blue(c) + 128) >> 8);
+    }
+
+    private static int v(int c) {
+        return clip((128 * red(c) - 107 * green(c) - 21 * blue(c) + 128) >> 8);
+    }
+
+    private static int red(int c) {
+        return (c >> 16) & 0xff;
+    }
+
+    private static int green(int c) {
+        return (c >> 8) & 0xff;
+    }
+
+    private static int blue(int c) {
+        return c & 0xff;
+    }
+
+    private static int clip(int v) {
+        return Math.max(-128, Math.min(127, v));
+    }
+}
@@ -0,0 +1,79 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ApngWriter.
+ */
+public class ApngWriterTest {
+    private static final int[] PALETTE = {0xff000000, 0xffffffff, 0xffff0000};
+
+    @Test
+    public void writer_writesChunksInOrderWithFrameCount() throws Exception {
+        File file = File.createTempFile("anim", ".png");
+        try {
+            ApngWriter writer = new ApngWriter(3, 2, PALETTE, 2, 12);
+            writer.open(file);
+            writer.writeFrame(0, 0, 3, 2, 0, 1, writer.compress(new byte[6], 3, 2));
+            writer.writeFrame(1, 1, 1, 1, 1, 5, writer.compress(new byte[]{1}, 1, 1));
+            writer.finish();
+
+            ByteBuffer png = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            assertEquals(0x89504e47, png.getInt());
+            png.getInt();
+            ArrayList<String> types = new ArrayList<>();
+            ArrayList<byte[]> chunks = new ArrayList<>();
+            CRC32 crc = new CRC32();
+            while (png.hasRemaining()) {
+                byte[] data = new byte[png.getInt()];
+                byte[] type = new byte[4];
+                png.get(type).get(data);
+                crc.reset();
+                crc.update(type);
+                crc.update(data);
+                assertEquals((int) crc.getValue(), png.getInt());
+                types.add(new String(type, "US-ASCII"));
+                chunks.add(data);
+            }
+            assertEquals("[IHDR, acTL, PLTE, tRNS, fcTL, IDAT, fcTL, fdAT, IEND]",
+                    types.toString());
+            assertEquals(2, ByteBuffer.wrap(chunks.get(1)).getInt());
+            assertEquals(4, chunks.get(0)[8]);
+            assertArrayEquals(new byte[]{(byte) 0xff, (byte) 0xff, 0}, chunks.get(3));
+
+            ByteBuffer control = ByteBuffer.wrap(chunks.get(6));
+            assertEquals(1, control.getInt());
+            assertEquals(1, control.getInt());
+            assertEquals(1, control.getInt());
+            assertEquals(1, control.getInt());
+            assertEquals(1, control.getInt());
+            assertEquals(5, control.getShort());
+            assertEquals(12, control.getShort());
+            assertEquals(2, ByteBuffer.wrap(chunks.get(7)).getInt());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void compress_packsTwoPixelsPerByteAfterFilter() throws Exception {
+        ApngWriter writer = new ApngWriter(3, 2, PALETTE, 2, 12);
+        byte[] data = writer.compress(new byte[]{1, 2, 0, 2, 1, 1}, 3, 2);
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        byte[] rows = new byte[6];
+        assertEquals(6, inflater.inflate(rows));
+        assertTrue(inflater.finished());
+        inflater.end();
+        assertArrayEquals(new byte[]{0, 0x12, 0x00, 0, 0x21, 0x10}, rows);
+    }
+}
@@ -0,0 +1,60 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static edu.bloomu.sjh91055.finalproj.Fixtures.frameWithStroke;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for rendering saved projects with BatchRenderer.
+ */
+public class BatchRendererTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void projectsInDirectory_areEachRendered() throws Exception {
+        File root = folder.newFolder("projects");
+        save(new File(root, "a"), 64, 48);
+        save(new File(root, "b"), 0, 0);
+        new File(root, "notes").mkdirs();
+        File output = folder.newFolder("videos");
+
+        List<BatchRenderer.Result> results =
+                new BatchRenderer(4, 2, 64L * 1024 * 1024, 32, 32).render(root, output);
+        assertEquals(2, results.size());
+        assertEquals("a", results.get(0).getName());
+        assertEquals("b", results.get(1).getName());
+        for (BatchRenderer.Result r : results) {
+            assertNull(r.getError());
+            assertEquals(3, r.getFrames());
+            assertTrue(r.getVideo().length() > 0);
+        }
+        assertTrue(new File(output, "a.mp4").isFile());
+    }
+
+    @Test
+    public void projectDirectory_isRenderedItself() throws Exception {
+        File dir = folder.newFolder("project");
+        save(dir, 64, 48);
+
+        List<BatchRenderer.Result> results =
+                new BatchRenderer(4, 1, 1024, 32, 32).render(dir, folder.newFolder("videos"));
+        assertEquals(1, results.size());
+        assertNull(results.get(0).getError());
+    }
+
+    private static void save(File dir, int width, int height) throws Exception {
+        ProjectStorage storage = new ProjectStorage(dir);
+        storage.save(Arrays.asList(frameWithStroke(10), frameWithStroke(20), new Frame()),
+                width, height, null);
+        storage.flush();
+        storage.close();
+    }
+}
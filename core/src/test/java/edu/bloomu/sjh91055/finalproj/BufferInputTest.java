@@ -0,0 +1,39 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for reading buffers with BufferInput.
+ */
+public class BufferInputTest {
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void readLine_splitsLinesAsDataInputStreamDoes() throws Exception {
+        byte[] text = "one\ntwo\r\nthree\rfour".getBytes("ISO-8859-1");
+        BufferInput in = new BufferInput(ByteBuffer.wrap(text));
+        DataInputStream expected = new DataInputStream(new ByteArrayInputStream(text));
+        for (int i = 0; i < 5; i++)
+            assertEquals(expected.readLine(), in.readLine());
+        assertNull(in.readLine());
+    }
+
+    @Test
+    public void readingPastTheEnd_throwsEOFException() throws Exception {
+        BufferInput in = new BufferInput(ByteBuffer.wrap(new byte[]{0, 0, 0, 7, 1}));
+        assertEquals(7, in.readInt());
+        try {
+            in.readShort();
+            fail();
+        } catch (EOFException e) {
+            assertEquals(1, in.remaining());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.jcodec.api.FrameGrab;
+import org.jcodec.common.io.FileChannelWrapper;
+import org.jcodec.common.io.NIOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for reusing encoded video frames with EncodedFrameCache.
+ */
+public class EncodedFrameCacheTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable r) {
+            r.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entries_surviveReopening() throws Exception {
+        File dir = folder.newFolder();
+        EncodedFrameCache cache = new EncodedFrameCache(dir, 1024);
+        cache.put("a", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        assertNull(cache.get("b"));
+
+        EncodedFrameCache reopened = new EncodedFrameCache(dir, 1024);
+        assertEquals(3, reopened.getBytes());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), reopened.get("a"));
+    }
+
+    @Test
+    public void overBudget_evictsLeastRecentlyUsed() throws Exception {
+        EncodedFrameCache cache = new EncodedFrameCache(folder.newFolder(), 250);
+        cache.put("a", ByteBuffer.allocate(100));
+        cache.put("b", ByteBuffer.allocate(100));
+        assertNotNull(cache.get("a"));
+        cache.put("c", ByteBuffer.allocate(100));
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(200, cache.getBytes());
+    }
+
+    @Test
+    public void reexport_onlyEncodesChangedFrames() throws Exception {
+        FrameStore store = new FrameStore(1 << 22);
+        store.setSize(64, 48);
+        for (int i = 0; i < 3; i++) {
+            store.create();
+            store.addStroke(i, Stroke.fromPoints(new float[]{10 * i, 10, 40, 30}, 2,
+                    0xFF000000, 6));
+        }
+        EncodedFrameCache cache = new EncodedFrameCache(folder.newFolder(), 1 << 20);
+        File first = folder.newFile("first.mp4");
+        export(store, first, cache);
+        assertEquals(0, cache.getHits());
+
+        store.addStroke(1, Stroke.fromPoints(new float[]{5, 40, 60, 5}, 2, 0xFFFF0000, 6));
+        File second = folder.newFile("second.mp4");
+        export(store, second, cache);
+        assertEquals(2, cache.getHits());
+
+        FileChannelWrapper in = NIOUtils.readableChannel(second);
+        try {
+            FrameGrab grab = FrameGrab.createFrameGrab(in);
+            for (int i = 0; i < 3; i++)
+                assertNotNull(grab.getNativeFrame());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void export(FrameStore store, File file, EncodedFrameCache cache)
+            throws Exception {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final Exception[] failure = new Exception[1];
+        VideoExporter exporter = new VideoExporter(store, file, 4, new Exporter.Listener() {
+            @Override
+            public void onProgress(int done, int total) {
+            }
+
+            @Override
+            public void onFinished(File file) {
+                finished.countDown();
+            }
+
+            @Override
+            public void onFailed(File file, Exception e) {
+                failure[0] = e;
+                finished.countDown();
+            }
+
+            @Override
+            public void onCancelled(File file) {
+                finished.countDown();
+            }
+        }, DIRECT);
+        exporter.setCache(cache);
+        exporter.start();
+        finished.await();
+        if (failure[0] != null)
+            throw failure[0];
+    }
+}
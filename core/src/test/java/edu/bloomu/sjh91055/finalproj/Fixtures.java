@@ -0,0 +1,26 @@
+package edu.bloomu.sjh91055.finalproj;
+
+/**
+ * Strokes and frames shared by the unit tests that save, journal or render a project.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns a short black stroke that starts at (x, x).
+     */
+    static Stroke stroke(float x) {
+        return Stroke.fromPoints(new float[]{x, x, x + 5, x}, 2, 0xFF000000, 20);
+    }
+
+    /**
+     * Returns a frame holding only stroke(x).
+     */
+    static Frame frameWithStroke(float x) {
+        Frame f = new Frame();
+        f.addStroke(stroke(x));
+        return f;
+    }
+}
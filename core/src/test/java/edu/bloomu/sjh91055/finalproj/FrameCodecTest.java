@@ -0,0 +1,75 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the run-length frame format base images are stored in.
+ */
+public class FrameCodecTest {
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int[] COLORS = {0xFF000000, WHITE, 0xFFFF0000, 0xFF00FF00,
+            0xFF0000FF, 0xFFFFFF00, 0xFF00FFFF, 0xFFFF00FF};
+
+    private static int[] scribble(int width, int height) {
+        Random random = new Random(7);
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, WHITE);
+        for (int y = 0; y < height; y += 1 + random.nextInt(3)) {
+            int x = random.nextInt(width);
+            int end = Math.min(width, x + random.nextInt(40));
+            Arrays.fill(argb, y * width + x, y * width + end, COLORS[random.nextInt(8)]);
+        }
+        return argb;
+    }
+
+    @Test
+    public void paletteImage_roundTripsLosslessly() throws Exception {
+        int[] argb = scribble(120, 90);
+        byte[] data = FrameCodec.encode(argb, 120, 90);
+        assertTrue(FrameCodec.isEncoded(data));
+        assertTrue(data.length < argb.length);
+
+        PixelBuffer buffer = new PixelBuffer(120, 90);
+        buffer.fill(WHITE);
+        FrameCodec.decode(data, buffer, WHITE);
+        assertArrayEquals(argb, buffer.getPixels());
+    }
+
+    @Test
+    public void decode_clipsToTarget() throws Exception {
+        int[] argb = scribble(120, 90);
+        byte[] data = FrameCodec.encode(argb, 120, 90);
+        TiledRaster raster = new TiledRaster(50, 40);
+        FrameCodec.decode(data, raster, WHITE);
+        int[] pixels = new int[50 * 40];
+        raster.read(pixels, 0, 50, 0, 0, 50, 40);
+        for (int y = 0; y < 40; y++)
+            for (int x = 0; x < 50; x++)
+                assertEquals(argb[y * 120 + x], pixels[y * 50 + x]);
+    }
+
+    @Test
+    public void tooManyColors_isNotEncoded() throws Exception {
+        int[] argb = new int[FrameCodec.MAX_COLORS + 1];
+        for (int i = 0; i < argb.length; i++)
+            argb[i] = 0xFF000000 | i;
+        assertNull(FrameCodec.encode(argb, argb.length, 1));
+        assertFalse(FrameCodec.isEncoded(new byte[]{(byte) 0x89, 'P', 'N', 'G'}));
+    }
+
+    @Test
+    public void truncatedData_isRejected() throws Exception {
+        byte[] data = FrameCodec.encode(scribble(60, 60), 60, 60);
+        try {
+            FrameCodec.decode(Arrays.copyOf(data, data.length / 2), new PixelBuffer(60, 60),
+                    WHITE);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the content hashes of frames.
+ */
+public class FrameTest {
+
+    @Test
+    public void copies_haveTheSameHash() throws Exception {
+        Frame f = new Frame();
+        f.addStroke(Stroke.fromPoints(new float[]{10, 10, 50, 40}, 2, 0xFF000000, 20));
+        assertEquals(f.getContentHash(), f.copy().getContentHash());
+        assertNotEquals(f.getContentHash(), new Frame().getContentHash());
+    }
+
+    @Test
+    public void editing_changesTheHash() throws Exception {
+        Frame f = new Frame();
+        long blank = f.getContentHash();
+        f.addStroke(Stroke.fromPoints(new float[]{10, 10, 50, 40}, 2, 0xFF000000, 20));
+        assertNotEquals(blank, f.getContentHash());
+        f.clear();
+        assertEquals(blank, f.getContentHash());
+    }
+
+    @Test
+    public void lazyFrame_hashesLikeTheFrameItWasSavedFrom() throws Exception {
+        Frame f = new Frame();
+        f.addStroke(Stroke.fromPoints(new float[]{1, 2, 3, 4}, 2, 0xFF00FF00, 8));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        f.writeTo(new DataOutputStream(bytes));
+        Frame lazy = Frame.lazy(ByteBuffer.wrap(bytes.toByteArray()));
+        assertEquals(f.getContentHash(), lazy.getContentHash());
+        assertEquals(f.getContentHash(), lazy.copy().getContentHash());
+    }
+}
@@ -0,0 +1,130 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for GifWriter.
+ */
+public class GifWriterTest {
+
+    @Test
+    public void encode_decodesToSamePixels() throws Exception {
+        byte[] pixels = new byte[64 * 64];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = (byte) (i / 100 % 9);
+        assertArrayEquals(pixels, decode(GifWriter.encode(pixels, pixels.length, 4),
+                pixels.length));
+    }
+
+    @Test
+    public void encode_fillingTableStartsOver() throws Exception {
+        //random pixels add a new code for almost every pixel, so the table fills many times
+        Random random = new Random(7);
+        byte[] pixels = new byte[50000];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = (byte) random.nextInt(16);
+        assertArrayEquals(pixels, decode(GifWriter.encode(pixels, pixels.length, 4),
+                pixels.length));
+    }
+
+    @Test
+    public void encode_singlePixel() throws Exception {
+        byte[] pixels = {3};
+        assertArrayEquals(pixels, decode(GifWriter.encode(pixels, 1, 2), 1));
+    }
+
+    @Test
+    public void writer_writesHeaderFramesAndTrailer() throws Exception {
+        File file = File.createTempFile("anim", ".gif");
+        try {
+            int[] palette = {0xff000000, 0xffffffff, 0xffff0000};
+            GifWriter writer = new GifWriter(5, 4, palette, 2, 10);
+            writer.open(file);
+            byte[] full = writer.compress(new byte[20], 5, 4);
+            writer.writeFrame(0, 0, 5, 4, 0, 1, full);
+            writer.writeFrame(1, 2, 1, 1, 1, 3, writer.compress(new byte[]{1}, 1, 1));
+            writer.finish();
+
+            byte[] gif = Files.readAllBytes(file.toPath());
+            assertEquals("GIF89a", new String(gif, 0, 6, "US-ASCII"));
+            assertEquals(5, gif[6]);
+            assertEquals(4, gif[8]);
+            //a table of four colors, the smallest that holds three
+            assertEquals(0x80 | 1 << 4 | 1, gif[10] & 0xff);
+            assertEquals(0x3b, gif[gif.length - 1]);
+
+            int second = 13 + 4 * 3 + 19 + 8 + 10 + full.length;
+            assertEquals(0x21, gif[second]);
+            assertEquals(0xf9, gif[second + 1] & 0xff);
+            assertEquals(30, gif[second + 4] & 0xff);
+            assertEquals(2, gif[second + 6]);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Decodes the image data of a GIF frame.
+     */
+    private static byte[] decode(byte[] data, int count) {
+        int minCodeSize = data[0];
+        ByteArrayOutputStream codes = new ByteArrayOutputStream();
+        int i = 1;
+        while (data[i] != 0) {
+            codes.write(data, i + 1, data[i] & 0xff);
+            i += (data[i] & 0xff) + 1;
+        }
+        assertEquals(data.length - 1, i);
+        byte[] raw = codes.toByteArray();
+
+        int clear = 1 << minCodeSize;
+        ArrayList<byte[]> table = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int codeSize = minCodeSize + 1;
+        byte[] previous = null;
+        long bit = 0;
+        while (true) {
+            int code = 0;
+            for (int b = 0; b < codeSize; b++, bit++)
+                code |= (raw[(int) (bit / 8)] >> (bit % 8) & 1) << b;
+            if (code == clear) {
+                table.clear();
+                for (int c = 0; c < clear + 2; c++)
+                    table.add(new byte[]{(byte) c});
+                codeSize = minCodeSize + 1;
+                previous = null;
+                continue;
+            }
+            if (code == clear + 1)
+                break;
+            byte[] entry;
+            if (code < table.size())
+                entry = table.get(code);
+            else {
+                entry = new byte[previous.length + 1];
+                System.arraycopy(previous, 0, entry, 0, previous.length);
+                entry[previous.length] = previous[0];
+            }
+            out.write(entry, 0, entry.length);
+            if (previous != null && table.size() < 4096) {
+                byte[] added = new byte[previous.length + 1];
+                System.arraycopy(previous, 0, added, 0, previous.length);
+                added[previous.length] = entry[0];
+                table.add(added);
+                if (table.size() == 1 << codeSize && codeSize < 12)
+                    codeSize++;
+            }
+            previous = entry;
+        }
+        assertEquals(count, out.size());
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,197 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static edu.bloomu.sjh91055.finalproj.Fixtures.stroke;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for journaling edits with Journal and replaying them.
+ */
+public class JournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayedEdits_rebuildTheFrames() throws Exception {
+        File dir = folder.newFolder();
+        FrameStore store = new FrameStore(1 << 20);
+        Journal journal = attach(dir, store);
+        store.create();
+        store.addStroke(0, stroke(10));
+        store.duplicate(0);
+        store.addStroke(1, stroke(20));
+        store.create();
+        store.addStroke(2, stroke(30));
+        store.clearFrame(2);
+        store.undo(2); //the stroke comes back
+        store.undo(1); //the second stroke goes
+        journal.flush();
+
+        FrameStore replayed = new FrameStore(1 << 20);
+        assertEquals(9, new Journal(dir).replay(replayed, 0));
+        assertEquals(3, replayed.size());
+        assertEquals(1, replayed.getFrame(0).getStrokes().size());
+        assertEquals(1, replayed.getFrame(1).getStrokes().size());
+        assertEquals(10, replayed.getFrame(1).getStrokes().get(0).getX(0), 0);
+        assertEquals(30, replayed.getFrame(2).getStrokes().get(0).getX(0), 0);
+    }
+
+    @Test
+    public void undoneCreate_removesTheFrame() throws Exception {
+        File dir = folder.newFolder();
+        FrameStore store = new FrameStore(1 << 20);
+        Journal journal = attach(dir, store);
+        store.create();
+        store.create();
+        store.undo(1);
+        journal.flush();
+
+        FrameStore replayed = new FrameStore(1 << 20);
+        new Journal(dir).replay(replayed, 0);
+        assertEquals(1, replayed.size());
+    }
+
+    @Test
+    public void tornRecord_isCutOffAndLaterEditsStillReplay() throws Exception {
+        File dir = folder.newFolder();
+        FrameStore store = new FrameStore(1 << 20);
+        Journal journal = attach(dir, store);
+        store.create();
+        store.addStroke(0, stroke(10));
+        journal.flush();
+        File segment = new File(dir, "journal.1");
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        FrameStore replayed = new FrameStore(1 << 20);
+        Journal reopened = attach(dir, replayed);
+        assertEquals(1, replayed.size());
+        assertTrue(replayed.getFrame(0).getStrokes().isEmpty());
+        replayed.addStroke(0, stroke(20));
+        reopened.flush();
+
+        FrameStore again = new FrameStore(1 << 20);
+        assertEquals(2, new Journal(dir).replay(again, 0));
+        assertEquals(20, again.getFrame(0).getStrokes().get(0).getX(0), 0);
+    }
+
+    @Test
+    public void readOnlyReplay_stopsAtTornRecordWithoutChangingFiles() throws Exception {
+        File dir = folder.newFolder();
+        FrameStore store = new FrameStore(1 << 20);
+        Journal journal = attach(dir, store);
+        store.create();
+        store.create();
+        journal.checkpoint();
+        store.addStroke(0, stroke(10));
+        journal.close();
+        File segment = new File(dir, "journal.1");
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        long length = segment.length();
+
+        FrameStore replayed = new FrameStore(1 << 20);
+        assertEquals(1, Journal.replayReadOnly(dir, replayed, 0));
+        assertEquals(1, replayed.size());
+        assertEquals(length, segment.length());
+        assertTrue(new File(dir, "journal.3").isFile());
+    }
+
+    @Test
+    public void editsInSavedProject_areNotReplayedAgain() throws Exception {
+        File dir = folder.newFolder();
+        ProjectStorage storage = new ProjectStorage(dir);
+        FrameStore store = new FrameStore(1 << 20);
+        Journal journal = attach(dir, store);
+        store.create();
+        store.addStroke(0, stroke(10));
+        long checkpoint = journal.checkpoint();
+        storage.save(store.getFrames(), 320, 240, checkpoint, null);
+        storage.flush();
+        store.addStroke(0, stroke(20));
+        journal.flush();
+        //the app dies before the old segment is discarded
+
+        ProjectStorage reopened = new ProjectStorage(dir);
+        FrameStore loaded = new FrameStore(1 << 20);
+        for (Frame f : reopened.load())
+            loaded.add(f);
+        assertEquals(2, reopened.getCheckpoint());
+        assertEquals(1, new Journal(dir).replay(loaded, reopened.getCheckpoint()));
+        assertEquals(1, loaded.size());
+        assertEquals(2, loaded.getFrame(0).getStrokes().size());
+    }
+
+    @Test
+    public void discard_deletesSegmentsUpToTheCheckpoint() throws Exception {
+        File dir = folder.newFolder();
+        FrameStore store = new FrameStore(1 << 20);
+        Journal journal = attach(dir, store);
+        store.create();
+        long checkpoint = journal.checkpoint();
+        store.addStroke(0, stroke(10));
+        journal.discard(checkpoint);
+        journal.flush();
+        assertFalse(new File(dir, "journal.1").exists());
+        assertTrue(new File(dir, "journal.2").exists());
+    }
+
+    @Test
+    public void resizing_isReplayed() throws Exception {
+        File dir = folder.newFolder();
+        FrameStore store = new FrameStore(1 << 20);
+        store.setSize(320, 240);
+        Journal journal = attach(dir, store);
+        store.clear();
+        store.setSize(0, 0);
+        store.setSize(640, 480);
+        store.create();
+        store.setSize(640, 480); //unchanged, so not journaled
+        journal.flush();
+
+        FrameStore replayed = new FrameStore(1 << 20);
+        replayed.setSize(320, 240);
+        assertEquals(4, new Journal(dir).replay(replayed, 0));
+        assertEquals(640, replayed.getWidth());
+        assertEquals(480, replayed.getHeight());
+        assertEquals(1, replayed.size());
+    }
+
+    @Test
+    public void close_writesPendingEditsFirst() throws Exception {
+        File dir = folder.newFolder();
+        FrameStore store = new FrameStore(1 << 20);
+        Journal journal = attach(dir, store);
+        store.create();
+        store.addStroke(0, stroke(10));
+        journal.close();
+        journal.discard(1); //too late, so ignored
+        store.close();
+
+        //close only waits a moment, so a slow disk may still be writing
+        long deadline = System.currentTimeMillis() + 5000;
+        int applied;
+        while ((applied = Journal.replayReadOnly(dir, new FrameStore(1 << 20), 0)) < 2
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(2, applied);
+    }
+
+    /**
+     * Replays a project's journal onto an empty store, then journals the store's edits.
+     */
+    private static Journal attach(File dir, FrameStore store) throws Exception {
+        Journal journal = new Journal(dir);
+        journal.replay(store, 0);
+        store.setJournal(journal);
+        return journal;
+    }
+}
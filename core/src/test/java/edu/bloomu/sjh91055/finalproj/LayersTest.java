@@ -0,0 +1,160 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the layers of frames and the background shared by every frame.
+ */
+public class LayersTest {
+    private static final int RED = 0xFFFF0000;
+    private static final int BLACK = 0xFF000000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void layeredFrame_survivesWritingAndReading() throws Exception {
+        Frame f = new Frame();
+        f.addStroke(0, stroke(10, BLACK));
+        f.addStroke(2, stroke(20, RED));
+        f.addStroke(0, stroke(30, BLACK));
+        assertEquals(3, f.getLayerCount());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        f.writeTo(new DataOutputStream(bytes));
+
+        Frame read = Frame.readFrom(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        Frame lazy = Frame.lazy(ByteBuffer.wrap(bytes.toByteArray()));
+        for (Frame g : new Frame[]{read, lazy}) {
+            assertArrayEquals(new int[]{2, 0, 1}, g.getLayerSizes());
+            assertEquals(30, g.getStrokes().get(1).getY(0), 0);
+            assertEquals(f.getContentHash(), g.getContentHash());
+        }
+    }
+
+    @Test
+    public void strokeOnLowerLayer_isDrawnBeneath() throws Exception {
+        FrameStore store = new FrameStore(1 << 22);
+        store.setSize(64, 64);
+        store.create();
+        store.addStroke(0, 1, stroke(10, RED));
+        store.getRaster(0); //cached, so the stroke below is drawn into it
+        store.addStroke(0, 0, stroke(10, BLACK));
+        assertEquals(RED, pixel(store.getRaster(0), 30, 10));
+
+        store.create();
+        store.addStroke(1, 1, stroke(10, RED));
+        store.addStroke(1, 0, stroke(10, BLACK));
+        assertEquals(RED, pixel(store.getRaster(1), 30, 10));
+
+        store.undo(1);
+        assertEquals(1, store.getFrame(1).getStrokes().size());
+        assertEquals(RED, store.getFrame(1).getStrokes().get(0).getColor());
+    }
+
+    @Test
+    public void background_isSharedByEveryFrame() throws Exception {
+        FrameStore store = new FrameStore(1 << 22);
+        store.setSize(128, 128);
+        store.create();
+        store.create();
+        store.addStroke(FrameStore.BACKGROUND, 0, stroke(10, RED));
+        store.addStroke(1, stroke(100, BLACK));
+        TiledRaster a = store.getRaster(0);
+        TiledRaster b = store.getRaster(1);
+        assertEquals(RED, pixel(a, 30, 10));
+        assertEquals(RED, pixel(b, 30, 10));
+        assertEquals(BLACK, pixel(b, 30, 100));
+        assertSame(a.getTile(0, 0), b.getTile(0, 0));
+        assertNotSame(Tile.BLANK, a.getTile(0, 0));
+
+        int generation = store.getBackgroundGeneration();
+        store.undo(FrameStore.BACKGROUND);
+        assertNotEquals(generation, store.getBackgroundGeneration());
+        assertEquals(TiledRaster.BACKGROUND_COLOR, pixel(store.getRaster(0), 30, 10));
+    }
+
+    @Test
+    public void snapshotRaster_isDrawnOverTheSnapshottedBackground() throws Exception {
+        FrameStore store = new FrameStore(1 << 22);
+        store.setSize(128, 128);
+        store.create();
+        store.addStroke(FrameStore.BACKGROUND, 0, stroke(10, RED));
+        Frame frame = store.getFrame(0);
+        Frame snapshot = frame.copy();
+        Frame background = store.getBackground().copy();
+        int generation = store.getBackgroundGeneration();
+
+        store.addStroke(FrameStore.BACKGROUND, 0, stroke(100, BLACK));
+        TiledRaster now = store.getSnapshotRaster(frame, snapshot, frame.getVersion());
+        TiledRaster then = store.getSnapshotRaster(frame, snapshot, frame.getVersion(),
+                background, generation);
+        assertEquals(BLACK, pixel(now, 30, 100));
+        assertEquals(RED, pixel(then, 30, 10));
+        assertEquals(TiledRaster.BACKGROUND_COLOR, pixel(then, 30, 100));
+        now.release();
+        then.release();
+    }
+
+    @Test
+    public void background_isSavedWithTheProject() throws Exception {
+        File dir = folder.newFolder();
+        Frame background = new Frame();
+        background.addStroke(stroke(10, RED));
+        Frame f = new Frame();
+        f.addStroke(1, stroke(20, BLACK));
+        ProjectStorage storage = new ProjectStorage(dir);
+        storage.save(Arrays.asList(f), background, 320, 240, 0, null);
+        storage.flush();
+
+        ProjectStorage reopened = new ProjectStorage(dir);
+        assertArrayEquals(new int[]{0, 1}, reopened.load().get(0).getLayerSizes());
+        assertEquals(RED, reopened.getBackground().getStrokes().get(0).getColor());
+
+        storage.save(Arrays.asList(f), 320, 240, null);
+        storage.flush();
+        reopened = new ProjectStorage(dir);
+        reopened.load();
+        assertNull(reopened.getBackground());
+    }
+
+    @Test
+    public void replayedEdits_rebuildLayersAndBackground() throws Exception {
+        File dir = folder.newFolder();
+        FrameStore store = new FrameStore(1 << 20);
+        Journal journal = new Journal(dir);
+        journal.replay(store, 0);
+        store.setJournal(journal);
+        store.create();
+        store.addStroke(0, 2, stroke(10, RED));
+        store.addStroke(FrameStore.BACKGROUND, 0, stroke(20, BLACK));
+        journal.flush();
+
+        FrameStore replayed = new FrameStore(1 << 20);
+        assertEquals(3, new Journal(dir).replay(replayed, 0));
+        assertArrayEquals(new int[]{0, 0, 1}, replayed.getFrame(0).getLayerSizes());
+        assertEquals(1, replayed.getBackground().getStrokes().size());
+    }
+
+    private static Stroke stroke(float y, int color) {
+        return Stroke.fromPoints(new float[]{10, y, 50, y}, 2, color, 8);
+    }
+
+    private static int pixel(TiledRaster raster, int x, int y) {
+        int[] p = new int[1];
+        raster.read(p, 0, 1, x, y, 1, 1);
+        return p[0];
+    }
+}
@@ -0,0 +1,72 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the histograms and report of Metrics.
+ */
+public class MetricsTest {
+
+    @Test
+    public void histogram_tracksCountMeanAndMax() throws Exception {
+        Metrics.Histogram h = new Metrics().draw;
+        h.record(1000000);
+        h.record(3000000);
+        assertEquals(2, h.getCount());
+        assertEquals(2000000, h.getMean());
+        assertEquals(3000000, h.getMax());
+        assertEquals(3000000, h.getLast());
+    }
+
+    @Test
+    public void percentile_isBoundOfItsBucket() throws Exception {
+        Metrics.Histogram h = new Metrics().draw;
+        for (int i = 0; i < 95; i++)
+            h.record(1500000); //1.5 ms, under 2048 us
+        for (int i = 0; i < 5; i++)
+            h.record(100000000);
+        assertEquals(2048000, h.getPercentile(0.5));
+        assertEquals(2048000, h.getPercentile(0.95));
+        assertEquals(100000000, h.getPercentile(0.99));
+    }
+
+    @Test
+    public void recordedRun_countsEveryItem() throws Exception {
+        Metrics.Histogram h = new Metrics().exportFrame;
+        h.record(400000000, 4);
+        h.record(100000000, 1);
+        assertEquals(5, h.getCount());
+        assertEquals(100000000, h.getMean());
+        assertEquals(10, h.getRate(), 1e-9);
+    }
+
+    @Test
+    public void reset_clearsHistogramsAndCounters() throws Exception {
+        Metrics m = new Metrics();
+        m.draw.record(1000);
+        m.droppedFrames.add(3);
+        m.rasterBytes.set(42);
+        m.reset();
+        assertEquals(0, m.draw.getCount());
+        assertEquals(0, m.draw.getPercentile(0.5));
+        assertEquals(0, m.droppedFrames.get());
+        assertEquals(42, m.rasterBytes.get());
+    }
+
+    @Test
+    public void writeTo_includesReportAndBuckets() throws Exception {
+        Metrics m = new Metrics();
+        m.saveFrame.record(5000000);
+        m.stalledFrames.add(2);
+        StringWriter out = new StringWriter();
+        m.writeTo(out);
+        String dump = out.toString();
+        assertTrue(dump.contains("save frame: 1, mean 5.00"));
+        assertTrue(dump.contains("playback stalled: 2"));
+        assertTrue(dump.contains("save frame buckets (us): <8192=1"));
+    }
+}
@@ -0,0 +1,44 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the online thinning of touch samples.
+ */
+public class PointDecimatorTest {
+
+    private static PointDecimator decimator() {
+        PointDecimator d = new PointDecimator(2, 48, Math.toRadians(3));
+        d.start(0, 0);
+        return d;
+    }
+
+    @Test
+    public void closeSample_isDropped() throws Exception {
+        PointDecimator d = decimator();
+        assertEquals(PointDecimator.DROP, d.accept(1, 1, true));
+        assertEquals(PointDecimator.KEEP, d.accept(5, 0, true));
+    }
+
+    @Test
+    public void straightRun_replacesLastPoint() throws Exception {
+        PointDecimator d = decimator();
+        assertEquals(PointDecimator.KEEP, d.accept(10, 0, true));
+        assertEquals(PointDecimator.REPLACE, d.accept(20, 0, true));
+        assertEquals(0, d.getPreviousX(), 0);
+        assertEquals(PointDecimator.REPLACE, d.accept(30, 0.5f, true));
+        assertEquals(PointDecimator.KEEP, d.accept(40, 0.5f, false));
+    }
+
+    @Test
+    public void turnOrLongRun_keepsPoint() throws Exception {
+        PointDecimator d = decimator();
+        d.accept(10, 0, true);
+        assertEquals(PointDecimator.KEEP, d.accept(20, 5, true));
+        d = decimator();
+        d.accept(40, 0, true);
+        assertEquals(PointDecimator.KEEP, d.accept(60, 0, true));
+    }
+}
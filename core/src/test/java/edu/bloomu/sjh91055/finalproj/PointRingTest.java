@@ -0,0 +1,37 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ring buffer touch samples are queued in.
+ */
+public class PointRingTest {
+
+    @Test
+    public void fullRing_refusesPoints() throws Exception {
+        PointRing ring = new PointRing(2);
+        assertTrue(ring.offer(1, 2));
+        assertTrue(ring.offer(3, 4));
+        assertFalse(ring.offer(5, 6));
+        assertEquals(2, ring.size());
+        assertEquals(3, ring.getX(1), 0);
+        assertEquals(4, ring.getY(1), 0);
+    }
+
+    @Test
+    public void clearedRing_keepsOrder() throws Exception {
+        PointRing ring = new PointRing(3);
+        ring.offer(1, 1);
+        ring.offer(2, 2);
+        ring.clear();
+        assertTrue(ring.isEmpty());
+        for (int i = 0; i < 3; i++)
+            ring.offer(i, -i);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, ring.getX(i), 0);
+            assertEquals(-i, ring.getY(i), 0);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static edu.bloomu.sjh91055.finalproj.Fixtures.frameWithStroke;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for saving and loading projects with ProjectStorage.
+ */
+public class ProjectStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void savedProject_loadsTheSameFrames() throws Exception {
+        File dir = folder.newFolder();
+        Frame a = frameWithStroke(10);
+        Frame b = frameWithStroke(20);
+        ProjectStorage storage = new ProjectStorage(dir);
+        storage.save(Arrays.asList(a, b, new Frame()), 320, 240, null);
+        storage.flush();
+
+        ProjectStorage reopened = new ProjectStorage(dir);
+        assertTrue(reopened.exists());
+        List<Frame> frames = reopened.load();
+        assertEquals(3, frames.size());
+        assertEquals(320, reopened.getWidth());
+        assertEquals(240, reopened.getHeight());
+        assertEquals(10, frames.get(0).getStrokes().get(0).getX(0), 0);
+        assertEquals(20, frames.get(1).getStrokes().get(0).getX(0), 0);
+        assertTrue(frames.get(2).getStrokes().isEmpty());
+    }
+
+    @Test
+    public void unchangedFrames_areNotWrittenAgain() throws Exception {
+        File dir = folder.newFolder();
+        Frame a = frameWithStroke(10);
+        Frame b = frameWithStroke(20);
+        ProjectStorage storage = new ProjectStorage(dir);
+        storage.save(Arrays.asList(a, b), 320, 240, null);
+        storage.flush();
+        long length = new File(dir, "frames.0").length();
+
+        storage.save(Arrays.asList(a, b), 320, 240, null);
+        storage.flush();
+        assertEquals(length, new File(dir, "frames.0").length());
+
+        b.addStroke(Stroke.fromPoints(new float[]{30, 30, 40, 40}, 2, 0xFF000000, 20));
+        storage.save(Arrays.asList(a, b), 320, 240, null);
+        storage.flush();
+        assertTrue(new File(dir, "frames.0").length() > length);
+
+        List<Frame> frames = new ProjectStorage(dir).load();
+        assertEquals(2, frames.get(1).getStrokes().size());
+    }
+
+    @Test
+    public void loadedFrames_surviveAnotherSave() throws Exception {
+        File dir = folder.newFolder();
+        ProjectStorage storage = new ProjectStorage(dir);
+        storage.save(Arrays.asList(frameWithStroke(10), frameWithStroke(20)), 320, 240, null);
+        storage.flush();
+
+        ProjectStorage reopened = new ProjectStorage(dir);
+        List<Frame> frames = reopened.load();
+        frames.get(0).addStroke(Stroke.fromPoints(new float[]{1, 1, 2, 2}, 2, 0xFF000000, 20));
+        reopened.save(frames, 320, 240, null);
+        reopened.flush();
+
+        frames = new ProjectStorage(dir).load();
+        assertEquals(2, frames.get(0).getStrokes().size());
+        assertEquals(20, frames.get(1).getStrokes().get(0).getX(0), 0);
+    }
+
+    @Test
+    public void sharedStorage_keepsSavesInOrderAcrossOpeners() throws Exception {
+        File dir = folder.newFolder();
+        ProjectStorage first = ProjectStorage.open(dir);
+        List<Frame> frames = Arrays.asList(bigFrame(0), bigFrame(1), bigFrame(2),
+                bigFrame(3));
+        first.save(frames, 320, 240, null);
+        for (int i = 0; i < 3; i++)
+            frames.get(i).addStroke(bigStroke(10));
+        first.save(frames, 320, 240, null); //compacts, unless it is loaded first
+
+        ProjectStorage second = ProjectStorage.open(new File(dir.getPath()));
+        assertSame(first, second);
+        List<Frame> loaded = second.load();
+        loaded.get(0).addStroke(bigStroke(20));
+        second.save(loaded, 320, 240, null);
+        second.flush();
+
+        loaded = new ProjectStorage(dir).load();
+        assertEquals(3, loaded.get(0).getStrokes().size());
+        for (int i = 1; i < 3; i++)
+            assertEquals(2, loaded.get(i).getStrokes().size());
+        assertEquals(1, loaded.get(3).getStrokes().size());
+        assertEquals(3, loaded.get(3).getStrokes().get(0).getX(0), 0);
+        assertTrue(new File(dir, "frames.1").isFile());
+    }
+
+    @Test
+    public void corruptRecord_loadsAsBlankFrame() throws Exception {
+        Frame f = Frame.lazy(ByteBuffer.wrap(new byte[]{-1, -1, -1, -1, 0, 0, 0, 5}));
+        assertTrue(f.getStrokes().isEmpty());
+        assertNull(f.getBase());
+    }
+
+    @Test
+    public void corruptLengths_areCheckedBeforeAllocating() throws Exception {
+        byte[][] records = {
+                {0x7f, -1, -1, -1, 0, 0, 0, 0}, //a 2 GB base image
+                {-1, -1, -1, -1, 0x7f, -1, -1, -1}, //2 billion strokes
+                {-1, -1, -1, -1, -128, 0, 0, 1}, //2 billion layers
+                {-1, -1, -1, -1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0x7f, -1, -1, -1}};
+        for (byte[] record : records) {
+            Frame f = Frame.lazy(ByteBuffer.wrap(record));
+            assertTrue(f.getStrokes().isEmpty());
+            assertNull(f.getBase());
+        }
+    }
+
+    /**
+     * Returns a stroke of a few thousand points, so a handful of them fill enough of the
+     * data file for saves to compact it.
+     */
+    private static Stroke bigStroke(float x) {
+        float[] points = new float[2 * 5000];
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = x;
+            points[i + 1] = i % 480;
+        }
+        return Stroke.fromPoints(points, 5000, 0xFF000000, 4);
+    }
+
+    private static Frame bigFrame(float x) {
+        Frame f = new Frame();
+        f.addStroke(bigStroke(x));
+        return f;
+    }
+}
@@ -0,0 +1,61 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for scaling rasters with Resampler.
+ */
+public class ResamplerTest {
+
+    @Test
+    public void flatColor_staysExactAtAnySize() throws Exception {
+        TiledRaster src = new TiledRaster(100, 60);
+        for (int y = 0; y < 60; y++)
+            src.fillSpan(y, 0, 100, 0xFF3366CC);
+        for (int[] size : new int[][]{{50, 30}, {37, 101}, {240, 144}}) {
+            TiledRaster dst = new TiledRaster(size[0], size[1]);
+            new Resampler(100, 60, size[0], size[1]).resample(src, dst);
+            int[] pixels = new int[size[0] * size[1]];
+            dst.read(pixels, 0, size[0], 0, 0, size[0], size[1]);
+            for (int p : pixels)
+                assertEquals(0xFF3366CC, p);
+        }
+    }
+
+    @Test
+    public void halving_averagesFineDetail() throws Exception {
+        TiledRaster src = new TiledRaster(64, 64);
+        for (int y = 0; y < 64; y++)
+            for (int x = y % 2; x < 64; x += 2)
+                src.fillSpan(y, x, x + 1, 0xFF000000);
+        TiledRaster dst = new TiledRaster(32, 32);
+        new Resampler(64, 64, 32, 32).resample(src, dst);
+        int[] pixels = new int[32 * 32];
+        dst.read(pixels, 0, 32, 0, 0, 32, 32);
+        int center = pixels[16 * 32 + 16] & 0xff;
+        assertTrue("was " + center, Math.abs(center - 128) <= 4);
+    }
+
+    @Test
+    public void edge_staysWhereItWas() throws Exception {
+        TiledRaster src = new TiledRaster(80, 8);
+        for (int y = 0; y < 8; y++)
+            src.fillSpan(y, 0, 40, 0xFF000000);
+        TiledRaster dst = new TiledRaster(160, 16);
+        new Resampler(80, 8, 160, 16).resample(src, dst);
+        int[] row = new int[160];
+        dst.read(row, 0, 160, 0, 8, 160, 1);
+        assertEquals(0, row[70] & 0xff);
+        assertEquals(255, row[90] & 0xff);
+        assertTrue((row[79] & 0xff) < 128 && (row[80] & 0xff) > 128);
+    }
+
+    @Test
+    public void evenSize_keepsShapeWithEvenSides() throws Exception {
+        assertArrayEquals(new int[]{720, 1280}, Resampler.evenSize(1080, 1920, 720));
+        assertArrayEquals(new int[]{480, 852}, Resampler.evenSize(1081, 1921, 480));
+        assertArrayEquals(new int[]{1080, 1920}, Resampler.evenSize(1081, 1921, 0));
+    }
+}
@@ -0,0 +1,75 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the stroke model and StrokeRasterizer, which run on the development
+ * machine since neither depends on Android.
+ */
+public class StrokeRasterizerTest {
+    private static final int INK = 0xFFFF0000;
+
+    @Test
+    public void horizontalStroke_coversItsWidth() throws Exception {
+        PixelBuffer buffer = new PixelBuffer(40, 20);
+        Stroke s = Stroke.fromPoints(new float[]{10, 10, 30, 10}, 2, INK, 6);
+        StrokeRasterizer.draw(s, buffer);
+
+        assertEquals(INK, pixel(buffer, 20, 10));
+        assertEquals(INK, pixel(buffer, 20, 7));
+        assertEquals(INK, pixel(buffer, 20, 12));
+        assertEquals(0, pixel(buffer, 20, 4));
+        assertEquals(0, pixel(buffer, 20, 14));
+        //round caps reach past the end points
+        assertEquals(INK, pixel(buffer, 8, 10));
+        assertEquals(INK, pixel(buffer, 31, 10));
+        assertEquals(0, pixel(buffer, 35, 10));
+    }
+
+    @Test
+    public void strokeOutsideBuffer_isClipped() throws Exception {
+        PixelBuffer buffer = new PixelBuffer(10, 10);
+        Stroke s = Stroke.fromPoints(new float[]{-20, -5, 30, 15}, 2, INK, 8);
+        StrokeRasterizer.draw(s, buffer);
+        assertEquals(INK, pixel(buffer, 5, 5));
+    }
+
+    @Test
+    public void bounds_containEveryInkedPixel() throws Exception {
+        PixelBuffer buffer = new PixelBuffer(100, 100);
+        Stroke s = Stroke.fromPoints(new float[]{20, 30, 60, 70, 80, 25}, 3, INK, 20);
+        StrokeRasterizer.draw(s, buffer);
+        int[] bounds = new int[4];
+        s.getBounds(bounds);
+        for (int y = 0; y < 100; y++)
+            for (int x = 0; x < 100; x++)
+                if (pixel(buffer, x, y) == INK)
+                    assertTrue(x >= bounds[0] && x < bounds[2] && y >= bounds[1] && y < bounds[3]);
+    }
+
+    @Test
+    public void frame_roundTripsThroughBytes() throws Exception {
+        Frame f = new Frame();
+        f.addStroke(Stroke.fromPoints(new float[]{1.25f, 2.5f, 3, 4}, 2, INK, 20));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        f.writeTo(new DataOutputStream(out));
+        Frame g = Frame.readFrom(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+
+        assertEquals(1, g.getStrokes().size());
+        Stroke s = g.getStrokes().get(0);
+        assertEquals(INK, s.getColor());
+        assertEquals(1.25f, s.getX(0), 0);
+        assertEquals(4f, s.getY(1), 0);
+    }
+
+    private static int pixel(PixelBuffer b, int x, int y) {
+        return b.getPixels()[y * b.getWidth() + x];
+    }
+}
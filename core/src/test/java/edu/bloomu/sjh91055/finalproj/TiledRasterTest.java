@@ -0,0 +1,118 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the copy-on-write tile sharing of TiledRaster.
+ */
+public class TiledRasterTest {
+    private static final int INK = 0xFF0000FF;
+
+    @Test
+    public void newRaster_isAllBlank() throws Exception {
+        TiledRaster r = new TiledRaster(200, 100);
+        assertEquals(4, r.getColumns());
+        assertEquals(2, r.getRows());
+        assertEquals(0, r.getByteCount());
+        assertSame(Tile.BLANK, r.getTile(3, 1));
+    }
+
+    @Test
+    public void copy_sharesTilesUntilDrawnOn() throws Exception {
+        TiledRaster a = new TiledRaster(200, 100);
+        a.fillSpan(10, 0, 100, INK);
+        TiledRaster b = a.copy();
+        assertSame(a.getTile(0, 0), b.getTile(0, 0));
+
+        b.fillSpan(20, 5, 10, INK);
+        assertNotSame(a.getTile(0, 0), b.getTile(0, 0));
+        assertSame(a.getTile(1, 0), b.getTile(1, 0));
+        assertEquals(0xFFFFFFFF, pixel(a, 5, 20));
+        assertEquals(INK, pixel(b, 5, 20));
+    }
+
+    @Test
+    public void spanThatChangesNothing_keepsSharing() throws Exception {
+        TiledRaster a = new TiledRaster(64, 64);
+        a.fillSpan(0, 0, 64, TiledRaster.BACKGROUND_COLOR);
+        assertSame(Tile.BLANK, a.getTile(0, 0));
+    }
+
+    @Test
+    public void clearAndCompact_returnToBlank() throws Exception {
+        TiledRaster a = new TiledRaster(128, 64);
+        a.fillSpan(3, 0, 128, INK);
+        a.fillSpan(3, 64, 128, TiledRaster.BACKGROUND_COLOR);
+        a.compact();
+        assertNotSame(Tile.BLANK, a.getTile(0, 0));
+        assertSame(Tile.BLANK, a.getTile(1, 0));
+        a.clear();
+        assertSame(Tile.BLANK, a.getTile(0, 0));
+    }
+
+    @Test
+    public void writeThenRead_roundTrips() throws Exception {
+        TiledRaster a = new TiledRaster(100, 70);
+        int[] src = new int[90 * 60];
+        for (int i = 0; i < src.length; i++)
+            src[i] = 0xFF000000 | i;
+        a.write(src, 0, 90, 5, 7, 90, 60);
+        int[] dst = new int[90 * 60];
+        a.read(dst, 0, 90, 5, 7, 90, 60);
+        assertArrayEquals(src, dst);
+    }
+
+    @Test
+    public void pack_keepsPixelsInAnEighthOfTheMemory() throws Exception {
+        TiledRaster a = new TiledRaster(64, 64);
+        a.fillSpan(5, 3, 60, INK);
+        a.fillSpan(6, 0, 7, 0xFF000000);
+        int[] before = new int[64 * 64];
+        a.read(before, 0, 64, 0, 0, 64, 64);
+        a.pack();
+        assertTrue(a.getTile(0, 0).isPacked());
+        assertTrue(a.getByteCount() <= Tile.BYTES / 8 + 64);
+        int[] after = new int[64 * 64];
+        a.read(after, 0, 64, 0, 0, 64, 64);
+        assertArrayEquals(before, after);
+
+        a.fillSpan(7, 0, 1, INK);
+        assertFalse(a.getTile(0, 0).isPacked());
+        assertEquals(INK, pixel(a, 0, 7));
+        assertEquals(0xFF000000, pixel(a, 6, 6));
+    }
+
+    @Test
+    public void tileWithManyColors_staysUnpacked() throws Exception {
+        TiledRaster a = new TiledRaster(64, 64);
+        for (int x = 0; x < Tile.PACKED_COLORS + 1; x++)
+            a.fillSpan(0, x, x + 1, 0xFF000000 | x);
+        a.pack();
+        assertFalse(a.getTile(0, 0).isPacked());
+    }
+
+    @Test
+    public void downscale_averagesBlocks() throws Exception {
+        TiledRaster a = new TiledRaster(130, 70);
+        //the top left 4x4 block is a quarter ink, across a tile edge the next is all ink
+        a.fillSpan(0, 0, 2, INK);
+        a.fillSpan(1, 0, 2, INK);
+        for (int y = 0; y < 4; y++)
+            a.fillSpan(y, 60, 68, INK);
+        int[] small = new int[32 * 17];
+        a.downscale(2, small);
+        assertEquals(0xFFBFBFFF, small[0]);
+        assertEquals(INK, small[15]);
+        assertEquals(INK, small[16]);
+        assertEquals(TiledRaster.BACKGROUND_COLOR, small[17]);
+        assertEquals(TiledRaster.BACKGROUND_COLOR, small[small.length - 1]);
+    }
+
+    private static int pixel(TiledRaster r, int x, int y) {
+        int[] p = new int[1];
+        r.read(p, 0, 1, x, y, 1, 1);
+        return p[0];
+    }
+}
@@ -0,0 +1,122 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for undo and redo through the FrameStore, and for the tile deltas they
+ * restore.
+ */
+public class UndoHistoryTest {
+    private static final int INK = 0xFF0000FF;
+
+    private static Stroke stroke(float y) {
+        return Stroke.fromPoints(new float[]{10, y, 100, y}, 2, INK, 10);
+    }
+
+    private static int pixel(TiledRaster r, int x, int y) {
+        int[] p = new int[1];
+        r.read(p, 0, 1, x, y, 1, 1);
+        return p[0];
+    }
+
+    @Test
+    public void undoStroke_restoresTilesAndRedoDrawsAgain() throws Exception {
+        FrameStore store = new FrameStore(1 << 24);
+        store.setSize(200, 200);
+        int index = store.create();
+        store.setCurrent(index);
+        store.addStroke(index, stroke(20));
+        store.addStroke(index, stroke(150));
+
+        assertTrue(store.undo(index));
+        TiledRaster raster = store.getRaster(index);
+        assertEquals(1, store.getFrame(index).getStrokes().size());
+        assertEquals(INK, pixel(raster, 50, 20));
+        assertEquals(TiledRaster.BACKGROUND_COLOR, pixel(raster, 50, 150));
+
+        assertTrue(store.redo(index));
+        assertEquals(INK, pixel(store.getRaster(index), 50, 150));
+        assertFalse(store.redo(index));
+    }
+
+    @Test
+    public void undoClear_bringsStrokesBack() throws Exception {
+        FrameStore store = new FrameStore(1 << 24);
+        store.setSize(200, 200);
+        int index = store.create();
+        store.setCurrent(index);
+        store.addStroke(index, stroke(20));
+        store.clearFrame(index);
+        assertEquals(TiledRaster.BACKGROUND_COLOR, pixel(store.getRaster(index), 50, 20));
+
+        assertTrue(store.undo(index));
+        assertEquals(INK, pixel(store.getRaster(index), 50, 20));
+    }
+
+    @Test
+    public void undoCreate_removesFrameButNotTheLast() throws Exception {
+        FrameStore store = new FrameStore(1 << 24);
+        int first = store.create();
+        int copy = store.duplicate(first);
+        assertTrue(store.undo(copy));
+        assertEquals(1, store.size());
+        assertFalse(store.undo(first));
+    }
+
+    @Test
+    public void compressedDelta_restoresSamePixels() throws Exception {
+        TiledRaster raster = new TiledRaster(200, 100);
+        StrokeRasterizer.draw(stroke(30), raster);
+        TileDelta delta = TileDelta.capture(raster, 0, 0, 200, 100);
+        StrokeRasterizer.draw(stroke(60), raster);
+        long before = delta.getByteCount();
+        delta.compress();
+        assertTrue(delta.getByteCount() < before);
+
+        assertTrue(delta.restore(raster));
+        assertEquals(INK, pixel(raster, 50, 30));
+        assertEquals(TiledRaster.BACKGROUND_COLOR, pixel(raster, 50, 60));
+        assertFalse(delta.restore(raster));
+    }
+
+    @Test
+    public void overBudget_forgetsOldestEdits() throws Exception {
+        long budget = Tile.BYTES * 2 + 64;
+        UndoHistory history = new UndoHistory(budget);
+        Frame frame = new Frame();
+        TiledRaster raster = new TiledRaster(Tile.SIZE, Tile.SIZE);
+        for (int i = 0; i < 4; i++) {
+            StrokeRasterizer.draw(stroke(5 + 10 * i), raster);
+            history.record(UndoHistory.Edit.stroke(frame, stroke(0)),
+                    TileDelta.capture(raster, 0, 0, Tile.SIZE, Tile.SIZE));
+            assertTrue(history.getByteCount() <= budget);
+        }
+        int undone = 0;
+        while (history.undo(frame) != null)
+            undone++;
+        assertTrue(undone >= 2);
+    }
+
+    @Test
+    public void byteCount_followsCompressionAndForgetting() throws Exception {
+        UndoHistory history = new UndoHistory(Long.MAX_VALUE);
+        Frame frame = new Frame();
+        TiledRaster raster = new TiledRaster(Tile.SIZE, Tile.SIZE);
+        StrokeRasterizer.draw(stroke(5), raster);
+        UndoHistory.Edit edit = UndoHistory.Edit.stroke(frame, stroke(0));
+        history.record(edit, TileDelta.capture(raster, 0, 0, Tile.SIZE, Tile.SIZE));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (history.getByteCount() >= Tile.BYTES && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(history.getByteCount() < Tile.BYTES);
+
+        history.undo(frame);
+        assertNotNull(history.takeDelta(edit));
+        assertEquals(0, history.getByteCount());
+        history.forget(frame);
+        assertEquals(0, history.getByteCount());
+        history.close();
+    }
+}
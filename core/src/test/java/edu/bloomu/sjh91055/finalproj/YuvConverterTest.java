@@ -0,0 +1,50 @@
+package edu.bloomu.sjh91055.finalproj;
+
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.scale.RgbToYuv420j;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the parallel conversion of rasters to YUV pictures.
+ */
+public class YuvConverterTest {
+
+    @Test
+    public void convert_matchesJCodecTransform() throws Exception {
+        int w = 150, h = 98;
+        TiledRaster raster = new TiledRaster(w + 1, h + 1);
+        int[] pixels = new int[(w + 1) * (h + 1)];
+        Random random = new Random(1);
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        raster.write(pixels, 0, w + 1, 0, 0, w + 1, h + 1);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        YuvConverter converter = new YuvConverter(w, h, pool);
+        Picture yuv = converter.createPicture();
+        converter.convert(raster, yuv);
+        pool.shutdown();
+
+        Picture rgb = Picture.create(w, h, ColorSpace.RGB);
+        byte[] data = rgb.getPlaneData(0);
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++) {
+                int c = pixels[y * (w + 1) + x];
+                int i = 3 * (y * w + x);
+                data[i] = (byte) (((c >> 16) & 0xff) - 128);
+                data[i + 1] = (byte) (((c >> 8) & 0xff) - 128);
+                data[i + 2] = (byte) ((c & 0xff) - 128);
+            }
+        Picture expected = Picture.create(w, h, ColorSpace.YUV420J);
+        new RgbToYuv420j().transform(rgb, expected);
+
+        for (int plane = 0; plane < 3; plane++)
+            assertArrayEquals(expected.getPlaneData(plane), yuv.getPlaneData(plane));
+    }
+}